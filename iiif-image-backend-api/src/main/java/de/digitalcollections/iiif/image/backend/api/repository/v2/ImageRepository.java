@@ -3,20 +3,54 @@ package de.digitalcollections.iiif.image.backend.api.repository.v2;
 import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
 import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException;
 import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
 import java.awt.*;
+import java.util.List;
 
 public interface ImageRepository {
 
-  public ImageInfo getImageInfo(String identifier) throws UnsupportedFormatException, UnsupportedOperationException;
+  public ImageInfo getImageInfo(String identifier) throws UnsupportedFormatException, UnsupportedOperationException, ResourceNotFoundException;
 
   public Image getImage(String identifier, RegionParameters regionParameters)
           throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException;
 
+  /**
+   * @param identifier identifier of the image
+   * @param regionParameters region in the coordinates of the pyramid level
+   * @param sizeParameters size the region is going to be scaled to, allows reading a reduced version of the image
+   * @param pyramidLevel reduced resolution level, the image is scaled by <code>1/2^pyramidLevel</code>
+   * @return the image at the given pyramid level
+   */
+  public Image getImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters, int pyramidLevel)
+          throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException;
+
+  /**
+   * Decode a region of the image once and cut several images from it, e.g. the tiles a viewer needs at one zoom level.
+   *
+   * @param identifier identifier of the image
+   * @param regionParameters region enclosing all images, in the coordinates of the pyramid level
+   * @param sizeParameters size the enclosing region is decoded at
+   * @param pyramidLevel reduced resolution level, the image is scaled by <code>1/2^pyramidLevel</code>
+   * @param imageRegions absolute regions of the images, in the coordinates of the decoded region
+   * @return the images in the order of their regions, or <code>null</code> if the image could not be read
+   * @throws UnsupportedOperationException if the image can't be decoded to a raster
+   */
+  public List<Image> getImages(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters,
+                               int pyramidLevel, List<RegionParameters> imageRegions)
+          throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException;
+
+  /**
+   * @param info information about the image
+   * @return number of reduced resolution levels available for the image
+   */
+  public int getPyramidLevels(ImageInfo info);
+
   public boolean supportsInputFormat(ImageFormat inFormat);
 
   public boolean supportsOutputFormat(ImageFormat outFormat);
@@ -25,5 +59,7 @@ public interface ImageRepository {
 
   public boolean supportsScaleOperation(Dimension imageDims, ResizeParameters scaleParams);
 
+  public boolean supportsRotation(RotationParameters rotation);
+
   public boolean supportsBitDepth(ImageBitDepth bitDepth);
 }
@@ -0,0 +1,170 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of all configured caches: hits, misses and evictions per cache and per tier, entry counts, occupied memory
+ * and the time it takes to load values on misses.
+ *
+ * The metrics of each cache are registered in the platform MBean server, see {@link CacheMetricsMXBean}.
+ */
+@Component
+public class CacheMetrics implements InitializingBean, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheMetrics.class);
+
+  public static final String JMX_DOMAIN = "de.digitalcollections.iiif.image";
+
+  @Autowired(required = false)
+  private CacheManager cacheManager;
+
+  private final ConcurrentMap<String, LoadTimeHistogram> loadTimes = new ConcurrentHashMap<>();
+  private final List<ObjectName> registeredNames = new ArrayList<>();
+
+  /**
+   * Record the time it took to load a value on a cache miss.
+   *
+   * @param cacheName name of the cache the value is loaded for
+   * @param nanos time it took to load the value
+   */
+  public void recordLoad(String cacheName, long nanos) {
+    loadTimes.computeIfAbsent(cacheName, name -> new LoadTimeHistogram()).record(nanos);
+  }
+
+  /**
+   * @return names of all configured caches
+   */
+  public List<String> getCacheNames() {
+    List<String> names = new ArrayList<>();
+    if (cacheManager != null) {
+      cacheManager.getCacheNames().forEach(names::add);
+    }
+    return names;
+  }
+
+  /**
+   * @param cacheName name of the cache
+   * @return current statistics of the cache or <code>null</code> if there is no such cache
+   */
+  public CacheStatistics getStatistics(String cacheName) {
+    Cache<?, ?> cache = cacheManager != null ? cacheManager.getCache(cacheName) : null;
+    if (cache == null) {
+      return null;
+    }
+    return EhcacheStatistics.read(cacheName, cache.unwrap(org.ehcache.Cache.class), loadTimes.get(cacheName));
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (String cacheName : getCacheNames()) {
+      try {
+        ObjectName name = new ObjectName(JMX_DOMAIN + ":type=CacheMetrics,name=" + cacheName);
+        if (server.isRegistered(name)) {
+          // left over from another application context in the same JVM
+          server.unregisterMBean(name);
+        }
+        server.registerMBean(new CacheMetricsBean(cacheName), name);
+        registeredNames.add(name);
+      } catch (JMException e) {
+        LOGGER.warn("Could not register metrics of cache {}", cacheName, e);
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registeredNames) {
+      try {
+        server.unregisterMBean(name);
+      } catch (JMException e) {
+        LOGGER.debug("Could not unregister {}", name, e);
+      }
+    }
+    registeredNames.clear();
+  }
+
+  private class CacheMetricsBean implements CacheMetricsMXBean {
+
+    private final String cacheName;
+
+    CacheMetricsBean(String cacheName) {
+      this.cacheName = cacheName;
+    }
+
+    private LoadTimeHistogram getLoadTimes() {
+      return loadTimes.computeIfAbsent(cacheName, name -> new LoadTimeHistogram());
+    }
+
+    @Override
+    public long getHits() {
+      return getStatistics(cacheName).getHits();
+    }
+
+    @Override
+    public long getMisses() {
+      return getStatistics(cacheName).getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+      return getStatistics(cacheName).getHitRatio();
+    }
+
+    @Override
+    public long getPuts() {
+      return getStatistics(cacheName).getPuts();
+    }
+
+    @Override
+    public long getEvictions() {
+      return getStatistics(cacheName).getEvictions();
+    }
+
+    @Override
+    public long getEntries() {
+      return getStatistics(cacheName).getEntries();
+    }
+
+    @Override
+    public List<TierStatistics> getTiers() {
+      return getStatistics(cacheName).getTiers();
+    }
+
+    @Override
+    public long getLoads() {
+      return getLoadTimes().getCount();
+    }
+
+    @Override
+    public double getMeanLoadTimeMillis() {
+      return getLoadTimes().getMeanMillis();
+    }
+
+    @Override
+    public long[] getLoadTimeBuckets() {
+      return getLoadTimes().getBucketBounds();
+    }
+
+    @Override
+    public long[] getLoadTimeCounts() {
+      return getLoadTimes().getCounts();
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.util.List;
+
+/**
+ * Metrics of one cache, registered as <code>de.digitalcollections.iiif.image:type=CacheMetrics,name=&lt;cache&gt;</code>.
+ */
+public interface CacheMetricsMXBean {
+
+  long getHits();
+
+  long getMisses();
+
+  double getHitRatio();
+
+  long getPuts();
+
+  long getEvictions();
+
+  long getEntries();
+
+  List<TierStatistics> getTiers();
+
+  long getLoads();
+
+  double getMeanLoadTimeMillis();
+
+  /**
+   * @return upper bounds of the load time buckets in milliseconds
+   */
+  long[] getLoadTimeBuckets();
+
+  /**
+   * @return number of loads per load time bucket
+   */
+  long[] getLoadTimeCounts();
+}
@@ -0,0 +1,78 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.util.List;
+
+/**
+ * Statistics of a cache as a whole and of each of its tiers.
+ */
+public class CacheStatistics {
+
+  private final String name;
+  private final long hits;
+  private final long misses;
+  private final long puts;
+  private final List<TierStatistics> tiers;
+  private final LoadTimeHistogram loadTimes;
+
+  public CacheStatistics(String name, long hits, long misses, long puts, List<TierStatistics> tiers,
+                         LoadTimeHistogram loadTimes) {
+    this.name = name;
+    this.hits = hits;
+    this.misses = misses;
+    this.puts = puts;
+    this.tiers = tiers;
+    this.loadTimes = loadTimes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return ratio of hits to all lookups, 0 if there were none
+   */
+  public double getHitRatio() {
+    return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+  }
+
+  public long getPuts() {
+    return puts;
+  }
+
+  /**
+   * @return number of entries evicted from the cache, i.e. from its lowest tier
+   */
+  public long getEvictions() {
+    return tiers.isEmpty() ? 0 : tiers.get(tiers.size() - 1).getEvictions();
+  }
+
+  /**
+   * @return number of entries in the cache, i.e. in its lowest tier, which holds all of them
+   */
+  public long getEntries() {
+    return tiers.isEmpty() ? 0 : tiers.get(tiers.size() - 1).getEntries();
+  }
+
+  /**
+   * @return tiers from the highest (heap) to the lowest
+   */
+  public List<TierStatistics> getTiers() {
+    return tiers;
+  }
+
+  /**
+   * @return time it took to load the values on misses, <code>null</code> if the cache is not loaded through
+   * {@link CacheMetrics#recordLoad(String, long)}
+   */
+  public LoadTimeHistogram getLoadTimes() {
+    return loadTimes;
+  }
+}
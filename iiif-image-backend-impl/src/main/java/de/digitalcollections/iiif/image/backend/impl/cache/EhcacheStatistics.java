@@ -0,0 +1,118 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.ehcache.Cache;
+import org.terracotta.context.ContextManager;
+import org.terracotta.context.TreeNode;
+import org.terracotta.statistics.OperationStatistic;
+import org.terracotta.statistics.ValueStatistic;
+
+/**
+ * Reads the statistics that ehcache keeps for each cache and each of its stores from its statistics context tree.
+ *
+ * The operations and their outcomes are internals of ehcache 3.1, that's why they are matched by name.
+ */
+final class EhcacheStatistics {
+
+  /**
+   * Tags of the stores in the statistics tree by tier name, from the highest to the lowest tier
+   */
+  private static final Map<String, String> TIER_TAGS = new LinkedHashMap<>();
+
+  static {
+    TIER_TAGS.put("heap", "onheap-store");
+    TIER_TAGS.put("offheap", "local-offheap");
+    TIER_TAGS.put("disk", "local-disk");
+  }
+
+  private static final String CACHE_TAG = "cache";
+
+  /**
+   * Lookups in a store: plain gets in an authoritative store, faulting gets in a tiered store
+   */
+  private static final List<String> LOOKUP_OPERATIONS = Arrays.asList("get", "getOrComputeIfAbsent", "getAndFault",
+                                                                      "getAndRemove", "computeIfAbsentAndFault");
+  private static final String[] HIT_OUTCOMES = {"HIT", "HIT_REMOVED"};
+  private static final String[] MISS_OUTCOMES = {"MISS", "FAULTED"};
+
+  private EhcacheStatistics() {
+  }
+
+  static CacheStatistics read(String name, Cache<?, ?> cache, LoadTimeHistogram loadTimes) {
+    // statistics by tag, then by name
+    Map<String, Map<String, Object>> statistics = new HashMap<>();
+    collect(ContextManager.nodeFor(cache), statistics);
+
+    Map<String, Object> cacheStatistics = statistics.getOrDefault(CACHE_TAG, new HashMap<>());
+    long hits = count(cacheStatistics.get("get"), "HIT_NO_LOADER", "HIT_WITH_LOADER");
+    long misses = count(cacheStatistics.get("get"), "MISS_NO_LOADER", "MISS_WITH_LOADER");
+    long puts = count(cacheStatistics.get("put"), "PUT", "UPDATED");
+
+    List<TierStatistics> tiers = new ArrayList<>();
+    for (Map.Entry<String, String> tier : TIER_TAGS.entrySet()) {
+      Map<String, Object> tierStatistics = statistics.get(tier.getValue());
+      if (tierStatistics != null) {
+        tiers.add(readTier(tier.getKey(), tierStatistics));
+      }
+    }
+    return new CacheStatistics(name, hits, misses, puts, tiers, loadTimes);
+  }
+
+  private static TierStatistics readTier(String name, Map<String, Object> statistics) {
+    long hits = 0;
+    long misses = 0;
+    for (String operation : LOOKUP_OPERATIONS) {
+      hits += count(statistics.get(operation), HIT_OUTCOMES);
+      misses += count(statistics.get(operation), MISS_OUTCOMES);
+    }
+    long evictions = count(statistics.get("eviction"), "SUCCESS");
+    long entries = value(statistics.containsKey("mappingsCount") ? statistics.get("mappingsCount")
+                         : statistics.get("longSize"));
+    long bytes = value(statistics.get("occupiedMemory"));
+    return new TierStatistics(name, hits, misses, evictions, entries, bytes);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static void collect(TreeNode node, Map<String, Map<String, Object>> statistics) {
+    Map<String, Object> attributes = node.getContext().attributes();
+    Object statistic = attributes.get("this");
+    Object tags = attributes.get("tags");
+    if ((statistic instanceof OperationStatistic || statistic instanceof ValueStatistic) && tags instanceof Collection) {
+      for (String tag : (Collection<String>) tags) {
+        statistics.computeIfAbsent(tag, t -> new HashMap<>()).put((String) attributes.get("name"), statistic);
+      }
+    }
+    for (TreeNode child : node.getChildren()) {
+      collect(child, statistics);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static long count(Object statistic, String... outcomes) {
+    if (!(statistic instanceof OperationStatistic)) {
+      return 0;
+    }
+    OperationStatistic<?> operation = (OperationStatistic<?>) statistic;
+    long count = 0;
+    for (Enum<?> outcome : operation.type().getEnumConstants()) {
+      if (Arrays.asList(outcomes).contains(outcome.name())) {
+        count += ((OperationStatistic) operation).count(outcome);
+      }
+    }
+    return count;
+  }
+
+  private static long value(Object statistic) {
+    if (!(statistic instanceof ValueStatistic)) {
+      return -1;
+    }
+    Object value = ((ValueStatistic<?>) statistic).value();
+    return value instanceof Number ? ((Number) value).longValue() : -1;
+  }
+}
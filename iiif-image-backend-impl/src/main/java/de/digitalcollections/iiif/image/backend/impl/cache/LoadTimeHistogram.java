@@ -0,0 +1,64 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of the time it takes to load values on cache misses, with fixed buckets from one millisecond to ten
+ * seconds.
+ */
+public class LoadTimeHistogram {
+
+  /**
+   * Upper bounds of the buckets in milliseconds, the last bucket holds all loads that took longer
+   */
+  private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+  private final AtomicLong totalNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[bucket]) {
+      bucket++;
+    }
+    counts.incrementAndGet(bucket);
+    totalNanos.addAndGet(nanos);
+  }
+
+  /**
+   * @return upper bounds (exclusive) of the buckets in milliseconds, <code>Long.MAX_VALUE</code> for the last one
+   */
+  public long[] getBucketBounds() {
+    long[] bounds = new long[BUCKET_BOUNDS.length + 1];
+    System.arraycopy(BUCKET_BOUNDS, 0, bounds, 0, BUCKET_BOUNDS.length);
+    bounds[BUCKET_BOUNDS.length] = Long.MAX_VALUE;
+    return bounds;
+  }
+
+  /**
+   * @return number of loads per bucket
+   */
+  public long[] getCounts() {
+    long[] values = new long[counts.length()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = counts.get(i);
+    }
+    return values;
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  public double getMeanMillis() {
+    long count = getCount();
+    return count > 0 ? totalNanos.get() / 1e6 / count : 0;
+  }
+}
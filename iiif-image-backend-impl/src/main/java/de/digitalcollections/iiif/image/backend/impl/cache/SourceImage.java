@@ -0,0 +1,135 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Encoded data of a source image, the value type of the <code>sourceImages</code> cache.
+ *
+ * The data is held in a heap array, either the one it was loaded into from its resource or a copy read from the
+ * off-heap or disk tier of the cache (see {@link SourceImageSerializer}). It is only accessed through read-only views,
+ * so one instance can be shared by concurrent requests.
+ */
+public final class SourceImage implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient ByteBuffer data;
+
+  private SourceImage(ByteBuffer data) {
+    this.data = data;
+  }
+
+  /**
+   * @param data encoded image data, will not be copied and must not be modified afterwards
+   * @return source image backed by the array
+   */
+  public static SourceImage wrap(byte[] data) {
+    return new SourceImage(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * @param data encoded image data between position and limit, will be copied
+   * @return source image backed by a new heap array
+   */
+  static SourceImage copyOf(ByteBuffer data) {
+    byte[] copy = new byte[data.remaining()];
+    data.duplicate().get(copy);
+    return wrap(copy);
+  }
+
+  /**
+   * @return size of the encoded data in bytes, which is also its exact weight in the cache
+   */
+  public int getLength() {
+    return data.limit();
+  }
+
+  /**
+   * @return <code>true</code> if the data is held outside of the heap
+   */
+  public boolean isDirect() {
+    return data.isDirect();
+  }
+
+  /**
+   * @return a new read-only view on the whole data, positioned at 0
+   */
+  public ByteBuffer asByteBuffer() {
+    ByteBuffer view = data.asReadOnlyBuffer();
+    view.rewind();
+    return view;
+  }
+
+  /**
+   * @return a stream on the data that reads directly from the buffer
+   */
+  public InputStream openStream() {
+    return new BufferInputStream(asByteBuffer());
+  }
+
+  /**
+   * @return a copy of the data on the heap
+   */
+  public byte[] toByteArray() {
+    byte[] bytes = new byte[getLength()];
+    asByteBuffer().get(bytes);
+    return bytes;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(getLength());
+    out.write(toByteArray());
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    data = ByteBuffer.wrap(bytes);
+  }
+
+  private static class BufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(len, buffer.remaining());
+      buffer.get(b, off, count);
+      return count;
+    }
+
+    @Override
+    public long skip(long n) {
+      int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
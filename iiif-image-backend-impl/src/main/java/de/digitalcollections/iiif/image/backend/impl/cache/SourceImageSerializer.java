@@ -0,0 +1,41 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.nio.ByteBuffer;
+import org.ehcache.core.spi.service.FileBasedPersistenceContext;
+import org.ehcache.spi.serialization.Serializer;
+
+/**
+ * Serializer of the <code>sourceImages</code> cache for its off-heap and disk tiers.
+ *
+ * The serialized form is the encoded image data itself, without any Java serialization overhead, so an entry occupies
+ * exactly as many bytes as the image. Entries read back from these tiers are copied once into a heap array, as the
+ * buffer handed in by the cache is only valid during the call.
+ */
+public class SourceImageSerializer implements Serializer<SourceImage> {
+
+  public SourceImageSerializer(ClassLoader classLoader) {
+    // the serialized form contains no classes
+  }
+
+  /**
+   * Constructor for caches with a disk tier, the serializer has no state to persist.
+   */
+  public SourceImageSerializer(ClassLoader classLoader, FileBasedPersistenceContext persistenceContext) {
+    this(classLoader);
+  }
+
+  @Override
+  public ByteBuffer serialize(SourceImage image) {
+    return image.asByteBuffer();
+  }
+
+  @Override
+  public SourceImage read(ByteBuffer binary) {
+    return SourceImage.copyOf(binary);
+  }
+
+  @Override
+  public boolean equals(SourceImage image, ByteBuffer binary) {
+    return image.asByteBuffer().equals(binary);
+  }
+}
@@ -0,0 +1,63 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+/**
+ * Statistics of one storage tier (heap, off-heap or disk) of a cache.
+ */
+public class TierStatistics {
+
+  private final String name;
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final long entries;
+  private final long bytes;
+
+  public TierStatistics(String name, long hits, long misses, long evictions, long entries, long bytes) {
+    this.name = name;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.entries = entries;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @return name of the tier: <code>heap</code>, <code>offheap</code> or <code>disk</code>
+   */
+  public String getName() {
+    return name;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return ratio of hits to all lookups in this tier, 0 if there were none
+   */
+  public double getHitRatio() {
+    return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+  }
+
+  /**
+   * @return number of entries evicted from this tier, entries evicted from higher tiers are still held by the lower ones
+   */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public long getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return memory occupied by the entries, -1 if the tier does not measure it (the heap tier)
+   */
+  public long getBytes() {
+    return bytes;
+  }
+}
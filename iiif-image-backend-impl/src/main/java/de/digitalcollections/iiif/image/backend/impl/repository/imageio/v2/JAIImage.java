@@ -15,6 +15,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Iterator;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReadParam;
@@ -30,6 +31,8 @@ public class JAIImage implements Image {
 
   private BufferedImage image;
   private String formatString;
+  // Region that was already applied when reading the image
+  private RegionParameters readRegion;
 
   public JAIImage(BufferedImage image, String format) {
     this.image = image;
@@ -44,10 +47,44 @@ public class JAIImage implements Image {
     this(new ByteArrayInputStream(inData), region);
   }
 
+  public JAIImage(byte[] inData, RegionParameters region, ResizeParameters size) throws IOException, UnsupportedFormatException {
+    this(new ByteArrayInputStream(inData), region, size);
+  }
+
   public JAIImage(InputStream imgData, RegionParameters region) throws IOException, UnsupportedFormatException {
+    this(imgData, region, null);
+  }
+
+  /**
+   * Read only the region of the image and, if it is going to be scaled down, only every n-th pixel of it.
+   *
+   * The subsampling leaves at least twice the target size, so that the remaining resample still filters the image.
+   *
+   * @param imgData stream of the encoded image
+   * @param region region to read, may be <code>null</code>
+   * @param size size the region is going to be scaled to, may be <code>null</code>
+   */
+  public JAIImage(InputStream imgData, RegionParameters region, ResizeParameters size) throws IOException, UnsupportedFormatException {
     ImageIO.setUseCache(true);
-    ImageReader reader = null;
     try (final ImageInputStream imageInputStream = ImageIO.createImageInputStream(imgData)) {
+      read(imageInputStream, region, size);
+    }
+  }
+
+  /**
+   * Read the region of the image from a seekable stream, which is neither copied nor closed.
+   *
+   * @param imgData stream of the encoded image
+   * @param region region to read, may be <code>null</code>
+   * @param size size the region is going to be scaled to, may be <code>null</code>
+   */
+  public JAIImage(ImageInputStream imgData, RegionParameters region, ResizeParameters size) throws IOException, UnsupportedFormatException {
+    read(imgData, region, size);
+  }
+
+  private void read(ImageInputStream imageInputStream, RegionParameters region, ResizeParameters size) throws IOException, UnsupportedFormatException {
+    ImageReader reader = null;
+    try {
       Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
       if (readers.hasNext()) {
         reader = readers.next();
@@ -56,25 +93,73 @@ public class JAIImage implements Image {
         throw new UnsupportedFormatException("Could not read image, unsupported format?");
       }
       reader.setInput(imageInputStream, true, true);
-      ImageReadParam params = reader.getDefaultReadParam();
-      if (region != null && region.isAbsolute()) {
-        int x = (int) Math.ceil(region.getHorizontalOffset());
-        int y = (int) Math.ceil(region.getVerticalOffset());
-        int width = (int) Math.ceil(region.getWidth());
-        int height = (int) Math.ceil(region.getHeight());
-        Rectangle rect = new Rectangle(x, y, width, height);
-        params.setSourceRegion(rect);
-      }
-      BufferedImage img = reader.read(0, params);
-      this.image = img;
+      read(reader, 0, region, size);
     } finally {
-      // Close stream in finally block to avoid resource leaks
       if (reader != null) {
         reader.dispose();
       }
     }
   }
 
+  /**
+   * Read the region of one image of a multi-image file, e.g. a level of a pyramidal TIFF.
+   *
+   * @param reader reader with its input already set, it is neither disposed nor closed
+   * @param imageIndex index of the image to read
+   * @param region region to read, may be <code>null</code>
+   * @param size size the region is going to be scaled to, may be <code>null</code>
+   */
+  public JAIImage(ImageReader reader, int imageIndex, RegionParameters region, ResizeParameters size) throws IOException {
+    this.formatString = reader.getFormatName();
+    read(reader, imageIndex, region, size);
+  }
+
+  private void read(ImageReader reader, int imageIndex, RegionParameters region, ResizeParameters size) throws IOException {
+    ImageReadParam params = reader.getDefaultReadParam();
+    Rectangle sourceRegion = new Rectangle(0, 0, reader.getWidth(imageIndex), reader.getHeight(imageIndex));
+    if (region != null) {
+      sourceRegion = getSourceRegion(region, sourceRegion.width, sourceRegion.height);
+      params.setSourceRegion(sourceRegion);
+      this.readRegion = region;
+    }
+    int subsampling = getSubsampling(sourceRegion, size);
+    if (subsampling > 1) {
+      params.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    }
+    this.image = reader.read(imageIndex, params);
+  }
+
+  /**
+   * @return the region in absolute coordinates, clipped to the image
+   */
+  private static Rectangle getSourceRegion(RegionParameters region, int imageWidth, int imageHeight) {
+    float x = region.getHorizontalOffset();
+    float y = region.getVerticalOffset();
+    float width = region.getWidth();
+    float height = region.getHeight();
+    if (!region.isAbsolute()) {
+      // Relative regions are given as fractions of the image dimensions
+      x *= imageWidth;
+      y *= imageHeight;
+      width *= imageWidth;
+      height *= imageHeight;
+    }
+    Rectangle rect = new Rectangle((int) Math.ceil(x), (int) Math.ceil(y), (int) Math.ceil(width), (int) Math.ceil(height));
+    return rect.intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+  }
+
+  /**
+   * @return the number of source pixels that are combined into one, so that the read image is still at least twice as
+   * large as the target size
+   */
+  private static int getSubsampling(Rectangle sourceRegion, ResizeParameters size) {
+    if (size == null || size.getWidth() <= 0 || size.getHeight() <= 0) {
+      return 1;
+    }
+    int ratio = Math.min(sourceRegion.width / size.getWidth(), sourceRegion.height / size.getHeight());
+    return Math.max(1, ratio / 2);
+  }
+
   public static ImageFormat getFormatFromString(String formatName) throws UnsupportedFormatException {
     ImageFormat imageFormat = ImageFormat.getByExtension(formatName.toLowerCase());
     if (imageFormat == null) {
@@ -126,14 +211,23 @@ public class JAIImage implements Image {
   @Override
   public byte[] toByteArray() throws IOException {
     ByteArrayOutputStream os = new ByteArrayOutputStream();
-    ImageIO.write(this.image, formatString, os);
+    writeTo(os);
     byte[] output = os.toByteArray();
     os.close();
     return output;
   }
 
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    // Encoded straight into the target stream, the encoded image is never held on the heap as a whole
+    ImageIO.write(this.image, formatString, out);
+  }
+
   @Override
   public Image crop(RegionParameters params) throws UnsupportedOperationException, InvalidParametersException {
+    if (params == readRegion) {
+      return this;
+    }
     int x, y, targetWidth, targetHeight;
     if (params.isAbsolute()) {
       x = (int) Math.ceil(params.getHorizontalOffset());
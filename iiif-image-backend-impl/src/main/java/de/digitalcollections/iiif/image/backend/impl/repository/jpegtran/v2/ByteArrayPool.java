@@ -0,0 +1,74 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of output buffers for transformed and encoded images.
+ *
+ * The worst case output size of TurboJPEG (<code>TJ.bufSize</code>) is often several megabytes, even if the actual
+ * image is a small tile. Reusing these buffers keeps them from being allocated as humongous objects on every request.
+ * Buffers are grouped in power-of-two size classes between 64 KiB and 16 MiB, the total size of idle buffers is
+ * bounded. Larger requests are served with unpooled arrays.
+ */
+public final class ByteArrayPool {
+
+  private static final int MIN_CLASS_SHIFT = 16;
+  private static final int MAX_CLASS_SHIFT = 24;
+  private static final long MAX_IDLE_BYTES = 64L << 20;
+
+  @SuppressWarnings("unchecked")
+  private static final ConcurrentLinkedQueue<byte[]>[] IDLE =
+      new ConcurrentLinkedQueue[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+  private static final AtomicLong IDLE_BYTES = new AtomicLong();
+
+  static {
+    for (int i = 0; i < IDLE.length; i++) {
+      IDLE[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  private ByteArrayPool() {
+  }
+
+  /**
+   * @param minSize minimum size of the buffer
+   * @return a buffer of at least <code>minSize</code> bytes, which has to be closed when it is no longer used
+   */
+  public static PooledBuffer borrow(int minSize) {
+    int sizeClass = sizeClass(minSize);
+    if (sizeClass < 0) {
+      return new PooledBuffer(new byte[minSize], false);
+    }
+    byte[] buffer = IDLE[sizeClass].poll();
+    if (buffer != null) {
+      IDLE_BYTES.addAndGet(-buffer.length);
+    } else {
+      buffer = new byte[1 << (sizeClass + MIN_CLASS_SHIFT)];
+    }
+    return new PooledBuffer(buffer, true);
+  }
+
+  static void release(byte[] buffer) {
+    int sizeClass = sizeClass(buffer.length);
+    if (sizeClass < 0 || buffer.length != 1 << (sizeClass + MIN_CLASS_SHIFT)) {
+      return;
+    }
+    if (IDLE_BYTES.addAndGet(buffer.length) > MAX_IDLE_BYTES) {
+      IDLE_BYTES.addAndGet(-buffer.length);
+      return;
+    }
+    IDLE[sizeClass].offer(buffer);
+  }
+
+  /**
+   * @return the index of the smallest size class that holds <code>size</code> bytes, or -1 if the size is too large
+   */
+  private static int sizeClass(int size) {
+    int shift = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1);
+    if (shift > MAX_CLASS_SHIFT) {
+      return -1;
+    }
+    return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+  }
+}
@@ -1,11 +1,13 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import org.apache.commons.lang3.time.StopWatch;
+import org.libjpegturbo.turbojpeg.TJException;
 
 public class EpegScaler {
   static {
@@ -18,6 +20,71 @@ public class EpegScaler {
 
   public static native byte[] downScaleJpegImage(byte[] imageData, int width, int height, int quality);
 
+  /**
+   * Crop, scale, reorient and re-encode a JPEG image in a single decoding pass.
+   *
+   * The region is decoded at the closest IDCT scaling factor, resampled to the target size, mirrored/rotated and then
+   * encoded.
+   *
+   * @param imageData JPEG image data
+   * @param cropX horizontal offset of the region in the source image
+   * @param cropY vertical offset of the region in the source image
+   * @param cropWidth width of the region in the source image
+   * @param cropHeight height of the region in the source image
+   * @param width target width of the region, before the transform is applied
+   * @param height target height of the region, before the transform is applied
+   * @param transformOp one of the <code>TJTransform.OP_*</code> operations
+   * @param grayscale whether the image should be converted to grayscale
+   * @param quality quality of the target image
+   * @return the transformed JPEG image data
+   * @throws TJException if the image could not be decoded or encoded
+   */
+  public static native byte[] transformJpegImage(byte[] imageData, int cropX, int cropY, int cropWidth,
+          int cropHeight, int width, int height, int transformOp, boolean grayscale, int quality) throws TJException;
+
+  /**
+   * Downscale a JPEG image held in a direct buffer, e.g. a memory-mapped file, without copying it to the Java heap.
+   *
+   * @param imageData direct buffer containing the JPEG image data between its position and limit
+   * @param width target width
+   * @param height target height
+   * @param quality quality of the target image
+   * @return the scaled JPEG image data
+   * @throws TJException if the image could not be decoded or encoded
+   */
+  public static byte[] downScaleJpegImage(ByteBuffer imageData, int width, int height, int quality)
+          throws TJException {
+    checkDirect(imageData);
+    return downScaleJpegBuffer(imageData, imageData.position(), imageData.remaining(), width, height, quality);
+  }
+
+  /**
+   * Direct buffer variant of {@link #transformJpegImage(byte[], int, int, int, int, int, int, int, boolean, int)}, the
+   * image is read in place between the position and the limit of <code>imageData</code>.
+   *
+   * @return the transformed JPEG image data
+   * @throws TJException if the image could not be decoded or encoded
+   */
+  public static byte[] transformJpegImage(ByteBuffer imageData, int cropX, int cropY, int cropWidth, int cropHeight,
+          int width, int height, int transformOp, boolean grayscale, int quality) throws TJException {
+    checkDirect(imageData);
+    return transformJpegBuffer(imageData, imageData.position(), imageData.remaining(), cropX, cropY, cropWidth,
+                               cropHeight, width, height, transformOp, grayscale, quality);
+  }
+
+  private static void checkDirect(ByteBuffer imageData) {
+    if (!imageData.isDirect()) {
+      throw new IllegalArgumentException("Only direct buffers are supported");
+    }
+  }
+
+  private static native byte[] downScaleJpegBuffer(ByteBuffer imageData, int offset, int length,
+          int width, int height, int quality) throws TJException;
+
+  private static native byte[] transformJpegBuffer(ByteBuffer imageData, int offset, int length,
+          int cropX, int cropY, int cropWidth, int cropHeight, int width, int height, int transformOp,
+          boolean grayscale, int quality) throws TJException;
+
   public static void main(String[] args) throws IOException {
     int numIterations = 10000;
     Path imgPath = Paths.get(args[0]);
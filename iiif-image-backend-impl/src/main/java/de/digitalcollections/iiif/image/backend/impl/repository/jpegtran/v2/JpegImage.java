@@ -1,22 +1,31 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import org.apache.commons.io.IOUtils;
+import org.imgscalr.Scalr;
 import org.libjpegturbo.turbojpeg.TJ;
+import org.libjpegturbo.turbojpeg.TJCompressor;
 import org.libjpegturbo.turbojpeg.TJDecompressor;
 import org.libjpegturbo.turbojpeg.TJException;
+import org.libjpegturbo.turbojpeg.TJScalingFactor;
 import org.libjpegturbo.turbojpeg.TJTransform;
 import org.libjpegturbo.turbojpeg.TJTransformer;
 
-public class JpegImage {
-  // Only used to obtain width, height and subsampling information
+public class JpegImage implements AutoCloseable {
+  // Only used to obtain width, height and subsampling information, borrowed from the TJHandlePool
   private TJDecompressor decomp;
   private TJTransform transformOptions;
-  private byte[] imgData;
+  private PooledBuffer imgData;
+  // Direct source data, e.g. a memory-mapped file, that is read in place. Replaced by imgData on the first transform.
+  private ByteBuffer directData;
 
   /**
    * Read JPEG image from URI.
@@ -38,13 +47,102 @@ public class JpegImage {
     this.setTransformOptions(new TJTransform());
   }
 
+  /**
+   * Read JPEG image from a buffer, e.g. a memory-mapped file or a read-only view on a cached source image.
+   *
+   * Direct buffers are read in place (see {@link #setImageData(ByteBuffer)}), heap buffers are copied into a pooled
+   * buffer. The position of the given buffer is not changed.
+   *
+   * @param data create image from the data between position and limit
+   */
+  public JpegImage(ByteBuffer data) throws TJException {
+    if (data.isDirect()) {
+      this.setImageData(data);
+    } else {
+      PooledBuffer buffer = ByteArrayPool.borrow(data.remaining());
+      data.duplicate().get(buffer.getBuffer(), 0, data.remaining());
+      this.setImageData(buffer.withLength(data.remaining()));
+    }
+    this.setTransformOptions(new TJTransform());
+  }
+
+  /**
+   * Create a JPEG image from a pooled buffer, the image takes over ownership of the buffer.
+   *
+   * @param data buffer holding the JPEG image at offset 0
+   */
+  JpegImage(PooledBuffer data) throws TJException {
+    this.setImageData(data);
+    this.setTransformOptions(new TJTransform());
+  }
+
 
   public void setImageData(byte[] data) throws TJException {
-    if ((data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+    this.setImageData(PooledBuffer.wrap(data));
+  }
+
+  /**
+   * Replace the image data. The image takes over ownership of the buffer and releases the previous one.
+   *
+   * @param data buffer holding the JPEG image at offset 0
+   */
+  public void setImageData(PooledBuffer data) throws TJException {
+    byte[] buf = data.getBuffer();
+    if (data.getLength() < 2 || (buf[0] & 0xFF) != 0xFF || (buf[1] & 0xFF) != 0xD8) {
       throw new IllegalArgumentException("Not a JPEG file");
     }
+    if (this.decomp == null) {
+      this.decomp = TJHandlePool.borrowDecompressor();
+    }
+    try {
+      this.decomp.setSourceImage(buf, data.getLength());
+    } catch (TJException e) {
+      data.close();
+      this.close();
+      throw e;
+    }
+    if (this.imgData != null && this.imgData != data) {
+      this.imgData.close();
+    }
     this.imgData = data;
-    this.decomp = new TJDecompressor(this.imgData);
+    this.directData = null;
+  }
+
+  /**
+   * Replace the image data with a direct buffer, which TurboJPEG reads in place. The data between position and limit
+   * must stay valid and unchanged until the image is transformed or closed.
+   *
+   * @param data direct buffer holding the JPEG image
+   */
+  public void setImageData(ByteBuffer data) throws TJException {
+    if (!data.isDirect()) {
+      throw new IllegalArgumentException("Only direct buffers can be read in place");
+    }
+    ByteBuffer view = data.slice();
+    if (view.remaining() < 2 || (view.get(0) & 0xFF) != 0xFF || (view.get(1) & 0xFF) != 0xD8) {
+      throw new IllegalArgumentException("Not a JPEG file");
+    }
+    if (this.decomp == null) {
+      this.decomp = TJHandlePool.borrowDecompressor();
+    }
+    try {
+      this.decomp.setSourceImage(view);
+    } catch (TJException e) {
+      this.close();
+      throw e;
+    }
+    if (this.imgData != null) {
+      this.imgData.close();
+      this.imgData = null;
+    }
+    this.directData = view;
+  }
+
+  /**
+   * @return the direct buffer the image is read from, <code>null</code> if the image data is held in an array
+   */
+  ByteBuffer getDirectData() {
+    return directData != null ? directData.duplicate() : null;
   }
 
   public void setTransformOptions(TJTransform transformOptions) {
@@ -65,6 +163,13 @@ public class JpegImage {
     return this.decomp.getHeight();
   }
 
+  /**
+   * @return chrominance subsampling of the image (<code>TJ.SAMP_*</code>), determines the MCU size
+   */
+  public int getSubsamp() {
+    return this.decomp.getSubsamp();
+  }
+
   /**
    * Rotate image
    *
@@ -120,6 +225,19 @@ public class JpegImage {
     return this;
   }
 
+  /**
+   * Set the lossless transform operation to apply.
+   *
+   * @param op one of the <code>TJTransform.OP_*</code> operations
+   */
+  public JpegImage setTransformOperation(int op) {
+    if (op < 0 || op >= TJTransform.NUMOP) {
+      throw new IllegalArgumentException("Invalid transform operation " + op);
+    }
+    this.transformOptions.op = op;
+    return this;
+  }
+
   /**
    * Downscale the image.
    *  @param width Desired width in pixels, must be smaller than original width
@@ -135,6 +253,21 @@ public class JpegImage {
    * @param quality quality of target image
    */
   public JpegImage downScale(int width, int height, int quality) throws TJException {
+    return downScale(width, height, quality, false);
+  }
+
+  /**
+   * Downscale the image.
+   *
+   * The image is decoded straight at the smallest TurboJPEG scaling factor that still yields at least the desired
+   * dimensions, so that only the remaining difference has to be resampled.
+   *
+   * @param width Desired width in pixels, must be smaller than original width
+   * @param height Desired height in pixels, must be smaller than original height
+   * @param quality quality of target image
+   * @param grayscale whether the target image should be grayscale
+   */
+  public JpegImage downScale(int width, int height, int quality, boolean grayscale) throws TJException {
     // Do we need to apply some transformations beforehand?
     if (this.transformOptions.op != 0 || !this.transformOptions.isEmpty()) {
       this.transform();
@@ -149,10 +282,148 @@ public class JpegImage {
     if (width <= 0 || height <= 0) {
       throw new IllegalArgumentException("Width and height must be greater than 0");
     }
-    this.setImageData(EpegScaler.downScaleJpegImage(this.imgData, width, height, quality));
+    int colorspace = this.decomp.getColorspace();
+    if (colorspace == TJ.CS_CMYK || colorspace == TJ.CS_YCCK) {
+      // TurboJPEG cannot decode these to RGB
+      this.setImageData(directData != null
+                        ? EpegScaler.downScaleJpegImage(getDirectData(), width, height, quality)
+                        : EpegScaler.downScaleJpegImage(this.toByteArray(), width, height, quality));
+      if (grayscale) {
+        this.toGrayscale().transform();
+      }
+      return this;
+    }
+
+    int subsamp = grayscale ? TJ.SAMP_GRAY : this.decomp.getSubsamp();
+    TJScalingFactor factor = getScalingFactor(width, height);
+    BufferedImage img = this.decomp.decompress(
+        factor.getScaled(getWidth()), factor.getScaled(getHeight()),
+        subsamp == TJ.SAMP_GRAY ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB, TJ.FLAG_FASTDCT);
+    if (img.getWidth() != width || img.getHeight() != height) {
+      img = Scalr.resize(img, Scalr.Method.AUTOMATIC, Scalr.Mode.FIT_EXACT, width, height);
+    }
+    this.setImageData(compress(img, 0, 0, width, height, subsamp, quality));
     return this;
   }
 
+  /**
+   * Decode a region of the image at a reduced size, e.g. to cut several images from it.
+   *
+   * The region is first cropped losslessly to the enclosing MCUs, so that only these are decompressed, at the
+   * smallest TurboJPEG scaling factor that still yields at least the target size. Only the remaining difference is
+   * resampled.
+   *
+   * @param x horizontal offset of region
+   * @param y vertical offset of region
+   * @param width width of region
+   * @param height height of region
+   * @param targetWidth width of the decoded region
+   * @param targetHeight height of the decoded region
+   * @return the decoded region, grayscale for grayscale images, RGB otherwise
+   * @throws UnsupportedOperationException for CMYK images, which TurboJPEG can not decode
+   */
+  public BufferedImage decode(int x, int y, int width, int height, int targetWidth, int targetHeight) throws TJException {
+    int colorspace = this.decomp.getColorspace();
+    if (colorspace == TJ.CS_CMYK || colorspace == TJ.CS_YCCK) {
+      throw new UnsupportedOperationException("CMYK images can not be decoded to a raster");
+    }
+    if (targetWidth > width || targetHeight > height || targetWidth <= 0 || targetHeight <= 0) {
+      throw new IllegalArgumentException(String.format(
+          "Target dimensions must be smaller than region dimensions, were %sx%s vs %sx%s.",
+          targetWidth, targetHeight, width, height));
+    }
+    int subsamp = this.decomp.getSubsamp();
+    int alignedX = x - x % TJ.getMCUWidth(subsamp);
+    int alignedY = y - y % TJ.getMCUHeight(subsamp);
+    if (alignedX != 0 || alignedY != 0 || x + width != getWidth() || y + height != getHeight()) {
+      this.crop(alignedX, alignedY, x + width - alignedX, y + height - alignedY).transform();
+    }
+    TJScalingFactor best = new TJScalingFactor(1, 1);
+    for (TJScalingFactor factor : TJ.getScalingFactors()) {
+      if (factor.getNum() > factor.getDenom()) {
+        continue;
+      }
+      int scaledWidth = factor.getScaled(width);
+      if (scaledWidth >= targetWidth && factor.getScaled(height) >= targetHeight
+          && scaledWidth < best.getScaled(width)) {
+        best = factor;
+      }
+    }
+    BufferedImage img = this.decomp.decompress(
+        best.getScaled(getWidth()), best.getScaled(getHeight()),
+        subsamp == TJ.SAMP_GRAY ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB, TJ.FLAG_FASTDCT);
+    // trim what is left of the enclosing MCUs
+    int offsetX = (x - alignedX) * best.getNum() / best.getDenom();
+    int offsetY = (y - alignedY) * best.getNum() / best.getDenom();
+    int scaledWidth = Math.min(best.getScaled(width), img.getWidth() - offsetX);
+    int scaledHeight = Math.min(best.getScaled(height), img.getHeight() - offsetY);
+    if (offsetX != 0 || offsetY != 0 || scaledWidth != img.getWidth() || scaledHeight != img.getHeight()) {
+      img = img.getSubimage(offsetX, offsetY, scaledWidth, scaledHeight);
+    }
+    if (img.getWidth() != targetWidth || img.getHeight() != targetHeight) {
+      img = Scalr.resize(img, Scalr.Method.AUTOMATIC, Scalr.Mode.FIT_EXACT, targetWidth, targetHeight);
+    }
+    return img;
+  }
+
+  /**
+   * Encode a part of a decoded image.
+   *
+   * @param img decoded image, e.g. from {@link #decode(int, int, int, int, int, int)}
+   * @param x horizontal offset of the part
+   * @param y vertical offset of the part
+   * @param width width of the part
+   * @param height height of the part
+   * @param subsamp chrominance subsampling of the encoded image
+   * @param quality quality of the encoded image
+   * @return the encoded part
+   */
+  public static JpegImage encode(BufferedImage img, int x, int y, int width, int height, int subsamp, int quality)
+      throws TJException {
+    return new JpegImage(compress(img, x, y, width, height, subsamp, quality));
+  }
+
+  private static PooledBuffer compress(BufferedImage img, int x, int y, int width, int height, int subsamp,
+                                       int quality) throws TJException {
+    PooledBuffer compressed = ByteArrayPool.borrow(TJ.bufSize(width, height, subsamp));
+    int compressedSize;
+    TJCompressor compressor = TJHandlePool.borrowCompressor();
+    try {
+      compressor.setSourceImage(img, x, y, width, height);
+      compressor.setSubsamp(subsamp);
+      compressor.setJPEGQuality(quality);
+      compressor.compress(compressed.getBuffer(), TJ.FLAG_FASTDCT);
+      compressedSize = compressor.getCompressedSize();
+    } catch (TJException | RuntimeException e) {
+      compressed.close();
+      throw e;
+    } finally {
+      TJHandlePool.release(compressor);
+    }
+    return compressed.withLength(compressedSize);
+  }
+
+  /**
+   * @param width Desired width in pixels
+   * @param height Desired height in pixels
+   * @return the TurboJPEG scaling factor that yields the smallest image that is still at least as large as the desired
+   * dimensions
+   */
+  public TJScalingFactor getScalingFactor(int width, int height) {
+    TJScalingFactor best = new TJScalingFactor(1, 1);
+    for (TJScalingFactor factor : TJ.getScalingFactors()) {
+      if (factor.getNum() > factor.getDenom()) {
+        continue;
+      }
+      int scaledWidth = factor.getScaled(getWidth());
+      int scaledHeight = factor.getScaled(getHeight());
+      if (scaledWidth >= width && scaledHeight >= height && scaledWidth < best.getScaled(getWidth())) {
+        best = factor;
+      }
+    }
+    return best;
+  }
+
   /**
    * Crop a region out of the image.
    *  @param x horizontal offset of region
@@ -183,12 +454,26 @@ public class JpegImage {
   }
 
   public JpegImage transform() throws TJException {
-    TJTransformer transformer = new TJTransformer(imgData);
     int destinationSize = TJ.bufSize(getWidth(), getHeight(), this.decomp.getSubsamp());
-    byte[][] destBufs = new byte[1][destinationSize];
-    transformer.transform(destBufs, new TJTransform[]{this.transformOptions}, 0);
-    int[] transformedSizes = transformer.getTransformedSizes();
-    this.setImageData(Arrays.copyOfRange(destBufs[0], 0, transformedSizes[0]));
+    PooledBuffer destination = ByteArrayPool.borrow(destinationSize);
+    int[] transformedSizes;
+    TJTransformer transformer = TJHandlePool.borrowTransformer();
+    try {
+      if (directData != null) {
+        transformer.setSourceImage(directData);
+      } else {
+        PooledBuffer data = getPooledData();
+        transformer.setSourceImage(data.getBuffer(), data.getLength());
+      }
+      transformer.transform(new byte[][]{destination.getBuffer()}, new TJTransform[]{this.transformOptions}, 0);
+      transformedSizes = transformer.getTransformedSizes();
+    } catch (TJException | RuntimeException e) {
+      destination.close();
+      throw e;
+    } finally {
+      TJHandlePool.release(transformer);
+    }
+    this.setImageData(destination.withLength(transformedSizes[0]));
     this.transformOptions = new TJTransform();
     return this;
   }
@@ -198,7 +483,64 @@ public class JpegImage {
    * @return image as byte array
    */
   public byte[] toByteArray() {
-    return imgData;
+    if (directData != null) {
+      byte[] data = new byte[directData.remaining()];
+      directData.duplicate().get(data);
+      return data;
+    }
+    return getPooledData().toByteArray();
+  }
+
+  /**
+   * Images that are read from a direct buffer are copied into a pooled buffer first.
+   *
+   * @return view on the image data without copying it, only valid until the image is modified or closed
+   */
+  public PooledBuffer getData() throws TJException {
+    if (directData != null) {
+      PooledBuffer buffer = ByteArrayPool.borrow(directData.remaining());
+      directData.duplicate().get(buffer.getBuffer(), 0, directData.remaining());
+      setImageData(buffer.withLength(directData.remaining()));
+    }
+    return getPooledData();
+  }
+
+  /**
+   * @return length of the encoded image in bytes
+   */
+  public int getDataLength() {
+    return directData != null ? directData.remaining() : getPooledData().getLength();
+  }
+
+  /**
+   * Write the encoded image without copying it.
+   *
+   * @param out stream to write to
+   * @throws IOException if writing fails
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (directData != null) {
+      writeTo(Channels.newChannel(out));
+    } else {
+      getPooledData().writeTo(out);
+    }
+  }
+
+  /**
+   * Write the encoded image without copying it.
+   *
+   * @param channel channel to write to
+   * @throws IOException if writing fails
+   */
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    if (directData != null) {
+      ByteBuffer data = directData.duplicate();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    } else {
+      getPooledData().writeTo(channel);
+    }
   }
 
   /**
@@ -212,6 +554,34 @@ public class JpegImage {
     if (!outFile.exists()) {
       outFile.createNewFile();
     }
-    IOUtils.write(imgData, new FileOutputStream(outFile));
+    try (FileOutputStream out = new FileOutputStream(outFile)) {
+      writeTo(out);
+    }
+  }
+
+  /**
+   * @return the image data held in a pooled buffer
+   * @throws IllegalStateException if the image has been closed
+   */
+  private PooledBuffer getPooledData() {
+    if (imgData == null) {
+      throw new IllegalStateException("Image has been closed, its buffer is back in the pool");
+    }
+    return imgData;
+  }
+
+  /**
+   * Hand the native decompressor and the image buffer back to their pools. The image must not be used afterwards,
+   * accessing its data throws an {@link IllegalStateException}.
+   */
+  @Override
+  public void close() {
+    TJHandlePool.release(this.decomp);
+    this.decomp = null;
+    if (this.imgData != null) {
+      this.imgData.close();
+      this.imgData = null;
+    }
+    this.directData = null;
   }
 }
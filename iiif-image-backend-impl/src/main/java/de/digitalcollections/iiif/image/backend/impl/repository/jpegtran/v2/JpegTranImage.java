@@ -1,6 +1,10 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
@@ -10,6 +14,7 @@ import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
 
+import org.libjpegturbo.turbojpeg.TJ;
 import org.libjpegturbo.turbojpeg.TJException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,7 +23,10 @@ public class JpegTranImage implements Image {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(JpegTranImage.class);
 
+  private static final int DEFAULT_QUALITY = 85;
+
   private JpegImage jpegImage;
+  private TransformOptions options = new TransformOptions();
   private int height;
   private int width;
 
@@ -27,11 +35,34 @@ public class JpegTranImage implements Image {
     this(new JpegImage(imgData));
   }
 
+  public JpegTranImage(ByteBuffer imgData) throws TJException {
+    this(new JpegImage(imgData));
+  }
+
   private JpegTranImage(JpegImage image) {
     this.setBackendImage(image);
   }
 
+  /**
+   * Encode a part of a decoded image, e.g. one of several tiles cut from the same region.
+   *
+   * @param raster decoded image, see {@link #decode(RegionParameters, ResizeParameters)}
+   * @param x horizontal offset of the part
+   * @param y vertical offset of the part
+   * @param width width of the part
+   * @param height height of the part
+   * @param subsamp chrominance subsampling of the encoded image, see {@link #getSubsamp()}
+   * @return the encoded part
+   */
+  public static JpegTranImage encode(BufferedImage raster, int x, int y, int width, int height, int subsamp)
+      throws TJException {
+    return new JpegTranImage(JpegImage.encode(raster, x, y, width, height, subsamp, DEFAULT_QUALITY));
+  }
+
   private void setBackendImage(JpegImage image) {
+    if (this.jpegImage != null && this.jpegImage != image) {
+      this.jpegImage.close();
+    }
     this.jpegImage = image;
     this.width = image.getWidth();
     this.height = image.getHeight();
@@ -39,7 +70,7 @@ public class JpegTranImage implements Image {
 
   @Override
   public Image flipHorizontally() {
-    jpegImage.flipHorizontal();
+    options.enableHorizontalFlip();
     return this;
   }
 
@@ -63,6 +94,71 @@ public class JpegTranImage implements Image {
     return jpegImage.toByteArray();
   }
 
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    jpegImage.writeTo(out);
+  }
+
+  @Override
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    jpegImage.writeTo(channel);
+  }
+
+  @Override
+  public int getDataLength() {
+    return jpegImage.getDataLength();
+  }
+
+  /**
+   * @return view on the encoded image without copying it, only valid until the image is closed
+   * @throws IOException if the image has to be copied out of a direct buffer and can't be read
+   */
+  public PooledBuffer getData() throws IOException {
+    return jpegImage.getData();
+  }
+
+  /**
+   * @return chrominance subsampling of the image, one of the <code>TJ.SAMP_*</code> constants
+   */
+  public int getSubsamp() {
+    return jpegImage.getSubsamp();
+  }
+
+  /**
+   * Decode a region of the image at a reduced size, so that several images can be cut from it without decoding the
+   * image again. Pending transformations are not applied.
+   *
+   * @param region absolute region to decode, <code>null</code> for the whole image
+   * @param size size to decode the region at, <code>null</code> for the size of the region
+   * @return the decoded region
+   * @throws UnsupportedOperationException if the image can't be decoded to a raster
+   */
+  public BufferedImage decode(RegionParameters region, ResizeParameters size) throws InvalidParametersException,
+      TransformationException {
+    int x = region != null ? (int) region.getHorizontalOffset() : 0;
+    int y = region != null ? (int) region.getVerticalOffset() : 0;
+    int regionWidth = region != null ? Math.min((int) Math.ceil(region.getWidth()), getWidth() - x) : getWidth();
+    int regionHeight = region != null ? Math.min((int) Math.ceil(region.getHeight()), getHeight() - y) : getHeight();
+    if (x < 0 || y < 0 || regionWidth <= 0 || regionHeight <= 0) {
+      throw new InvalidParametersException(
+          String.format("Region out of bounds (image size is %sx%s)", getWidth(), getHeight()));
+    }
+    int targetWidth = size != null && size.getWidth() > 0 ? size.getWidth() : regionWidth;
+    int targetHeight = size != null && size.getHeight() > 0 ? size.getHeight() : regionHeight;
+    try {
+      BufferedImage raster = jpegImage.decode(x, y, regionWidth, regionHeight, targetWidth, targetHeight);
+      // the backend image has been cropped to the decoded region
+      this.width = jpegImage.getWidth();
+      this.height = jpegImage.getHeight();
+      return raster;
+    } catch (IllegalArgumentException | TJException e) {
+      LOGGER.error("Decoding image failed", e);
+      throw new TransformationException(e);
+    } finally {
+      options = new TransformOptions();
+    }
+  }
+
   @Override
   public Image crop(RegionParameters params) throws InvalidParametersException {
     try {
@@ -90,7 +186,13 @@ public class JpegTranImage implements Image {
       if (height > (origHeight - y)) {
         height = origHeight - y;
       }
-      jpegImage.crop(x, y, width, height);
+      if (x < 0 || y < 0) {
+        throw new InvalidParametersException("Vertical and horizontal offsets cannot be negative.");
+      }
+      if (width <= 0 || height <= 0) {
+        throw new InvalidParametersException("Width and height must be greater than 0");
+      }
+      options.setCropParameters(x, y, width, height);
     } catch (IllegalArgumentException e) {
       throw new InvalidParametersException(e.getMessage());
     }
@@ -99,38 +201,40 @@ public class JpegTranImage implements Image {
 
   @Override
   public Image scale(ResizeParameters params) throws InvalidParametersException, TransformationException {
-    int oldWidth = getWidth();
-    int oldHeight = getHeight();
+    int oldWidth = options.hasCrop() ? options.getCropWidth() : getWidth();
+    int oldHeight = options.hasCrop() ? options.getCropHeight() : getHeight();
 
     int newWidth = (int) Math.ceil(params.getWidth());
     int newHeight = (int) Math.ceil(params.getHeight());
-    try {
-      if (oldWidth == newWidth && oldHeight == newHeight) {
-        return this;
-      }
-      jpegImage.downScale(newWidth, newHeight, 85);
-    } catch (IllegalArgumentException|TJException e) {
-      LOGGER.error("Downscaling image failed", e);
+    if (oldWidth == newWidth && oldHeight == newHeight) {
+      return this;
+    }
+    if (newWidth > oldWidth || newHeight > oldHeight || newWidth <= 0 || newHeight <= 0) {
       LOGGER.debug("Tried to scale down from {}x{} to {}x{}", oldWidth, oldHeight, params.getWidth(), params.getHeight());
-      throw new TransformationException("Downscaling failed", e);
+      throw new TransformationException(String.format(
+          "Downscaling failed, target dimensions must be smaller than original dimensions, were %sx%s vs %sx%s.",
+          oldWidth, oldHeight, newWidth, newHeight));
     }
+    options.setScaleParameters(newWidth, newHeight, DEFAULT_QUALITY);
     return this;
   }
 
   @Override
   public Image rotate(int arcDegree) throws InvalidParametersException {
-    try {
-      jpegImage.rotate(arcDegree);
-    } catch (IllegalArgumentException e) {
-      throw new InvalidParametersException(e.getMessage());
+    if (arcDegree % 90 != 0 || arcDegree < 0 || arcDegree > 270) {
+      throw new InvalidParametersException("Degree must be 90, 180 or 270");
     }
+    options.setRotateDegree(arcDegree);
     return this;
   }
 
   @Override
   public Image toDepth(ImageBitDepth depth) throws UnsupportedOperationException {
     if (depth.equals(ImageBitDepth.GRAYSCALE)) {
-      jpegImage.toGrayscale();
+      options.enableGrayscale();
+      return this;
+    } else if (depth.equals(ImageBitDepth.COLOR)) {
+      // JPEG images are kept in their color space
       return this;
     } else {
       throw new UnsupportedOperationException("Bit depth transformations other than grayscale are not supported.");
@@ -142,12 +246,99 @@ public class JpegTranImage implements Image {
     throw new UnsupportedOperationException("Format conversions are not supported");
   }
 
+  /**
+   * Apply all pending operations.
+   *
+   * Pure crops and reorientations are done losslessly in the DCT domain. Plain downscales are decoded by TurboJPEG
+   * at the closest scaling factor, with only a residual resample. As soon as the image has to be scaled and cropped
+   * or reoriented, or a crop has to be combined with a reorientation (TurboJPEG applies crops in the transformed
+   * coordinate space), the image is decoded once, with only the needed region being decompressed, and re-encoded in a
+   * single native pass.
+   *
+   * Crops that have to be decoded anyway, or that do not start on an MCU boundary, are first cut losslessly to the
+   * enclosing MCU-aligned rectangle. Only the remaining few pixels are trimmed in the decoded domain.
+   */
   @Override
   public void performTransformation() throws TransformationException {
+    if (options.isEmpty()) {
+      return;
+    }
     try {
-      jpegImage.transform();
-    } catch (TJException e) {
+      if (options.hasCrop() && (options.hasScale() || options.hasTransform() || !isCropMcuAligned())) {
+        cropToEnclosingMcus();
+      }
+      if (options.hasScale() && !options.hasCrop() && !options.hasTransform()) {
+        setBackendImage(jpegImage.downScale(options.getScaleWidth(), options.getScaleHeight(),
+                                            options.getScaleQuality(), options.isGrayscale()));
+      } else if (options.hasScale() || (options.hasCrop() && (options.hasTransform() || !isCropMcuAligned()))) {
+        int x = options.hasCrop() ? options.getCropX() : 0;
+        int y = options.hasCrop() ? options.getCropY() : 0;
+        int regionWidth = options.hasCrop() ? options.getCropWidth() : getWidth();
+        int regionHeight = options.hasCrop() ? options.getCropHeight() : getHeight();
+        int targetWidth = options.hasScale() ? options.getScaleWidth() : regionWidth;
+        int targetHeight = options.hasScale() ? options.getScaleHeight() : regionHeight;
+        int quality = options.hasScale() ? options.getScaleQuality() : DEFAULT_QUALITY;
+        ByteBuffer directData = jpegImage.getDirectData();
+        setBackendImage(new JpegImage(directData != null
+            ? EpegScaler.transformJpegImage(directData, x, y, regionWidth, regionHeight, targetWidth, targetHeight,
+                                            options.getTransformOp(), options.isGrayscale(), quality)
+            : EpegScaler.transformJpegImage(jpegImage.toByteArray(), x, y, regionWidth, regionHeight, targetWidth,
+                                            targetHeight, options.getTransformOp(), options.isGrayscale(), quality)));
+      } else {
+        if (options.hasCrop()) {
+          jpegImage.crop(options.getCropX(), options.getCropY(), options.getCropWidth(), options.getCropHeight());
+        }
+        jpegImage.setTransformOperation(options.getTransformOp());
+        if (options.isGrayscale()) {
+          jpegImage.toGrayscale();
+        }
+        setBackendImage(jpegImage.transform());
+      }
+    } catch (IllegalArgumentException | TJException e) {
+      LOGGER.error("Transforming image failed", e);
       throw new TransformationException(e);
+    } finally {
+      options = new TransformOptions();
+    }
+  }
+
+  /**
+   * @return whether the pending crop starts on an MCU boundary, which is required for lossless crops
+   */
+  private boolean isCropMcuAligned() {
+    int subsamp = jpegImage.getSubsamp();
+    return options.getCropX() % TJ.getMCUWidth(subsamp) == 0 && options.getCropY() % TJ.getMCUHeight(subsamp) == 0;
+  }
+
+  /**
+   * Losslessly crop the image to the smallest MCU-aligned rectangle that encloses the pending crop and replace the
+   * pending crop with the part that is left to trim.
+   */
+  private void cropToEnclosingMcus() throws TJException {
+    int subsamp = jpegImage.getSubsamp();
+    int x = options.getCropX();
+    int y = options.getCropY();
+    int alignedX = x - x % TJ.getMCUWidth(subsamp);
+    int alignedY = y - y % TJ.getMCUHeight(subsamp);
+    int alignedWidth = x + options.getCropWidth() - alignedX;
+    int alignedHeight = y + options.getCropHeight() - alignedY;
+    if (alignedX == 0 && alignedY == 0 && alignedWidth == getWidth() && alignedHeight == getHeight()) {
+      return;
+    }
+    setBackendImage(jpegImage.crop(alignedX, alignedY, alignedWidth, alignedHeight).transform());
+    if (x == alignedX && y == alignedY && !options.hasTransform()) {
+      // Nothing left to trim, reorientations keep the crop so that partial edge MCUs are not transformed losslessly
+      options.clearCropParameters();
+    } else {
+      options.setCropParameters(x - alignedX, y - alignedY, options.getCropWidth(), options.getCropHeight());
     }
   }
+
+  /**
+   * Release the native TurboJPEG handles and the pooled image buffer.
+   */
+  @Override
+  public void close() {
+    jpegImage.close();
+  }
 }
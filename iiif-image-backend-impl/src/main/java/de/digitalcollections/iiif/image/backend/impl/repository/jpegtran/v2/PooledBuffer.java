@@ -0,0 +1,94 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * View on the valid part (<code>offset</code>, <code>length</code>) of a possibly larger buffer.
+ *
+ * If the buffer was borrowed from the {@link ByteArrayPool}, it is handed back on {@link #close()} and must not be
+ * used afterwards.
+ */
+public class PooledBuffer implements AutoCloseable {
+
+  private byte[] buffer;
+  private final int offset;
+  private final int length;
+  private final boolean pooled;
+
+  PooledBuffer(byte[] buffer, boolean pooled) {
+    this(buffer, 0, buffer.length, pooled);
+  }
+
+  private PooledBuffer(byte[] buffer, int offset, int length, boolean pooled) {
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+    this.pooled = pooled;
+  }
+
+  /**
+   * @param data data to wrap, will not be copied
+   * @return an unpooled view on the whole array
+   */
+  public static PooledBuffer wrap(byte[] data) {
+    return new PooledBuffer(data, false);
+  }
+
+  /**
+   * @param length length of the valid data
+   * @return a view on the first <code>length</code> bytes, which takes over ownership of the buffer
+   */
+  public PooledBuffer withLength(int length) {
+    if (length < 0 || offset + length > buffer.length) {
+      throw new IllegalArgumentException("Length exceeds the buffer");
+    }
+    PooledBuffer view = new PooledBuffer(buffer, offset, length, pooled);
+    this.buffer = null;
+    return view;
+  }
+
+  public byte[] getBuffer() {
+    return buffer;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return the valid data, the backing array itself if it has exactly that size and is not pooled
+   */
+  public byte[] toByteArray() {
+    if (!pooled && offset == 0 && length == buffer.length) {
+      return buffer;
+    }
+    return Arrays.copyOfRange(buffer, offset, offset + length);
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, offset, length);
+  }
+
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer data = ByteBuffer.wrap(buffer, offset, length);
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (pooled && buffer != null) {
+      ByteArrayPool.release(buffer);
+    }
+    buffer = null;
+  }
+}
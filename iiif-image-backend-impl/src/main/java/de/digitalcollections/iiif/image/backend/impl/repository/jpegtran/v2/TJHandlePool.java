@@ -0,0 +1,78 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.libjpegturbo.turbojpeg.TJCompressor;
+import org.libjpegturbo.turbojpeg.TJDecompressor;
+import org.libjpegturbo.turbojpeg.TJException;
+import org.libjpegturbo.turbojpeg.TJTransformer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of idle TurboJPEG handles.
+ *
+ * Creating a handle allocates native structures that are otherwise only freed by finalization. Borrowed handles are
+ * rebound to a new image with <code>setSourceImage</code> and have to be handed back with one of the
+ * <code>release</code> methods, which drop the reference to the last image so idle handles don't keep it reachable.
+ * Handles that don't fit into the pool are closed right away.
+ */
+public final class TJHandlePool {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TJHandlePool.class);
+
+  private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  private static final BlockingQueue<TJDecompressor> DECOMPRESSORS = new ArrayBlockingQueue<>(MAX_IDLE);
+  private static final BlockingQueue<TJTransformer> TRANSFORMERS = new ArrayBlockingQueue<>(MAX_IDLE);
+  private static final BlockingQueue<TJCompressor> COMPRESSORS = new ArrayBlockingQueue<>(MAX_IDLE);
+
+  private TJHandlePool() {
+  }
+
+  public static TJDecompressor borrowDecompressor() throws TJException {
+    TJDecompressor decompressor = DECOMPRESSORS.poll();
+    return decompressor != null ? decompressor : new TJDecompressor();
+  }
+
+  public static TJTransformer borrowTransformer() throws TJException {
+    TJTransformer transformer = TRANSFORMERS.poll();
+    return transformer != null ? transformer : new TJTransformer();
+  }
+
+  public static TJCompressor borrowCompressor() throws TJException {
+    TJCompressor compressor = COMPRESSORS.poll();
+    return compressor != null ? compressor : new TJCompressor();
+  }
+
+  public static void release(TJDecompressor decompressor) {
+    if (decompressor == null) {
+      return;
+    }
+    decompressor.clearSourceImage();
+    boolean pooled = (decompressor instanceof TJTransformer)
+        ? TRANSFORMERS.offer((TJTransformer) decompressor)
+        : DECOMPRESSORS.offer(decompressor);
+    if (!pooled) {
+      try {
+        decompressor.close();
+      } catch (TJException e) {
+        LOGGER.warn("Could not close TurboJPEG decompressor", e);
+      }
+    }
+  }
+
+  public static void release(TJCompressor compressor) {
+    if (compressor == null) {
+      return;
+    }
+    compressor.clearSourceImage();
+    if (!COMPRESSORS.offer(compressor)) {
+      try {
+        compressor.close();
+      } catch (TJException e) {
+        LOGGER.warn("Could not close TurboJPEG compressor", e);
+      }
+    }
+  }
+}
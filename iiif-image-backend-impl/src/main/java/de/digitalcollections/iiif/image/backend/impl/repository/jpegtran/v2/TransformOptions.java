@@ -1,5 +1,10 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2;
 
+import org.libjpegturbo.turbojpeg.TJTransform;
+
+/**
+ * Collects the pending operations on a JPEG image, so that they can be applied in a single pass.
+ */
 public class TransformOptions {
   private int scaleX = -1;
   private int scaleY = -1;
@@ -28,6 +33,10 @@ public class TransformOptions {
     this.cropHeight = height;
   }
 
+  public void clearCropParameters() {
+    setCropParameters(-1, -1, -1, -1);
+  }
+
   public void setRotateDegree(int rotateDegree) {
     this.rotateDegree = rotateDegree;
   }
@@ -51,4 +60,78 @@ public class TransformOptions {
   public void enableGrayscale() {
     this.doGrayscale = true;
   }
+
+  public boolean hasScale() {
+    return scaleX > 0 && scaleY > 0;
+  }
+
+  public boolean hasCrop() {
+    return cropWidth > 0 && cropHeight > 0;
+  }
+
+  public boolean hasTransform() {
+    return getTransformOp() != TJTransform.OP_NONE;
+  }
+
+  public boolean isGrayscale() {
+    return doGrayscale;
+  }
+
+  public boolean isEmpty() {
+    return !hasScale() && !hasCrop() && !hasTransform() && !doGrayscale;
+  }
+
+  public int getScaleWidth() {
+    return scaleX;
+  }
+
+  public int getScaleHeight() {
+    return scaleY;
+  }
+
+  public int getScaleQuality() {
+    return scaleQuality;
+  }
+
+  public int getCropX() {
+    return cropX;
+  }
+
+  public int getCropY() {
+    return cropY;
+  }
+
+  public int getCropWidth() {
+    return cropWidth;
+  }
+
+  public int getCropHeight() {
+    return cropHeight;
+  }
+
+  /**
+   * @return the {@link TJTransform} operation (<code>OP_*</code>) that mirrors the image horizontally (if enabled) and
+   * then rotates it clockwise
+   */
+  public int getTransformOp() {
+    if (doTranspose) {
+      return TJTransform.OP_TRANSPOSE;
+    }
+    if (doTransverse) {
+      return TJTransform.OP_TRANSVERSE;
+    }
+    if (doVerticalFlip) {
+      return TJTransform.OP_VFLIP;
+    }
+    switch (rotateDegree) {
+      case 90:
+        return doHorizontalFlip ? TJTransform.OP_TRANSVERSE : TJTransform.OP_ROT90;
+      case 180:
+        return doHorizontalFlip ? TJTransform.OP_VFLIP : TJTransform.OP_ROT180;
+      case 270:
+        return doHorizontalFlip ? TJTransform.OP_TRANSPOSE : TJTransform.OP_ROT270;
+      default:
+        return doHorizontalFlip ? TJTransform.OP_HFLIP : TJTransform.OP_NONE;
+    }
+  }
 }
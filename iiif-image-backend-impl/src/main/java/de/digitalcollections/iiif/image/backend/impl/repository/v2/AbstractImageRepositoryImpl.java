@@ -1,16 +1,26 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.v2;
 
+import de.digitalcollections.core.model.api.resource.exceptions.ResourceIOException;
 import de.digitalcollections.iiif.image.backend.api.repository.v2.ImageRepository;
+import de.digitalcollections.iiif.image.backend.impl.cache.CacheMetrics;
+import de.digitalcollections.iiif.image.backend.impl.cache.SourceImage;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.model.api.exception.ResolvingException;
+import de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException;
 import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
 import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
-import java.io.ByteArrayInputStream;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import javax.cache.annotation.CacheResult;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
@@ -25,13 +35,44 @@ public abstract class AbstractImageRepositoryImpl implements ImageRepository {
   @Autowired
   protected ImageDataRepositoryImpl imageDataRepository;
 
-  protected abstract Image createImage(String identifier, RegionParameters region) throws InvalidParametersException, ResolvingException, UnsupportedFormatException, IOException;
+  @Autowired
+  protected ImagePyramidRepositoryImpl imagePyramidRepository;
+
+  @Autowired
+  private CacheMetrics cacheMetrics;
+
+  protected abstract Image createImage(String identifier, RegionParameters region, ResizeParameters size) throws InvalidParametersException, ResolvingException, UnsupportedFormatException, IOException;
+
+  protected abstract Image createImage(SourceImage imageData, RegionParameters region, ResizeParameters size) throws InvalidParametersException, UnsupportedFormatException, IOException;
+
+  /**
+   * Decode a region of an image created by this repository into a raster.
+   *
+   * @param image image as created for the region and size
+   * @param region region to decode
+   * @param size size to decode the region at
+   * @return the decoded region at the given size
+   */
+  protected abstract BufferedImage decodeRegion(Image image, RegionParameters region, ResizeParameters size) throws InvalidParametersException, TransformationException, IOException;
+
+  /**
+   * Create an image from a part of a decoded region.
+   *
+   * @param image image the region was decoded from
+   * @param raster decoded region
+   */
+  protected abstract Image cutImage(Image image, BufferedImage raster, int x, int y, int width, int height) throws IOException;
 
   @Override
   public Image getImage(String identifier, RegionParameters regionParameters) throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException {
+    return getImage(identifier, regionParameters, null, 0);
+  }
+
+  @Override
+  public Image getImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters, int pyramidLevel) throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException {
     Image image;
     try {
-      image = createImage(identifier, regionParameters);
+      image = createImage(identifier, regionParameters, sizeParameters, pyramidLevel);
     } catch (ResolvingException re) {
       LOGGER.warn("Could not find resolver for {}", identifier, re);
       return null;
@@ -44,27 +85,178 @@ public abstract class AbstractImageRepositoryImpl implements ImageRepository {
     return image;
   }
 
+  @Override
+  public List<Image> getImages(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters, int pyramidLevel, List<RegionParameters> imageRegions) throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException {
+    Image image = getImage(identifier, regionParameters, sizeParameters, pyramidLevel);
+    if (image == null) {
+      return null;
+    }
+    List<Image> images = new ArrayList<>(imageRegions.size());
+    try {
+      BufferedImage raster = decodeRegion(image, regionParameters, sizeParameters);
+      for (RegionParameters imageRegion : imageRegions) {
+        int x = (int) imageRegion.getHorizontalOffset();
+        int y = (int) imageRegion.getVerticalOffset();
+        int width = (int) imageRegion.getWidth();
+        int height = (int) imageRegion.getHeight();
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > raster.getWidth() || y + height > raster.getHeight()) {
+          throw new InvalidParametersException(String.format("Region %d,%d,%d,%d is outside of the decoded region (%dx%d)",
+                                                             x, y, width, height, raster.getWidth(), raster.getHeight()));
+        }
+        images.add(cutImage(image, raster, x, y, width, height));
+      }
+    } catch (InvalidParametersException | RuntimeException e) {
+      images.forEach(Image::close);
+      throw e;
+    } catch (IOException | TransformationException e) {
+      images.forEach(Image::close);
+      // the images can still be rendered one by one, which reports the actual error if it persists
+      throw new UnsupportedOperationException("Could not decode region of " + identifier, e);
+    } finally {
+      image.close();
+    }
+    return images;
+  }
+
+  /**
+   * Create the image at the given pyramid level. Region and size are relative to the dimensions of that level.
+   *
+   * By default reduced resolution levels are taken from the generated pyramid of the image pyramid repository.
+   */
+  protected Image createImage(String identifier, RegionParameters region, ResizeParameters size, int pyramidLevel) throws InvalidParametersException, ResolvingException, UnsupportedFormatException, IOException {
+    if (pyramidLevel > 0) {
+      long lastModified = imageDataRepository.getLastModified(identifier);
+      return createImage(SourceImage.wrap(imagePyramidRepository.getLevelData(identifier, lastModified, pyramidLevel)),
+                         region, size);
+    }
+    return createImage(identifier, region, size);
+  }
+
+  @Override
+  public int getPyramidLevels(ImageInfo info) {
+    return imagePyramidRepository.getLevelCount(info);
+  }
+
 
   @Override
   @CacheResult(cacheName = "imageInfos")
-  public ImageInfo getImageInfo(String identifier) throws UnsupportedFormatException, UnsupportedOperationException {
+  public ImageInfo getImageInfo(String identifier) throws UnsupportedFormatException, UnsupportedOperationException, ResourceNotFoundException {
+    long start = System.nanoTime();
+    try {
+      return readImageInfo(identifier);
+    } finally {
+      cacheMetrics.recordLoad("imageInfos", System.nanoTime() - start);
+    }
+  }
+
+  private ImageInfo readImageInfo(String identifier) throws UnsupportedFormatException, ResourceNotFoundException {
     ImageInfo imageInfo = null;
-    try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(imageDataRepository.getImageData(identifier)))) {
+    // Only the header is read, the image data is not loaded into the source image cache
+    try {
+      imageInfo = readImageHeader(identifier);
+    } catch (IOException e) {
+      LOGGER.warn("Could not read image header for {}", identifier, e);
+    }
+    if (imageInfo == null) {
+      imageInfo = readImageInfoWithImageIo(identifier);
+    }
+    if (imageDataRepository.isForceJpeg()) {
+      imageInfo.setFormat(ImageFormat.JPEG);
+    } else if (imageInfo.getFormat() == ImageFormat.TIF) {
+      imageInfo.setScaleFactors(readTiffScaleFactors(identifier));
+    }
+    try {
+      imageInfo.setLastModified(imageDataRepository.getLastModified(identifier));
+    } catch (ResolvingException e) {
+      LOGGER.warn("Could not determine modification time of {}", identifier, e);
+    }
+    return imageInfo;
+  }
+
+  /**
+   * Local files are seeked to the header, other resources are only read up to it.
+   */
+  private ImageInfo readImageHeader(String identifier) throws ResourceNotFoundException, IOException {
+    boolean local;
+    try {
+      local = imageDataRepository.isDirectlyReadable(identifier);
+    } catch (ResolvingException e) {
+      LOGGER.info("Could not find image for {}", identifier);
+      throw new ResourceNotFoundException();
+    }
+    if (local) {
+      try (ImageInputStream header = getImageInputStream(identifier)) {
+        return ImageHeaderReader.readImageInfo(header);
+      }
+    }
+    try (InputStream header = getImageStream(identifier)) {
+      return ImageHeaderReader.readImageInfo(header);
+    }
+  }
+
+  private InputStream getImageStream(String identifier) throws ResourceNotFoundException {
+    try {
+      return imageDataRepository.getImageStream(identifier);
+    } catch (ResolvingException | ResourceIOException e) {
+      LOGGER.info("Could not find image for {}", identifier);
+      throw new ResourceNotFoundException();
+    }
+  }
+
+  private ImageInputStream getImageInputStream(String identifier) throws ResourceNotFoundException, IOException {
+    try {
+      return imageDataRepository.getImageInputStream(identifier);
+    } catch (ResolvingException | ResourceIOException e) {
+      LOGGER.info("Could not find image for {}", identifier);
+      throw new ResourceNotFoundException();
+    }
+  }
+
+  private List<Integer> readTiffScaleFactors(String identifier) {
+    try {
+      if (!imageDataRepository.isDirectlyReadable(identifier)) {
+        // All IFDs have to be read to find the levels, which means downloading most of a remote TIFF
+        return null;
+      }
+    } catch (ResolvingException e) {
+      LOGGER.warn("Could not find TIFF {}", identifier, e);
+      return null;
+    }
+    try (ImageInputStream in = imageDataRepository.getImageInputStream(identifier)) {
+      ImageReader reader = TiffPyramid.createReader(in);
+      try {
+        return TiffPyramid.getScaleFactors(TiffPyramid.getLevelIndices(reader));
+      } finally {
+        reader.dispose();
+      }
+    } catch (ResolvingException | ResourceIOException e) {
+      LOGGER.warn("Could not find TIFF {}", identifier, e);
+    } catch (IOException e) {
+      LOGGER.warn("Could not read resolution levels of TIFF {}", identifier, e);
+    }
+    return null;
+  }
+
+  private ImageInfo readImageInfoWithImageIo(String identifier) throws UnsupportedFormatException, ResourceNotFoundException {
+    try (ImageInputStream in = getImageInputStream(identifier)) {
       final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
-      if (readers.hasNext()) {
-        ImageReader reader = readers.next();
+      if (!readers.hasNext()) {
+        throw new UnsupportedFormatException("Could not find a reader for " + identifier);
+      }
+      ImageReader reader = readers.next();
+      try {
         reader.setInput(in);
-        imageInfo = new ImageInfoImpl();
-        final String formatName = reader.getFormatName();
+        ImageInfo imageInfo = new ImageInfoImpl();
+        imageInfo.setFormat(ImageFormat.getByExtension(reader.getFormatName()));
         imageInfo.setHeight(reader.getHeight(0));
         imageInfo.setWidth(reader.getWidth(0));
-        reader.dispose();
         return imageInfo;
-      } else {
-        throw new UnsupportedFormatException("Could not find a reader for " + identifier);
+      } finally {
+        reader.dispose();
       }
-    } catch (Exception e) {
-      throw new RuntimeException("Could not get image info for image with identifier " + identifier, e);
+    } catch (IOException e) {
+      LOGGER.warn("Could not get image info for image with identifier {}", identifier, e);
+      throw new UnsupportedFormatException("Could not get image info for image with identifier " + identifier);
     }
   }
 }
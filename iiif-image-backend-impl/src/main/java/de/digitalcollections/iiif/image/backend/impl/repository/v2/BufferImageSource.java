@@ -0,0 +1,45 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source image that is already in memory, e.g. a cached source image or a pyramid level.
+ */
+class BufferImageSource implements SeekableImageSource {
+
+  private final ByteBuffer data;
+
+  /**
+   * @param data data between position and limit, will not be copied
+   */
+  BufferImageSource(ByteBuffer data) {
+    this.data = data.slice().asReadOnlyBuffer();
+  }
+
+  @Override
+  public long length() {
+    return data.limit();
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) {
+    if (position >= data.limit()) {
+      return -1;
+    }
+    int count = (int) Math.min(dst.remaining(), data.limit() - position);
+    ByteBuffer range = data.duplicate();
+    range.position((int) position).limit((int) position + count);
+    dst.put(range);
+    return count;
+  }
+
+  @Override
+  public ByteBuffer map() {
+    return data.duplicate();
+  }
+
+  @Override
+  public void close() {
+    // nothing to release
+  }
+}
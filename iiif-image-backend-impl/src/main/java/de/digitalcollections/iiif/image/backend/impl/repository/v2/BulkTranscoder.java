@@ -0,0 +1,122 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts all images of a collection directory that are not JPEGs into a {@link TranscodingStore}, in parallel.
+ *
+ * Images whose current version is already stored are skipped, so an interrupted run can simply be restarted. Usage:
+ * <code>BulkTranscoder &lt;collection directory&gt; &lt;store directory&gt; [threads]</code>, the store directory has
+ * to be the one configured as <code>iiif.image.transcoding.directory</code>.
+ */
+public class BulkTranscoder {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BulkTranscoder.class);
+
+  private final TranscodingStore store;
+  private final int threads;
+
+  private final AtomicInteger converted = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  public BulkTranscoder(TranscodingStore store, int threads) {
+    this.store = store;
+    this.threads = threads;
+  }
+
+  /**
+   * Convert all images below the directory.
+   *
+   * @param collection directory of the collection
+   * @throws IOException if the directory can not be read
+   * @throws InterruptedException if the conversion is interrupted
+   */
+  public void transcodeAll(Path collection) throws IOException, InterruptedException {
+    List<Path> sources;
+    try (Stream<Path> files = Files.walk(collection)) {
+      sources = files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    LOGGER.info("Converting {} files in {} with {} threads", sources.size(), collection, threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (Path source : sources) {
+        tasks.add(executor.submit(() -> transcode(source)));
+      }
+      for (Future<?> task : tasks) {
+        try {
+          task.get();
+        } catch (ExecutionException e) {
+          failed.incrementAndGet();
+          LOGGER.error("Conversion failed", e.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    LOGGER.info("Converted {}, skipped {}, failed {} files", converted.get(), skipped.get(), failed.get());
+  }
+
+  private void transcode(Path source) {
+    try {
+      if (store.get(source) != null) {
+        skipped.incrementAndGet();
+        return;
+      }
+      try (SeekableImageSource imageSource = new FileImageSource(source)) {
+        // JPEGs are served as they are, files without an ImageIO reader can't be served at all
+        if (TranscodingStore.isJpeg(imageSource)
+            || !ImageIO.getImageReaders(imageSource.openImageInputStream()).hasNext()) {
+          skipped.incrementAndGet();
+          return;
+        }
+      }
+      store.transcode(source);
+      converted.incrementAndGet();
+      LOGGER.debug("Converted {}", source);
+    } catch (IOException e) {
+      failed.incrementAndGet();
+      LOGGER.warn("Could not convert {}", source, e);
+    }
+  }
+
+  public int getConverted() {
+    return converted.get();
+  }
+
+  public int getSkipped() {
+    return skipped.get();
+  }
+
+  public int getFailed() {
+    return failed.get();
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 2) {
+      System.err.println("Usage: BulkTranscoder <collection directory> <store directory> [threads]");
+      System.exit(1);
+    }
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    ImageIO.scanForPlugins();
+    BulkTranscoder transcoder = new BulkTranscoder(new TranscodingStore(Paths.get(args[1])), threads);
+    transcoder.transcodeAll(Paths.get(args[0]));
+    System.exit(transcoder.getFailed() > 0 ? 2 : 0);
+  }
+}
@@ -0,0 +1,49 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source image in a local file, read through a file channel.
+ */
+class FileImageSource implements SeekableImageSource {
+
+  private final Path path;
+  private final FileChannel channel;
+
+  FileImageSource(Path path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  @Override
+  public long length() throws IOException {
+    return channel.size();
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    return channel.read(dst, position);
+  }
+
+  @Override
+  public ByteBuffer map() throws IOException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("File is too large to be mapped: " + size + " bytes");
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -5,16 +5,18 @@ import de.digitalcollections.core.model.api.MimeType;
 import de.digitalcollections.core.model.api.resource.Resource;
 import de.digitalcollections.core.model.api.resource.enums.ResourcePersistenceType;
 import de.digitalcollections.core.model.api.resource.exceptions.ResourceIOException;
+import de.digitalcollections.iiif.image.backend.impl.cache.CacheMetrics;
+import de.digitalcollections.iiif.image.backend.impl.cache.SourceImage;
 import de.digitalcollections.iiif.image.model.api.exception.ResolvingException;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import javax.cache.annotation.CacheResult;
-import javax.imageio.ImageIO;
-import org.apache.commons.io.IOUtils;
+import javax.imageio.stream.ImageInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,23 +38,83 @@ public class ImageDataRepositoryImpl {
   @Autowired
   private ResourceService resourceService;
 
-  private byte[] convertToJpeg(byte[] data) throws IOException {
-    if ((data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
-      BufferedImage img = ImageIO.read(new ByteArrayInputStream(data));
-      ByteArrayOutputStream os = new ByteArrayOutputStream();
-      ImageIO.write(img, "JPEG", os);
-      return os.toByteArray();
-    } else {
-      return data;
-    }
+  @Autowired
+  private CacheMetrics cacheMetrics;
+
+  @Autowired
+  private TranscodingStore transcodingStore;
+
+  /**
+   * @return whether all source images are converted to JPEG before they are handed to the image repositories
+   */
+  public boolean isForceJpeg() {
+    return forceJpeg;
   }
 
+  /**
+   * @param identifier identifier of the image
+   * @return encoded data of the image, converted to JPEG if <code>forceJpeg</code> is set
+   * @throws ResolvingException if the image can not be resolved or read
+   */
   @CacheResult(cacheName = "sourceImages")
-  public byte[] getImageData(String identifier) throws ResolvingException {
+  public SourceImage getImageData(String identifier) throws ResolvingException {
+    long start = System.nanoTime();
+    try {
+      return SourceImage.wrap(readImageData(identifier));
+    } finally {
+      cacheMetrics.recordLoad("sourceImages", System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Whether the image can be decoded from its source directly, without going through the source image cache: local
+   * files that need no conversion or whose conversion is already stored, they are mapped into memory and left to the
+   * page cache.
+   *
+   * @param identifier identifier of the image
+   * @return <code>true</code> if {@link #getImageSource(String)} should be used instead of {@link #getImageData(String)}
+   * @throws ResolvingException if the image can not be resolved
+   */
+  public boolean isDirectlyReadable(String identifier) throws ResolvingException {
+    URI imageUri = getImageResource(identifier).getUri();
+    if (!"file".equals(imageUri.getScheme())) {
+      return false;
+    }
+    if (!forceJpeg) {
+      return true;
+    }
+    Path path = Paths.get(imageUri);
+    try {
+      if (transcodingStore.get(path) != null) {
+        return true;
+      }
+      try (SeekableImageSource source = new FileImageSource(path)) {
+        return TranscodingStore.isJpeg(source);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Could not check {}", imageUri, e);
+      return false;
+    }
+  }
+
+  /**
+   * @param identifier identifier of the image
+   * @return random access to the encoded image as it is stored, or to its stored JPEG conversion if
+   * <code>forceJpeg</code> is set, which has to be closed after use
+   * @throws ResolvingException if the image can not be resolved
+   * @throws ResourceIOException if the resource can not be opened
+   * @throws IOException if the file can not be opened
+   */
+  public SeekableImageSource getImageSource(String identifier) throws ResolvingException, ResourceIOException, IOException {
     Resource resource = getImageResource(identifier);
     URI imageUri = resource.getUri();
     LOGGER.debug("URI for {} is {}", identifier, imageUri.toString());
-    return getImageData(imageUri);
+    if ("file".equals(imageUri.getScheme())) {
+      Path path = Paths.get(imageUri);
+      Path transcoded = forceJpeg ? transcodingStore.get(path) : null;
+      return new FileImageSource(transcoded != null ? transcoded : path);
+    }
+    return new StreamImageSource(resourceService.getInputStream(resource));
   }
 
   InputStream getImageStream(String identifier) throws ResolvingException, ResourceIOException {
@@ -62,6 +124,26 @@ public class ImageDataRepositoryImpl {
     return resourceService.getInputStream(resource);
   }
 
+  /**
+   * @return a seekable stream on the image, which closes its source when it is closed
+   */
+  ImageInputStream getImageInputStream(String identifier) throws ResolvingException, ResourceIOException, IOException {
+    return new SeekableImageInputStream(getImageSource(identifier), true);
+  }
+
+  /**
+   * @return time of the last modification of the image in milliseconds since the epoch, -1 if it is not known (only
+   * local files provide it)
+   */
+  long getLastModified(String identifier) throws ResolvingException {
+    URI imageUri = getImageResource(identifier).getUri();
+    if (!"file".equals(imageUri.getScheme())) {
+      return -1;
+    }
+    long lastModified = new File(imageUri).lastModified();
+    return lastModified > 0 ? lastModified : -1;
+  }
+
   public Resource getImageResource(String identifier) throws ResolvingException {
     Resource resource;
     try {
@@ -73,32 +155,40 @@ public class ImageDataRepositoryImpl {
     return resource;
   }
 
-  private byte[] getImageData(URI imageUri) throws ResolvingException {
-    String location = imageUri.toString();
-    LOGGER.debug("Trying to get image data from: " + location);
-
-    try {
-      byte[] imageData;
-      InputStream inputStream = resourceService.getInputStream(imageUri);
-      imageData = IOUtils.toByteArray(inputStream);
-
-      if (imageData == null || imageData.length == 0) {
-        throw new ResolvingException("No image data at location " + location);
+  private byte[] readImageData(String identifier) throws ResolvingException {
+    try (SeekableImageSource source = getImageSource(identifier)) {
+      long length = source.length();
+      if (length < 0) {
+        // The length of a stream is only known once it has been read completely
+        length = source.map().remaining();
       }
-
-      if (forceJpeg) {
+      if (length == 0) {
+        throw new ResolvingException("No image data for identifier " + identifier);
+      }
+      if (forceJpeg && !TranscodingStore.isJpeg(source)) {
         try {
-          imageData = convertToJpeg(imageData);
+          if (source instanceof FileImageSource) {
+            // stored for the next use, which then reads the conversion directly
+            return transcodingStore.transcode(((FileImageSource) source).getPath());
+          }
+          return TranscodingStore.toJpeg(source);
         } catch (IOException e) {
           LOGGER.error("JPEG conversion failed", e);
-          throw new ResolvingException("Error converting image from location " + location + "to JPEG.");
+          throw new ResolvingException("Error converting image " + identifier + " to JPEG.");
         }
       }
-
+      if (length > Integer.MAX_VALUE) {
+        throw new ResolvingException("Image " + identifier + " is too large to be cached");
+      }
+      byte[] imageData = new byte[(int) length];
+      ByteBuffer buffer = ByteBuffer.wrap(imageData);
+      while (buffer.hasRemaining() && source.read(buffer, buffer.position()) >= 0) {
+        // read until the array is filled
+      }
       return imageData;
     } catch (IOException ex) {
-      LOGGER.warn("Error getting image data from location " + location);
-      throw new ResolvingException("No image data for location " + location);
+      LOGGER.warn("Error getting image data for identifier " + identifier, ex);
+      throw new ResolvingException("No image data for identifier " + identifier);
     }
   }
 }
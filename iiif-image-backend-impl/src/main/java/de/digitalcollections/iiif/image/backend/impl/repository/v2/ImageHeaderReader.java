@@ -0,0 +1,250 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the format and dimensions of an image from its header, without reading the image data.
+ *
+ * Supported are JPEG (SOF marker), PNG (IHDR chunk), TIFF (first IFD) and JPEG2000 (ihdr box of the jp2h header). The
+ * data is only read forward, segments and boxes in front of the header are skipped. Seekable streams seek over them,
+ * plain streams have to read them: a TIFF whose first IFD is behind the image data, as most scanners write it, is only
+ * read from a plain stream if the IFD is within the first 64 KiB.
+ */
+public final class ImageHeaderReader {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  /**
+   * Number of bytes in front of the first TIFF IFD that are read from a plain stream
+   */
+  private static final int MAX_STREAM_SKIP = 64 * 1024;
+
+  private static final int TIFF_TAG_IMAGE_WIDTH = 256;
+  private static final int TIFF_TAG_IMAGE_LENGTH = 257;
+  private static final int TIFF_TYPE_SHORT = 3;
+  private static final int TIFF_TYPE_LONG = 4;
+
+  private static final int JP2_BOX_JP2H = 0x6a703268;
+  private static final int JP2_BOX_IHDR = 0x69686472;
+
+  private ImageHeaderReader() {
+  }
+
+  /**
+   * @param in stream positioned at the beginning of the image, is not closed
+   * @return format and dimensions of the (first) image or <code>null</code> if the format is not supported or the
+   * header could not be interpreted
+   * @throws IOException if reading the stream fails
+   */
+  public static ImageInfo readImageInfo(InputStream in) throws IOException {
+    return readHeader(new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE)));
+  }
+
+  /**
+   * @param in stream positioned at the beginning of the image, data in front of the header is seeked over, is not
+   * closed
+   * @return format and dimensions of the (first) image or <code>null</code> if the format is not supported or the
+   * header could not be interpreted
+   * @throws IOException if reading the stream fails
+   */
+  public static ImageInfo readImageInfo(ImageInputStream in) throws IOException {
+    return readHeader(in);
+  }
+
+  private static ImageInfo readHeader(DataInput data) throws IOException {
+    ImageFormat format;
+    Dimension dimensions;
+    try {
+      int magic = data.readUnsignedShort();
+      switch (magic) {
+        case 0xFFD8:
+          format = ImageFormat.JPEG;
+          dimensions = readJpeg(data);
+          break;
+        case 0x8950:
+          format = ImageFormat.PNG;
+          dimensions = readPng(data);
+          break;
+        case 0x4949:
+          format = ImageFormat.TIF;
+          dimensions = readTiff(data, true);
+          break;
+        case 0x4D4D:
+          format = ImageFormat.TIF;
+          dimensions = readTiff(data, false);
+          break;
+        case 0x0000:
+          format = ImageFormat.JP2;
+          dimensions = readJp2(data);
+          break;
+        default:
+          return null;
+      }
+    } catch (EOFException e) {
+      return null;
+    }
+    if (dimensions == null) {
+      return null;
+    }
+    ImageInfo info = new ImageInfoImpl();
+    info.setFormat(format);
+    info.setWidth(dimensions.width);
+    info.setHeight(dimensions.height);
+    return info;
+  }
+
+  private static Dimension readJpeg(DataInput data) throws IOException {
+    while (true) {
+      int marker = data.readUnsignedByte();
+      if (marker != 0xFF) {
+        return null;
+      }
+      // Markers may be preceded by any number of fill bytes
+      while (marker == 0xFF) {
+        marker = data.readUnsignedByte();
+      }
+      if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+        // Standalone markers without a length
+        continue;
+      }
+      if (marker == 0xD9 || marker == 0xDA) {
+        // End of image or start of scan before any frame header
+        return null;
+      }
+      int length = data.readUnsignedShort();
+      if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+        data.readUnsignedByte(); // sample precision
+        int height = data.readUnsignedShort();
+        int width = data.readUnsignedShort();
+        // A height of 0 is only defined later in a DNL marker
+        return (width > 0 && height > 0) ? new Dimension(width, height) : null;
+      }
+      skipFully(data, length - 2);
+    }
+  }
+
+  private static Dimension readPng(DataInput data) throws IOException {
+    if (data.readUnsignedShort() != 0x4E47 || data.readInt() != 0x0D0A1A0A) {
+      return null;
+    }
+    data.readInt(); // chunk length
+    if (data.readInt() != 0x49484452) {
+      return null;
+    }
+    return toDimension(data.readInt(), data.readInt());
+  }
+
+  private static Dimension readTiff(DataInput data, boolean littleEndian) throws IOException {
+    if (readUnsignedShort(data, littleEndian) != 42) {
+      // BigTIFF or not a TIFF at all
+      return null;
+    }
+    long ifdOffset = readUnsignedInt(data, littleEndian);
+    if (ifdOffset < 8 || (!(data instanceof ImageInputStream) && ifdOffset - 8 > MAX_STREAM_SKIP)) {
+      return null;
+    }
+    skipFully(data, ifdOffset - 8);
+    int entries = readUnsignedShort(data, littleEndian);
+    long width = -1;
+    long height = -1;
+    for (int i = 0; i < entries && (width < 0 || height < 0); i++) {
+      int tag = readUnsignedShort(data, littleEndian);
+      int type = readUnsignedShort(data, littleEndian);
+      readUnsignedInt(data, littleEndian); // count
+      long value;
+      if (type == TIFF_TYPE_SHORT) {
+        value = readUnsignedShort(data, littleEndian);
+        readUnsignedShort(data, littleEndian);
+      } else if (type == TIFF_TYPE_LONG) {
+        value = readUnsignedInt(data, littleEndian);
+      } else {
+        readUnsignedInt(data, littleEndian);
+        continue;
+      }
+      if (tag == TIFF_TAG_IMAGE_WIDTH) {
+        width = value;
+      } else if (tag == TIFF_TAG_IMAGE_LENGTH) {
+        height = value;
+      }
+    }
+    return toDimension(width, height);
+  }
+
+  private static Dimension readJp2(DataInput data) throws IOException {
+    // Signature box: length 12, type 'jP  ', content <CR><LF><0x87><LF>
+    if (data.readUnsignedShort() != 0x000C || data.readInt() != 0x6A502020 || data.readInt() != 0x0D0A870A) {
+      return null;
+    }
+    while (true) {
+      long length = data.readInt() & 0xFFFFFFFFL;
+      int type = data.readInt();
+      long headerLength = 8;
+      if (length == 1) {
+        length = data.readLong();
+        headerLength = 16;
+      }
+      if (type == JP2_BOX_JP2H) {
+        // Superbox, the image header box has to be its first child
+        data.readInt();
+        if (data.readInt() != JP2_BOX_IHDR) {
+          return null;
+        }
+        int height = data.readInt();
+        int width = data.readInt();
+        return toDimension(width & 0xFFFFFFFFL, height & 0xFFFFFFFFL);
+      }
+      if (length == 0 || length < headerLength) {
+        // Box extends to the end of the file
+        return null;
+      }
+      skipFully(data, length - headerLength);
+    }
+  }
+
+  private static Dimension toDimension(long width, long height) {
+    if (width <= 0 || height <= 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+      return null;
+    }
+    return new Dimension((int) width, (int) height);
+  }
+
+  private static int readUnsignedShort(DataInput data, boolean littleEndian) throws IOException {
+    int value = data.readUnsignedShort();
+    return littleEndian ? ((value & 0xFF) << 8) | (value >>> 8) : value;
+  }
+
+  private static long readUnsignedInt(DataInput data, boolean littleEndian) throws IOException {
+    int value = data.readInt();
+    return (littleEndian ? Integer.reverseBytes(value) : value) & 0xFFFFFFFFL;
+  }
+
+  private static void skipFully(DataInput data, long count) throws IOException {
+    if (data instanceof ImageInputStream) {
+      // Reading behind the end fails with an EOFException
+      ImageInputStream in = (ImageInputStream) data;
+      in.seek(in.getStreamPosition() + count);
+      return;
+    }
+    InputStream in = (InputStream) data;
+    while (count > 0) {
+      long skipped = in.skip(count);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      count -= skipped;
+    }
+  }
+}
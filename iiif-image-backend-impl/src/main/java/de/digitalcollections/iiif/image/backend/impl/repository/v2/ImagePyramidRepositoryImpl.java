@@ -0,0 +1,96 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import de.digitalcollections.iiif.image.backend.impl.cache.CacheMetrics;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.JpegImage;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.ResolvingException;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.cache.annotation.CacheResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reduced resolution levels of JPEG source images. Level <code>n</code> is scaled by <code>1/2^n</code>.
+ *
+ * Levels are generated lazily, the first time they are requested, from the cached source image and kept in the
+ * <code>pyramidLevels</code> cache. Its memory and disk budgets are set in the ehcache configuration.
+ */
+@Repository
+public class ImagePyramidRepositoryImpl {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImagePyramidRepositoryImpl.class);
+
+  @Value("${iiif.image.pyramid.levels:5}")
+  private int maxLevels;
+
+  @Value("${iiif.image.pyramid.quality:90}")
+  private int quality;
+
+  @Autowired
+  private ImageDataRepositoryImpl imageDataRepository;
+
+  @Autowired
+  private CacheMetrics cacheMetrics;
+
+  /**
+   * @param size width or height of the full resolution image
+   * @param level pyramid level
+   * @return width or height of the image at the given level
+   */
+  public static int getLevelSize(int size, int level) {
+    return (size + (1 << level) - 1) >> level;
+  }
+
+  /**
+   * @param info information about the source image
+   * @return number of reduced resolution levels that can be generated for the image
+   */
+  public int getLevelCount(ImageInfo info) {
+    if (info.getFormat() != ImageFormat.JPEG) {
+      return 0;
+    }
+    int levels = 0;
+    while (levels < maxLevels && Math.min(info.getWidth(), info.getHeight()) >> (levels + 1) > 0) {
+      levels++;
+    }
+    return levels;
+  }
+
+  /**
+   * @param identifier identifier of the source image
+   * @param lastModified modification time of the source image, part of the cache key, so that the levels of a replaced
+   * image are generated again
+   * @param level pyramid level, must be greater than 0
+   * @return the JPEG encoded image at the given level
+   * @throws ResolvingException if the source image can not be resolved
+   * @throws IOException if the source image can not be decoded
+   */
+  @CacheResult(cacheName = "pyramidLevels")
+  public byte[] getLevelData(String identifier, long lastModified, int level) throws ResolvingException, IOException {
+    if (level <= 0 || level > maxLevels) {
+      throw new IllegalArgumentException("Invalid pyramid level " + level);
+    }
+    LOGGER.debug("Generating pyramid level {} for {}", level, identifier);
+    long start = System.nanoTime();
+    try (JpegImage image = new JpegImage(getSourceData(identifier))) {
+      image.downScale(getLevelSize(image.getWidth(), level), getLevelSize(image.getHeight(), level), quality);
+      return image.toByteArray();
+    } finally {
+      cacheMetrics.recordLoad("pyramidLevels", System.nanoTime() - start);
+    }
+  }
+
+  private ByteBuffer getSourceData(String identifier) throws ResolvingException, IOException {
+    if (imageDataRepository.isDirectlyReadable(identifier)) {
+      try (SeekableImageSource source = imageDataRepository.getImageSource(identifier)) {
+        return source.map();
+      }
+    }
+    return imageDataRepository.getImageData(identifier).asByteBuffer();
+  }
+}
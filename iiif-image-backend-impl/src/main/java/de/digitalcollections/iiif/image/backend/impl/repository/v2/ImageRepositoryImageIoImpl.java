@@ -1,17 +1,23 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.v2;
 
+import de.digitalcollections.iiif.image.backend.impl.cache.SourceImage;
 import de.digitalcollections.iiif.image.backend.impl.repository.imageio.v2.JAIImage;
 import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
 import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.model.api.exception.ResolvingException;
 import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Repository;
@@ -22,10 +28,39 @@ public class ImageRepositoryImageIoImpl extends AbstractImageRepositoryImpl {
   private static final Logger LOGGER = LoggerFactory.getLogger(ImageRepositoryImageIoImpl.class);
 
   @Override
-  protected Image createImage(String identifier, RegionParameters regionParameters) throws ResolvingException, UnsupportedFormatException, IOException {
+  protected Image createImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters) throws ResolvingException, UnsupportedFormatException, IOException {
     LOGGER.debug("Loading image {} with ImageIO imlementation.", identifier);
-    byte[] imageData = imageDataRepository.getImageData(identifier);
-    return new JAIImage(imageData, regionParameters);
+    if (imageDataRepository.isDirectlyReadable(identifier)) {
+      try (ImageInputStream in = imageDataRepository.getImageInputStream(identifier)) {
+        return new JAIImage(in, regionParameters, sizeParameters);
+      }
+    }
+    return createImage(imageDataRepository.getImageData(identifier), regionParameters, sizeParameters);
+  }
+
+  @Override
+  protected Image createImage(SourceImage imageData, RegionParameters regionParameters, ResizeParameters sizeParameters) throws UnsupportedFormatException, IOException {
+    try (ImageInputStream in = new BufferImageSource(imageData.asByteBuffer()).openImageInputStream()) {
+      return new JAIImage(in, regionParameters, sizeParameters);
+    }
+  }
+
+  @Override
+  protected BufferedImage decodeRegion(Image image, RegionParameters regionParameters, ResizeParameters sizeParameters) throws InvalidParametersException, TransformationException {
+    // The image has been decoded while reading, only the remaining crop and resample are left
+    if (regionParameters != null) {
+      image.crop(regionParameters);
+    }
+    if (sizeParameters != null) {
+      image.scale(sizeParameters);
+    }
+    return ((JAIImage) image).getImage();
+  }
+
+  @Override
+  protected Image cutImage(Image image, BufferedImage raster, int x, int y, int width, int height) {
+    // The parts share the raster, JAIImage never modifies an image in place
+    return new JAIImage(raster.getSubimage(x, y, width, height), image.getFormat().getExtensions()[0]);
   }
 
   @Override
@@ -64,6 +99,11 @@ public class ImageRepositoryImageIoImpl extends AbstractImageRepositoryImpl {
     return true;
   }
 
+  @Override
+  public boolean supportsRotation(RotationParameters rotation) {
+    return rotation == null || rotation.getDegrees() % 90 == 0;
+  }
+
   @Override
   public boolean supportsBitDepth(ImageBitDepth bitDepth) {
     if (bitDepth == null) {
@@ -1,5 +1,6 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.v2;
 
+import de.digitalcollections.iiif.image.backend.impl.cache.SourceImage;
 import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.JpegTranImage;
 import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
 import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
@@ -9,8 +10,13 @@ import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatExc
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.libjpegturbo.turbojpeg.TJ;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cache.annotation.Cacheable;
@@ -25,13 +31,37 @@ public class ImageRepositoryJpegTranImpl extends AbstractImageRepositoryImpl imp
 
   @Override
   @Cacheable(value="sourceImages")
-  protected Image createImage(String identifier, RegionParameters regionParameters) throws InvalidParametersException, ResolvingException, UnsupportedFormatException, IOException {
+  protected Image createImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters) throws InvalidParametersException, ResolvingException, UnsupportedFormatException, IOException {
     LOGGER.debug("Loading image {} with TurboJPEG imlementation.", identifier);
-    byte[] imageData = imageDataRepository.getImageData(identifier);
-    if ((imageData[0] & 0xFF) != 0xFF || (imageData[1] & 0xFF) != 0xD8) {
+    if (imageDataRepository.isDirectlyReadable(identifier)) {
+      try (SeekableImageSource source = imageDataRepository.getImageSource(identifier)) {
+        return createImage(source.map(), regionParameters, sizeParameters);
+      }
+    }
+    return createImage(imageDataRepository.getImageData(identifier), regionParameters, sizeParameters);
+  }
+
+  @Override
+  protected Image createImage(SourceImage imageData, RegionParameters regionParameters, ResizeParameters sizeParameters) throws UnsupportedFormatException, IOException {
+    return createImage(imageData.asByteBuffer(), regionParameters, sizeParameters);
+  }
+
+  private Image createImage(ByteBuffer data, RegionParameters regionParameters, ResizeParameters sizeParameters) throws UnsupportedFormatException, IOException {
+    if (data.remaining() < 2 || (data.get(0) & 0xFF) != 0xFF || (data.get(1) & 0xFF) != 0xD8) {
       throw new UnsupportedFormatException("Not a JPEG file");
     }
-    return new JpegTranImage(imageData);
+    return new JpegTranImage(data);
+  }
+
+  @Override
+  protected BufferedImage decodeRegion(Image image, RegionParameters regionParameters, ResizeParameters sizeParameters) throws InvalidParametersException, TransformationException {
+    return ((JpegTranImage) image).decode(regionParameters, sizeParameters);
+  }
+
+  @Override
+  protected Image cutImage(Image image, BufferedImage raster, int x, int y, int width, int height) throws IOException {
+    int subsamp = raster.getType() == BufferedImage.TYPE_BYTE_GRAY ? TJ.SAMP_GRAY : ((JpegTranImage) image).getSubsamp();
+    return JpegTranImage.encode(raster, x, y, width, height, subsamp);
   }
 
   @Override
@@ -51,19 +81,21 @@ public class ImageRepositoryJpegTranImpl extends AbstractImageRepositoryImpl imp
 
   @Override
   public boolean supportsCropOperation(RegionParameters region) {
-    return (
-        region == null
-        || (region.getWidth() % 8 == 0
-            && region.getHeight() % 8 == 0
-            && region.getHorizontalOffset() % 8 == 0
-            && region.getVerticalOffset() % 8 == 0));
+    // Regions that are not MCU-aligned are cropped to the enclosing MCUs and trimmed after decoding
+    return true;
   }
 
   @Override
   public boolean supportsScaleOperation(Dimension imageDims, ResizeParameters scaleParams) {
+    // Only downscaling is supported
     return (scaleParams == null
-            || (scaleParams.getWidth() < imageDims.getHeight()
-                && scaleParams.getHeight() < imageDims.getWidth()));
+            || (scaleParams.getWidth() <= imageDims.getWidth()
+                && scaleParams.getHeight() <= imageDims.getHeight()));
+  }
+
+  @Override
+  public boolean supportsRotation(RotationParameters rotation) {
+    return rotation == null || rotation.getDegrees() % 90 == 0;
   }
 
   @Override
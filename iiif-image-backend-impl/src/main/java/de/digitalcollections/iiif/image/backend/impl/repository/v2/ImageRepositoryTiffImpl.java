@@ -0,0 +1,82 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import de.digitalcollections.iiif.image.backend.impl.cache.SourceImage;
+import de.digitalcollections.iiif.image.backend.impl.repository.imageio.v2.JAIImage;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.ResolvingException;
+import de.digitalcollections.iiif.image.model.api.v2.Image;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import java.io.IOException;
+import java.util.List;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads local TIFF images straight from the resolved file. Reduced resolution levels stored in the TIFF itself are used
+ * as pyramid levels, so that downscaled requests decode only a fraction of the full resolution image. Remote TIFFs are
+ * read from the source image cache at full resolution.
+ */
+@Repository(value = "ImageRepositoryTiffImpl-v2.0.0")
+public class ImageRepositoryTiffImpl extends ImageRepositoryImageIoImpl implements Ordered {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageRepositoryTiffImpl.class);
+
+  @Override
+  public int getOrder() {
+    return 0;
+  }
+
+  @Override
+  protected Image createImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters) throws ResolvingException, IOException {
+    return createImage(identifier, regionParameters, sizeParameters, 0);
+  }
+
+  @Override
+  protected Image createImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters, int pyramidLevel) throws ResolvingException, IOException {
+    LOGGER.debug("Loading level {} of TIFF {}", pyramidLevel, identifier);
+    if (imageDataRepository.isDirectlyReadable(identifier)) {
+      try (ImageInputStream in = imageDataRepository.getImageInputStream(identifier)) {
+        return createImage(in, regionParameters, sizeParameters, pyramidLevel);
+      }
+    }
+    // Other TIFFs are read from the source image cache, they have no pyramid levels
+    SourceImage imageData = imageDataRepository.getImageData(identifier);
+    try (ImageInputStream in = new BufferImageSource(imageData.asByteBuffer()).openImageInputStream()) {
+      return createImage(in, regionParameters, sizeParameters, pyramidLevel);
+    }
+  }
+
+  private Image createImage(ImageInputStream in, RegionParameters regionParameters, ResizeParameters sizeParameters, int pyramidLevel) throws IOException {
+    ImageReader reader = TiffPyramid.createReader(in);
+    try {
+      int imageIndex = 0;
+      if (pyramidLevel > 0) {
+        List<Integer> levelIndices = TiffPyramid.getLevelIndices(reader);
+        if (pyramidLevel >= levelIndices.size()) {
+          throw new IllegalArgumentException("TIFF has no pyramid level " + pyramidLevel);
+        }
+        imageIndex = levelIndices.get(pyramidLevel);
+      }
+      return new JAIImage(reader, imageIndex, regionParameters, sizeParameters);
+    } finally {
+      reader.dispose();
+    }
+  }
+
+  @Override
+  public int getPyramidLevels(ImageInfo info) {
+    List<Integer> scaleFactors = info.getScaleFactors();
+    return scaleFactors != null ? scaleFactors.size() - 1 : 0;
+  }
+
+  @Override
+  public boolean supportsInputFormat(ImageFormat inFormat) {
+    return inFormat == ImageFormat.TIF && super.supportsInputFormat(inFormat);
+  }
+}
@@ -0,0 +1,67 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * ImageIO stream on a {@link SeekableImageSource}. Seeking only moves the position, each read goes to the source, so
+ * readers that skip through a large image (e.g. to the tiles of a region in a TIFF) only touch the data they need.
+ */
+class SeekableImageInputStream extends ImageInputStreamImpl {
+
+  private final SeekableImageSource source;
+  private final boolean closeSource;
+  private final byte[] single = new byte[1];
+  private boolean closed;
+
+  /**
+   * @param source source to read from
+   * @param closeSource whether the source is closed with the stream
+   */
+  SeekableImageInputStream(SeekableImageSource source, boolean closeSource) {
+    this.source = source;
+    this.closeSource = closeSource;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(single, 0, 1) == 1 ? single[0] & 0xFF : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    bitOffset = 0;
+    if (len == 0) {
+      return 0;
+    }
+    int count = source.read(ByteBuffer.wrap(b, off, len), streamPos);
+    if (count > 0) {
+      streamPos += count;
+    }
+    return count;
+  }
+
+  @Override
+  public long length() {
+    try {
+      return source.length();
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    // ImageIO.read closes the stream itself, closing it again must not fail
+    if (closed) {
+      return;
+    }
+    closed = true;
+    super.close();
+    if (closeSource) {
+      source.close();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Random access to the encoded data of a source image, without copying all of it onto the heap.
+ *
+ * Local files are read through a file channel and mapped into memory, so large masters stay in the page cache of the
+ * operating system. Remote resources only provide a stream, it is copied into a temporary file as far as it is read.
+ */
+public interface SeekableImageSource extends Closeable {
+
+  /**
+   * @return length of the data in bytes, -1 if it is not known without reading all of the data
+   * @throws IOException if the data can not be read
+   */
+  long length() throws IOException;
+
+  /**
+   * Read data at the given position, independent of any other reads.
+   *
+   * @param dst buffer to read into, up to its remaining bytes
+   * @param position position in the data
+   * @return number of bytes read, -1 if the position is at or behind the end of the data
+   * @throws IOException if the data can not be read
+   */
+  int read(ByteBuffer dst, long position) throws IOException;
+
+  /**
+   * @return read-only buffer on the whole data, a direct memory mapping for files, it stays valid after the source is
+   * closed
+   * @throws IOException if the data can not be read or is too large to be mapped
+   */
+  ByteBuffer map() throws IOException;
+
+  /**
+   * @return stream for ImageIO readers, closing it does not close the source
+   */
+  default ImageInputStream openImageInputStream() {
+    return new SeekableImageInputStream(this, false);
+  }
+}
@@ -0,0 +1,95 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source image that is only available as a stream, e.g. from a remote resource.
+ *
+ * The stream is copied into a temporary file as far as it is needed to serve a read, reads behind that position are
+ * served from the file. The file is deleted when the source is closed.
+ */
+class StreamImageSource implements SeekableImageSource {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final InputStream stream;
+  private final FileChannel cache;
+  private long cached;
+  private boolean complete;
+
+  StreamImageSource(InputStream stream) throws IOException {
+    this.stream = stream;
+    this.cache = FileChannel.open(Files.createTempFile("iiif-source", ".tmp"), StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+  }
+
+  /**
+   * Copy the stream into the temporary file until it holds at least <code>end</code> bytes or the stream is exhausted.
+   */
+  private synchronized void fill(long end) throws IOException {
+    byte[] chunk = null;
+    while (!complete && cached < end) {
+      if (chunk == null) {
+        chunk = new byte[CHUNK_SIZE];
+      }
+      int count = stream.read(chunk);
+      if (count < 0) {
+        complete = true;
+        break;
+      }
+      ByteBuffer data = ByteBuffer.wrap(chunk, 0, count);
+      while (data.hasRemaining()) {
+        cached += cache.write(data, cached);
+      }
+    }
+  }
+
+  /**
+   * @return length of the data in bytes once the stream has been read completely, -1 before, so asking for the length
+   * does not download the whole resource
+   */
+  @Override
+  public synchronized long length() {
+    return complete ? cached : -1;
+  }
+
+  @Override
+  public int read(ByteBuffer dst, long position) throws IOException {
+    fill(position + dst.remaining());
+    if (position >= cached) {
+      return -1;
+    }
+    if (position + dst.remaining() <= cached) {
+      return cache.read(dst, position);
+    }
+    ByteBuffer available = dst.duplicate();
+    available.limit(available.position() + (int) (cached - position));
+    int count = cache.read(available, position);
+    dst.position(available.position());
+    return count;
+  }
+
+  @Override
+  public ByteBuffer map() throws IOException {
+    fill(Long.MAX_VALUE);
+    long size = cached;
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Image is too large to be mapped: " + size + " bytes");
+    }
+    return cache.map(FileChannel.MapMode.READ_ONLY, 0, size);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      stream.close();
+    } finally {
+      cache.close();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Resolution levels of a pyramidal TIFF.
+ *
+ * Pyramidal TIFFs store reduced resolution versions of the full image in further IFDs. A level <code>n</code> is an IFD
+ * whose dimensions are the full resolution dimensions divided by <code>2^n</code>, rounded either way.
+ */
+public final class TiffPyramid {
+
+  private TiffPyramid() {
+  }
+
+  /**
+   * @param in stream positioned at the beginning of the TIFF
+   * @return a TIFF reader with its input set to the stream, has to be disposed by the caller
+   * @throws IOException if there is no TIFF reader for the stream
+   */
+  public static ImageReader createReader(ImageInputStream in) throws IOException {
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+    if (!readers.hasNext()) {
+      throw new IOException("Could not find a TIFF reader");
+    }
+    ImageReader reader = readers.next();
+    reader.setInput(in);
+    return reader;
+  }
+
+  /**
+   * @param reader TIFF reader with its input set
+   * @return the image indices of the consecutive resolution levels, starting with the full resolution at level 0
+   * @throws IOException if reading the IFDs fails
+   */
+  public static List<Integer> getLevelIndices(ImageReader reader) throws IOException {
+    List<Integer> indices = new ArrayList<>();
+    indices.add(0);
+    int width = reader.getWidth(0);
+    int height = reader.getHeight(0);
+    int numImages = reader.getNumImages(true);
+    for (int level = 1; ; level++) {
+      int index = findLevel(reader, numImages, width, height, level);
+      if (index < 0) {
+        return indices;
+      }
+      indices.add(index);
+    }
+  }
+
+  /**
+   * @param indices image indices of the resolution levels
+   * @return the scale factors of the levels, or <code>null</code> if there is only the full resolution
+   */
+  public static List<Integer> getScaleFactors(List<Integer> indices) {
+    if (indices.size() < 2) {
+      return null;
+    }
+    List<Integer> scaleFactors = new ArrayList<>();
+    for (int level = 0; level < indices.size(); level++) {
+      scaleFactors.add(1 << level);
+    }
+    return scaleFactors;
+  }
+
+  private static int findLevel(ImageReader reader, int numImages, int width, int height, int level) throws IOException {
+    if ((width >> level) == 0 || (height >> level) == 0) {
+      return -1;
+    }
+    for (int index = 1; index < numImages; index++) {
+      if (matches(reader.getWidth(index), width, level) && matches(reader.getHeight(index), height, level)) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean matches(int levelSize, int fullSize, int level) {
+    return levelSize == (fullSize >> level) || levelSize == ((fullSize + (1 << level) - 1) >> level);
+  }
+}
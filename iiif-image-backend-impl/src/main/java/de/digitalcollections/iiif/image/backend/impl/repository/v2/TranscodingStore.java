@@ -0,0 +1,243 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Persistent store of JPEG conversions of local source images, used if <code>iiif.image.forceJpeg</code> is set.
+ *
+ * A conversion is addressed by the SHA-256 hash of the source URI and its modification time, so it is never served for
+ * a changed source and needs no invalidation. Storing the conversion of a changed source deletes the conversions of its
+ * older versions. The conversions are kept in <code>iiif.image.transcoding.directory</code> (empty to disable the
+ * store), an index of the existing ones is built on startup, so lookups don't touch the disk. Sources without a
+ * modification time, i.e. remote ones, are converted but not stored.
+ *
+ * Whole collections can be converted ahead of time with {@link BulkTranscoder}.
+ */
+@Repository
+public class TranscodingStore implements InitializingBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TranscodingStore.class);
+
+  private static final String EXTENSION = ".jpg";
+  private static final String TEMP_EXTENSION = ".tmp";
+
+  /**
+   * Temporary files younger than this may still be written by a running conversion, e.g. of a bulk run in another
+   * process, so they are not deleted on startup.
+   */
+  private static final long TEMP_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  @Value("${iiif.image.transcoding.directory:${java.io.tmpdir}/iiif-transcoded}")
+  private String directoryPath;
+
+  private Path directory;
+
+  /**
+   * Conversions by address
+   */
+  private final ConcurrentMap<String, Path> index = new ConcurrentHashMap<>();
+
+  public TranscodingStore() {
+  }
+
+  /**
+   * @param directory directory of the store, its index is loaded immediately
+   * @throws IOException if the directory can not be read
+   */
+  public TranscodingStore(Path directory) throws IOException {
+    this.directory = directory;
+    loadIndex();
+  }
+
+  @Override
+  public void afterPropertiesSet() throws IOException {
+    if (directoryPath != null && !directoryPath.trim().isEmpty()) {
+      directory = Paths.get(directoryPath.trim());
+      loadIndex();
+    }
+  }
+
+  private void loadIndex() throws IOException {
+    index.clear();
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    long tempExpiry = System.currentTimeMillis() - TEMP_MAX_AGE_MILLIS;
+    try (Stream<Path> files = Files.walk(directory, 2)) {
+      files.filter(Files::isRegularFile).forEach(file -> {
+        String name = file.getFileName().toString();
+        if (name.endsWith(EXTENSION)) {
+          index.put(name.substring(0, name.length() - EXTENSION.length()), file);
+        } else if (name.endsWith(TEMP_EXTENSION)) {
+          try {
+            if (Files.getLastModifiedTime(file).toMillis() < tempExpiry) {
+              // left over from an interrupted conversion
+              Files.delete(file);
+            }
+          } catch (IOException e) {
+            LOGGER.warn("Could not delete {}", file, e);
+          }
+        }
+      });
+    }
+    LOGGER.info("Found {} converted images in {}", index.size(), directory);
+  }
+
+  /**
+   * @return <code>true</code> if conversions are persisted
+   */
+  public boolean isEnabled() {
+    return directory != null;
+  }
+
+  /**
+   * @return number of stored conversions
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * @param source local source image
+   * @return the stored JPEG conversion of the current version of the source, <code>null</code> if there is none
+   * @throws IOException if the modification time of the source can not be read
+   */
+  public Path get(Path source) throws IOException {
+    if (!isEnabled()) {
+      return null;
+    }
+    return index.get(getAddress(source, Files.getLastModifiedTime(source).toMillis()));
+  }
+
+  /**
+   * Convert a local source image to JPEG and store the conversion.
+   *
+   * @param source local source image, must not be a JPEG
+   * @return the JPEG encoded image
+   * @throws IOException if the source can not be read or converted
+   */
+  public byte[] transcode(Path source) throws IOException {
+    // taken before the conversion, a source that changes meanwhile is converted again on its next use
+    long lastModified = Files.getLastModifiedTime(source).toMillis();
+    byte[] jpeg;
+    try (SeekableImageSource imageSource = new FileImageSource(source)) {
+      jpeg = toJpeg(imageSource);
+    }
+    if (isEnabled()) {
+      store(source, lastModified, jpeg);
+    }
+    return jpeg;
+  }
+
+  private void store(Path source, long lastModified, byte[] jpeg) throws IOException {
+    String sourceHash = getSourceHash(source);
+    String address = getAddress(sourceHash, lastModified);
+    Path target = directory.resolve(sourceHash.substring(0, 2)).resolve(address + EXTENSION);
+    Files.createDirectories(target.getParent());
+    Path temp = Files.createTempFile(target.getParent(), address, TEMP_EXTENSION);
+    try {
+      Files.write(temp, jpeg);
+      Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    index.put(address, target);
+    deleteSuperseded(target.getParent(), sourceHash, lastModified);
+  }
+
+  /**
+   * Delete the conversions of older versions of a source, they are never served again.
+   */
+  private void deleteSuperseded(Path shard, String sourceHash, long lastModified) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(shard, sourceHash + "-*" + EXTENSION)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        String address = name.substring(0, name.length() - EXTENSION.length());
+        long version;
+        try {
+          version = Long.parseLong(address.substring(sourceHash.length() + 1));
+        } catch (NumberFormatException e) {
+          continue;
+        }
+        if (version < lastModified) {
+          index.remove(address, file);
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+  }
+
+  private static String getAddress(Path source, long lastModified) {
+    return getAddress(getSourceHash(source), lastModified);
+  }
+
+  private static String getAddress(String sourceHash, long lastModified) {
+    return sourceHash + "-" + lastModified;
+  }
+
+  private static String getSourceHash(Path source) {
+    String key = source.toAbsolutePath().normalize().toUri().toString();
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder address = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        address.append(String.format("%02x", b & 0xFF));
+      }
+      return address.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  /**
+   * @param source any source image
+   * @return <code>true</code> if the source starts with the JPEG SOI marker
+   * @throws IOException if the source can not be read
+   */
+  static boolean isJpeg(SeekableImageSource source) throws IOException {
+    ByteBuffer magic = ByteBuffer.allocate(2);
+    source.read(magic, 0);
+    return magic.position() == 2 && (magic.get(0) & 0xFF) == 0xFF && (magic.get(1) & 0xFF) == 0xD8;
+  }
+
+  /**
+   * Decode the source with ImageIO and encode it as JPEG.
+   *
+   * @param source any source image
+   * @return the JPEG encoded image
+   * @throws IOException if the source can not be read, there is no reader for its format or no JPEG writer for its
+   * image type
+   */
+  static byte[] toJpeg(SeekableImageSource source) throws IOException {
+    BufferedImage img = ImageIO.read(source.openImageInputStream());
+    if (img == null) {
+      throw new IOException("No reader for the image format");
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    if (!ImageIO.write(img, "JPEG", os)) {
+      throw new IOException("No JPEG writer for images of type " + img.getType());
+    }
+    return os.toByteArray();
+  }
+}
@@ -21,6 +21,7 @@ import org.springframework.core.io.ResourceLoader;
  */
 @Configuration
 @ComponentScan(basePackages = {
+  "de.digitalcollections.iiif.image.backend.impl.cache",
   "de.digitalcollections.iiif.image.backend.impl.repository",
   "de.digitalcollections.core.config"
 })
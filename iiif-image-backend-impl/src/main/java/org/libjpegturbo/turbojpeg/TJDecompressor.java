@@ -104,10 +104,47 @@ public class TJDecompressor implements Closeable {
       throw new IllegalArgumentException("Invalid argument in setSourceImage()");
     jpegBuf = jpegImage;
     jpegBufSize = imageSize;
+    jpegDirectBuf = null;
     decompressHeader(jpegBuf, jpegBufSize);
     yuvImage = null;
   }
 
+  /**
+   * Associate the JPEG image stored between the position and the limit of the
+   * direct buffer <code>jpegImage</code> (for instance a
+   * <code>MappedByteBuffer</code>) with this decompressor instance.  The image
+   * is read in place by the native code, so it neither has to be copied to
+   * the Java heap nor does decompression block the garbage collector.
+   * Decoding to YUV is not supported for such images.
+   *
+   * @param jpegImage direct buffer containing the JPEG image.  Neither the
+   * buffer contents nor its position are modified.
+   */
+  public void setSourceImage(ByteBuffer jpegImage) throws TJException {
+    if (jpegImage == null || !jpegImage.isDirect() || !jpegImage.hasRemaining())
+      throw new IllegalArgumentException("Invalid argument in setSourceImage()");
+    decompressHeaderDirect(jpegImage, jpegImage.position(),
+                           jpegImage.remaining());
+    jpegDirectBuf = jpegImage;
+    jpegDirectOffset = jpegImage.position();
+    jpegBufSize = jpegImage.remaining();
+    jpegBuf = null;
+    yuvImage = null;
+  }
+
+  /**
+   * Dissociate the source image from this decompressor instance, so that an
+   * idle instance does not keep the image data reachable.  A new source image
+   * has to be set before the next decompress operation.
+   */
+  public void clearSourceImage() {
+    jpegBuf = null;
+    jpegDirectBuf = null;
+    jpegDirectOffset = 0;
+    jpegBufSize = 0;
+    yuvImage = null;
+  }
+
   /**
    * @deprecated Use {@link #setSourceImage(byte[], int)} instead.
    */
@@ -130,6 +167,7 @@ public class TJDecompressor implements Closeable {
       throw new IllegalArgumentException("Invalid argument in setSourceImage()");
     yuvImage = srcImage;
     jpegBuf = null;
+    jpegDirectBuf = null;
     jpegBufSize = 0;
   }
 
@@ -373,7 +411,7 @@ public class TJDecompressor implements Closeable {
   public void decompress(byte[] dstBuf, int x, int y, int desiredWidth,
                          int pitch, int desiredHeight, int pixelFormat,
                          int flags) throws TJException {
-    if (jpegBuf == null && yuvImage == null)
+    if (jpegBuf == null && jpegDirectBuf == null && yuvImage == null)
       throw new IllegalStateException(NO_ASSOC_ERROR);
     if (dstBuf == null || x < 0 || y < 0 || pitch < 0 ||
         (yuvImage != null && (desiredWidth < 0 || desiredHeight < 0)) ||
@@ -384,6 +422,10 @@ public class TJDecompressor implements Closeable {
                 yuvImage.getStrides(), yuvImage.getSubsamp(), dstBuf, x, y,
                 yuvImage.getWidth(), pitch, yuvImage.getHeight(), pixelFormat,
                 flags);
+    else if (jpegDirectBuf != null)
+      decompressDirect(jpegDirectBuf, jpegDirectOffset, jpegBufSize, dstBuf, 1,
+                       0, x, y, desiredWidth, pitch, desiredHeight,
+                       pixelFormat, flags);
     else {
       if (x > 0 || y > 0)
         decompress(jpegBuf, jpegBufSize, dstBuf, x, y, desiredWidth, pitch,
@@ -681,7 +723,7 @@ public class TJDecompressor implements Closeable {
   public void decompress(int[] dstBuf, int x, int y, int desiredWidth,
                          int stride, int desiredHeight, int pixelFormat,
                          int flags) throws TJException {
-    if (jpegBuf == null && yuvImage == null)
+    if (jpegBuf == null && jpegDirectBuf == null && yuvImage == null)
       throw new IllegalStateException(NO_ASSOC_ERROR);
     if (dstBuf == null || x < 0 || y < 0 || stride < 0 ||
         (yuvImage != null && (desiredWidth < 0 || desiredHeight < 0)) ||
@@ -692,11 +734,64 @@ public class TJDecompressor implements Closeable {
                 yuvImage.getStrides(), yuvImage.getSubsamp(), dstBuf, x, y,
                 yuvImage.getWidth(), stride, yuvImage.getHeight(), pixelFormat,
                 flags);
+    else if (jpegDirectBuf != null)
+      decompressDirect(jpegDirectBuf, jpegDirectOffset, jpegBufSize, dstBuf, 4,
+                       0, x, y, desiredWidth, stride * 4, desiredHeight,
+                       pixelFormat, flags);
     else
       decompress(jpegBuf, jpegBufSize, dstBuf, x, y, desiredWidth, stride,
                  desiredHeight, pixelFormat, flags);
   }
 
+  /**
+   * Decompress the JPEG source image associated with this decompressor
+   * instance into the direct buffer <code>dstBuf</code>, starting at its
+   * position.  The position of the buffer is not modified.
+   *
+   * @param dstBuf direct buffer that will receive the decompressed image.
+   * Its remaining space must be at least <code>pitch * scaledHeight</code>
+   * bytes.
+   *
+   * @param desiredWidth see
+   * {@link #decompress(byte[], int, int, int, int, int, int, int)}
+   *
+   * @param pitch see
+   * {@link #decompress(byte[], int, int, int, int, int, int, int)}
+   *
+   * @param desiredHeight see
+   * {@link #decompress(byte[], int, int, int, int, int, int, int)}
+   *
+   * @param pixelFormat pixel format of the decompressed image (one of
+   * {@link TJ#PF_RGB TJ.PF_*})
+   *
+   * @param flags the bitwise OR of one or more of
+   * {@link TJ#FLAG_BOTTOMUP TJ.FLAG_*}
+   */
+  public void decompress(ByteBuffer dstBuf, int desiredWidth, int pitch,
+                         int desiredHeight, int pixelFormat, int flags)
+                         throws TJException {
+    if (jpegBuf == null && jpegDirectBuf == null)
+      throw new IllegalStateException(NO_ASSOC_ERROR);
+    if (dstBuf == null || !dstBuf.isDirect() || desiredWidth < 0 ||
+        pitch < 0 || desiredHeight < 0 || pixelFormat < 0 ||
+        pixelFormat >= TJ.NUMPF || flags < 0)
+      throw new IllegalArgumentException("Invalid argument in decompress()");
+    int scaledWidth = getScaledWidth(desiredWidth, desiredHeight);
+    int scaledHeight = getScaledHeight(desiredWidth, desiredHeight);
+    int actualPitch = (pitch == 0) ? scaledWidth * TJ.getPixelSize(pixelFormat)
+                                   : pitch;
+    if ((long)actualPitch * scaledHeight > dstBuf.remaining())
+      throw new IllegalArgumentException("Destination buffer is not large enough");
+    if (jpegDirectBuf != null)
+      decompressDirect(jpegDirectBuf, jpegDirectOffset, jpegBufSize, dstBuf, 1,
+                       dstBuf.position(), 0, 0, desiredWidth, pitch,
+                       desiredHeight, pixelFormat, flags);
+    else
+      decompressDirect(jpegBuf, 0, jpegBufSize, dstBuf, 1, dstBuf.position(),
+                       0, 0, desiredWidth, pitch, desiredHeight, pixelFormat,
+                       flags);
+  }
+
   /**
    * Decompress the JPEG source image or decode the YUV source image associated
    * with this decompressor instance and output a decompressed/decoded image to
@@ -779,10 +874,10 @@ public class TJDecompressor implements Closeable {
                   yuvImage.getWidth(), stride, yuvImage.getHeight(),
                   pixelFormat, flags);
       else {
-        if (jpegBuf == null)
+        if (jpegBuf == null && jpegDirectBuf == null)
           throw new IllegalStateException(NO_ASSOC_ERROR);
-        decompress(jpegBuf, jpegBufSize, buf, 0, 0, scaledWidth, stride,
-                   scaledHeight, pixelFormat, flags);
+        decompress(buf, 0, 0, scaledWidth, stride, scaledHeight, pixelFormat,
+                   flags);
       }
     } else {
       ComponentSampleModel sm =
@@ -861,6 +956,15 @@ public class TJDecompressor implements Closeable {
   private native void decompressHeader(byte[] srcBuf, int size)
     throws TJException;
 
+  private native void decompressHeaderDirect(ByteBuffer srcBuf, int offset,
+    int size) throws TJException;
+
+  // srcBuf and dstBuf are either arrays or direct buffers
+  private native void decompressDirect(Object srcBuf, int srcOffset, int size,
+    Object dstBuf, int dstElementSize, int dstOffset, int x, int y,
+    int desiredWidth, int pitch, int desiredHeight, int pixelFormat,
+    int flags) throws TJException;
+
   @Deprecated
   private native void decompress(byte[] srcBuf, int size, byte[] dstBuf,
     int desiredWidth, int pitch, int desiredHeight, int pixelFormat, int flags)
@@ -906,6 +1010,8 @@ public class TJDecompressor implements Closeable {
   protected long handle = 0;
   protected byte[] jpegBuf = null;
   protected int jpegBufSize = 0;
+  protected ByteBuffer jpegDirectBuf = null;
+  protected int jpegDirectOffset = 0;
   protected YUVImage yuvImage = null;
   protected int jpegWidth = 0;
   protected int jpegHeight = 0;
@@ -100,10 +100,16 @@ public class TJTransformer extends TJDecompressor {
    */
   public void transform(byte[][] dstBufs, TJTransform[] transforms,
                         int flags) throws TJException {
-    if (jpegBuf == null)
+    if (jpegDirectBuf != null)
+      transformedSizes = transformDirect(jpegDirectBuf, jpegDirectOffset,
+                                         jpegBufSize, dstBufs,
+                                         new int[dstBufs.length], transforms,
+                                         flags);
+    else if (jpegBuf == null)
       throw new IllegalStateException("JPEG buffer not initialized");
-    transformedSizes = transform(jpegBuf, jpegBufSize, dstBufs, transforms,
-                                 flags);
+    else
+      transformedSizes = transform(jpegBuf, jpegBufSize, dstBufs, transforms,
+                                   flags);
   }
 
   /**
@@ -159,6 +165,11 @@ public class TJTransformer extends TJDecompressor {
   private native int[] transform(byte[] srcBuf, int srcSize, byte[][] dstBufs,
     TJTransform[] transforms, int flags) throws TJException;
 
+  // srcBuf and dstBufs are either byte arrays or direct buffers
+  private native int[] transformDirect(Object srcBuf, int srcOffset,
+    int srcSize, Object[] dstBufs, int[] dstOffsets, TJTransform[] transforms,
+    int flags) throws TJException;
+
   static {
     try {
       LibraryLoader.loadLibrary("turbojpeg-jni");
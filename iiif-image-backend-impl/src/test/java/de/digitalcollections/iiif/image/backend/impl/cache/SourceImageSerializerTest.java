@@ -0,0 +1,34 @@
+package de.digitalcollections.iiif.image.backend.impl.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.apache.commons.io.IOUtils;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class SourceImageSerializerTest {
+
+  private final SourceImageSerializer serializer = new SourceImageSerializer(getClass().getClassLoader());
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    byte[] data;
+    try (InputStream in = getClass().getResourceAsStream("/test.jpg")) {
+      data = IOUtils.toByteArray(in);
+    }
+    SourceImage image = SourceImage.wrap(data);
+    assertThat(image.isDirect()).isFalse();
+
+    ByteBuffer binary = serializer.serialize(image);
+    assertThat(binary.remaining()).isEqualTo(data.length);
+    assertThat(serializer.equals(image, binary)).isTrue();
+
+    SourceImage read = serializer.read(binary);
+    assertThat(read.isDirect()).isFalse();
+    assertThat(read.getLength()).isEqualTo(data.length);
+    assertThat(read.asByteBuffer().isReadOnly()).isTrue();
+    assertThat(read.toByteArray()).isEqualTo(data);
+    assertThat(IOUtils.toByteArray(read.openStream())).isEqualTo(data);
+  }
+}
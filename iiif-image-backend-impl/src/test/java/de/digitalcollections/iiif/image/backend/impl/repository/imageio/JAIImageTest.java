@@ -0,0 +1,51 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.imageio;
+
+import de.digitalcollections.iiif.image.backend.impl.repository.imageio.v2.JAIImage;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import javax.imageio.ImageIO;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JAIImageTest {
+
+  private byte[] imageData;
+
+  @Before
+  public void setUp() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(2000, 1000, BufferedImage.TYPE_INT_RGB), "png", out);
+    this.imageData = out.toByteArray();
+  }
+
+  private static ResizeParametersImpl size(int width, int height) {
+    ResizeParametersImpl params = new ResizeParametersImpl();
+    params.setWidth(width);
+    params.setHeight(height);
+    return params;
+  }
+
+  @Test
+  public void testSubsampledRead() throws Exception {
+    JAIImage image = new JAIImage(imageData, null, size(100, 50));
+    // Every 10th pixel is read, leaving twice the target size for the resample
+    assertThat(image.getWidth()).isEqualTo(200);
+    assertThat(image.getHeight()).isEqualTo(100);
+    image.scale(size(100, 50));
+    assertThat(image.getWidth()).isEqualTo(100);
+  }
+
+  @Test
+  public void testRelativeRegionIsReadDirectly() throws Exception {
+    RegionParametersImpl region = new RegionParametersImpl(false, 0.5f, 0.5f, 0.25f, 0.5f);
+    JAIImage image = new JAIImage(imageData, region, size(50, 50));
+    assertThat(image.getWidth()).isEqualTo(100);
+    assertThat(image.getHeight()).isEqualTo(100);
+    // The region has already been applied
+    image.crop(region);
+    assertThat(image.getWidth()).isEqualTo(100);
+  }
+}
@@ -0,0 +1,138 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran;
+
+import de.digitalcollections.iiif.image.JniTest;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.EpegScaler;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.JpegImage;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.libjpegturbo.turbojpeg.TJ;
+import org.libjpegturbo.turbojpeg.TJDecompressor;
+import org.libjpegturbo.turbojpeg.TJTransform;
+import org.libjpegturbo.turbojpeg.TJTransformer;
+
+@Category(JniTest.class)
+public class DirectBufferTest {
+
+  private FileChannel channel;
+  private MappedByteBuffer mapped;
+
+  @Before
+  public void setUp() throws Exception {
+    Path imgPath = Paths.get(Thread.currentThread()
+            .getContextClassLoader()
+            .getResource("test.jpg").toURI());
+    this.channel = FileChannel.open(imgPath, StandardOpenOption.READ);
+    this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    channel.close();
+  }
+
+  @Test
+  public void testDecompressFromMappedBuffer() throws Exception {
+    TJDecompressor decompressor = new TJDecompressor();
+    decompressor.setSourceImage(mapped);
+    assertThat(decompressor.getWidth()).isEqualTo(480);
+    assertThat(decompressor.getHeight()).isEqualTo(360);
+
+    BufferedImage img = decompressor.decompress(240, 180, BufferedImage.TYPE_INT_RGB, 0);
+    assertThat(img.getWidth()).isEqualTo(240);
+    assertThat(mapped.position()).isEqualTo(0);
+
+    ByteBuffer pixels = ByteBuffer.allocateDirect(240 * 180 * 3);
+    decompressor.decompress(pixels, 240, 0, 180, TJ.PF_RGB, 0);
+    int rgb = img.getRGB(10, 10);
+    assertThat(pixels.get(10 * 240 * 3 + 10 * 3) & 0xFF).isEqualTo((rgb >> 16) & 0xFF);
+    decompressor.close();
+  }
+
+  @Test
+  public void testTransformFromMappedBuffer() throws Exception {
+    TJTransformer transformer = new TJTransformer();
+    transformer.setSourceImage(mapped);
+    TJTransform rotate = new TJTransform();
+    rotate.op = TJTransform.OP_ROT90;
+    byte[] out = new byte[TJ.bufSize(480, 360, transformer.getSubsamp())];
+    transformer.transform(new byte[][]{out}, new TJTransform[]{rotate}, 0);
+    int size = transformer.getTransformedSizes()[0];
+    transformer.close();
+
+    TJDecompressor decompressor = new TJDecompressor(out, size);
+    assertThat(decompressor.getWidth()).isEqualTo(360);
+    assertThat(decompressor.getHeight()).isEqualTo(480);
+    decompressor.close();
+  }
+
+  @Test
+  public void testDownScaleDirect() throws Exception {
+    byte[] out = EpegScaler.downScaleJpegImage(mapped, 120, 90, 80);
+    TJDecompressor decompressor = new TJDecompressor(out);
+    assertThat(decompressor.getWidth()).isEqualTo(120);
+    assertThat(decompressor.getHeight()).isEqualTo(90);
+    decompressor.close();
+  }
+
+  @Test
+  public void testTransformDirect() throws Exception {
+    byte[] out = EpegScaler.transformJpegImage(mapped, 13, 1, 200, 150, 100, 75, TJTransform.OP_ROT90, false, 80);
+    TJDecompressor decompressor = new TJDecompressor(out);
+    assertThat(decompressor.getWidth()).isEqualTo(75);
+    assertThat(decompressor.getHeight()).isEqualTo(100);
+    decompressor.close();
+  }
+
+  @Test
+  public void testJpegImageFromMappedBuffer() throws Exception {
+    byte[] original = new byte[mapped.remaining()];
+    mapped.duplicate().get(original);
+    JpegImage image = new JpegImage(original);
+    image.setImageData(mapped);
+    assertThat(image.getDataLength()).isEqualTo(original.length);
+    assertThat(image.toByteArray()).isEqualTo(original);
+    image.crop(0, 0, 96, 64).transform();
+    assertThat(image.getWidth()).isEqualTo(96);
+    assertThat(image.getHeight()).isEqualTo(64);
+    assertThat(mapped.position()).isEqualTo(0);
+    image.close();
+  }
+
+  @Test
+  public void testJpegImageReadsDirectBufferInPlace() throws Exception {
+    ByteBuffer direct = ByteBuffer.allocateDirect(mapped.remaining());
+    direct.put(mapped.duplicate()).flip();
+    JpegImage image = new JpegImage(direct);
+    assertThat(direct.position()).isEqualTo(0);
+    // The image sees changes to the buffer, as it has not been copied (the last byte is past the end of image marker)
+    direct.put(direct.limit() - 1, (byte) 0x42);
+    byte[] data = image.toByteArray();
+    assertThat(data[data.length - 1]).isEqualTo((byte) 0x42);
+    image.close();
+  }
+
+  @Test
+  public void testJpegImageCopiesHeapBuffer() throws Exception {
+    byte[] original = new byte[mapped.remaining() + 4];
+    mapped.duplicate().get(original, 4, mapped.remaining());
+    ByteBuffer heap = ByteBuffer.wrap(original);
+    heap.position(4);
+    JpegImage image = new JpegImage(heap);
+    assertThat(heap.position()).isEqualTo(4);
+    original[original.length - 1] = 0x42;
+    byte[] data = image.toByteArray();
+    assertThat(data.length).isEqualTo(original.length - 4);
+    assertThat(data[data.length - 1]).isNotEqualTo((byte) 0x42);
+    image.close();
+  }
+}
@@ -1,7 +1,10 @@
 package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran;
 
 import de.digitalcollections.iiif.image.JniTest;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.ByteArrayPool;
 import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.JpegImage;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.PooledBuffer;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.TJHandlePool;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URISyntaxException;
@@ -13,7 +16,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.ExpectedException;
+import org.libjpegturbo.turbojpeg.TJ;
+import org.libjpegturbo.turbojpeg.TJDecompressor;
 import org.libjpegturbo.turbojpeg.TJException;
+import org.libjpegturbo.turbojpeg.TJScalingFactor;
 
 @Category(JniTest.class)
 public class JpegImageTest {
@@ -108,6 +114,70 @@ public class JpegImageTest {
     image.downScale(800, 800);
   }
 
+  @Test
+  public void testScalingFactor() throws Exception {
+    TJScalingFactor exact = image.getScalingFactor(240, 180);
+    assertThat(exact.getScaled(originalWidth)).isEqualTo(240);
+    assertThat(exact.getScaled(originalHeight)).isEqualTo(180);
+
+    TJScalingFactor closest = image.getScalingFactor(100, 75);
+    assertThat(closest.getScaled(originalWidth)).isEqualTo(120);
+    assertThat(closest.getScaled(originalHeight)).isEqualTo(90);
+
+    assertThat(image.getScalingFactor(479, 359).isOne()).isTrue();
+  }
+
+  @Test
+  public void testDownScaleGrayscale() throws Exception {
+    JpegImage scaledImg = image.downScale(100, 75, 85, true);
+    assertThat(scaledImg.getWidth()).isEqualTo(100);
+    assertThat(scaledImg.getHeight()).isEqualTo(75);
+    assertThat(new TJDecompressor(scaledImg.toByteArray()).getSubsamp()).isEqualTo(TJ.SAMP_GRAY);
+    // Encoded data must end with the EOI marker, not with unused buffer space
+    byte[] data = scaledImg.toByteArray();
+    assertThat(data[data.length - 2] & 0xFF).isEqualTo(0xFF);
+    assertThat(data[data.length - 1] & 0xFF).isEqualTo(0xD9);
+  }
+
+  @Test
+  public void testDataAfterClose() throws Exception {
+    image.close();
+    exception.expect(IllegalStateException.class);
+    image.toByteArray();
+  }
+
+  @Test
+  public void testReleasedHandleDropsSourceImage() throws Exception {
+    TJDecompressor decompressor = TJHandlePool.borrowDecompressor();
+    decompressor.setSourceImage(originalData, originalData.length);
+    assertThat(decompressor.getJPEGBuf()).isSameAs(originalData);
+    TJHandlePool.release(decompressor);
+    exception.expect(IllegalStateException.class);
+    decompressor.getJPEGBuf();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    byte[] data = image.crop(0, 0, 48, 48).transform().toByteArray();
+    PooledBuffer view = image.getData();
+    assertThat(view.getLength()).isEqualTo(data.length);
+    image.close();
+    assertThat(view.getBuffer()).isNull();
+    assertThat(new JpegImage(data).getWidth()).isEqualTo(48);
+  }
+
+  @Test
+  public void testBufferPoolReuse() throws Exception {
+    PooledBuffer first = ByteArrayPool.borrow(1000);
+    byte[] buffer = first.getBuffer();
+    assertThat(buffer.length).isEqualTo(1 << 16);
+    first.close();
+    try (PooledBuffer second = ByteArrayPool.borrow(60000)) {
+      assertThat(second.getBuffer()).isSameAs(buffer);
+    }
+    assertThat(ByteArrayPool.borrow(32 << 20).getBuffer().length).isEqualTo(32 << 20);
+  }
+
   @Test
   public void testCrop() throws Exception {
     JpegImage croppedImage = image.crop(0, 0, 50, 50).transform();
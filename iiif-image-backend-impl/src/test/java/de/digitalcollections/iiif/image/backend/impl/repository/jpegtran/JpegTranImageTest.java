@@ -0,0 +1,155 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran;
+
+import de.digitalcollections.iiif.image.JniTest;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.JpegTranImage;
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+import org.apache.commons.io.IOUtils;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(JniTest.class)
+public class JpegTranImageTest {
+
+  private JpegTranImage image;
+
+  @Before
+  public void setUp() throws IOException {
+    InputStream imgStream = Thread.currentThread()
+            .getContextClassLoader()
+            .getResourceAsStream("test.jpg");
+    this.image = new JpegTranImage(IOUtils.toByteArray(imgStream));
+  }
+
+  private static ResizeParametersImpl size(int width, int height) {
+    ResizeParametersImpl params = new ResizeParametersImpl();
+    params.setWidth(width);
+    params.setHeight(height);
+    return params;
+  }
+
+  private static BufferedImage decode(byte[] data) throws IOException {
+    return ImageIO.read(new ByteArrayInputStream(data));
+  }
+
+  @Test
+  public void testCropAndScale() throws Exception {
+    image.crop(new RegionParametersImpl(true, 13, 7, 200, 150))
+         .scale(size(100, 75));
+    image.performTransformation();
+    assertThat(image.getWidth()).isEqualTo(100);
+    assertThat(image.getHeight()).isEqualTo(75);
+    assertThat(decode(image.toByteArray()).getWidth()).isEqualTo(100);
+  }
+
+  @Test
+  public void testCropFromSecondRow() throws Exception {
+    // after the lossless crop to the enclosing MCUs, the region starts one scanline into the decoded image
+    image.crop(new RegionParametersImpl(true, 0, 1, 200, 150));
+    image.performTransformation();
+    assertThat(image.getWidth()).isEqualTo(200);
+    assertThat(image.getHeight()).isEqualTo(150);
+    assertThat(decode(image.toByteArray()).getHeight()).isEqualTo(150);
+  }
+
+  @Test
+  public void testUnalignedCropWithRotation() throws Exception {
+    image.crop(new RegionParametersImpl(true, 13, 7, 200, 150))
+         .rotate(90);
+    image.performTransformation();
+    assertThat(image.getWidth()).isEqualTo(150);
+    assertThat(image.getHeight()).isEqualTo(200);
+  }
+
+  @Test
+  public void testUnalignedCropMatchesReference() throws Exception {
+    BufferedImage original = decode(image.toByteArray());
+    image.crop(new RegionParametersImpl(true, 21, 35, 101, 67));
+    image.performTransformation();
+    assertThat(image.getWidth()).isEqualTo(101);
+    assertThat(image.getHeight()).isEqualTo(67);
+    BufferedImage cropped = decode(image.toByteArray());
+    for (int[] point : new int[][]{{2, 2}, {50, 33}, {98, 64}}) {
+      int expected = original.getRGB(21 + point[0], 35 + point[1]);
+      int actual = cropped.getRGB(point[0], point[1]);
+      for (int shift = 0; shift <= 16; shift += 8) {
+        assertThat(Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF))).isLessThan(48);
+      }
+    }
+  }
+
+  @Test
+  public void testScaleWithMirrorAndRotation() throws Exception {
+    image.scale(size(240, 180))
+         .flipHorizontally()
+         .rotate(270);
+    image.performTransformation();
+    assertThat(image.getWidth()).isEqualTo(180);
+    assertThat(image.getHeight()).isEqualTo(240);
+  }
+
+  @Test
+  public void testScaleToGrayscale() throws Exception {
+    image.scale(size(120, 90))
+         .toDepth(ImageBitDepth.GRAYSCALE);
+    image.performTransformation();
+    BufferedImage result = decode(image.toByteArray());
+    assertThat(result.getColorModel().getNumComponents()).isEqualTo(1);
+    assertThat(result.getWidth()).isEqualTo(120);
+  }
+
+  @Test
+  public void testRotationMatchesReference() throws Exception {
+    BufferedImage original = decode(image.toByteArray());
+    image.scale(size(240, 180)).rotate(90);
+    image.performTransformation();
+    BufferedImage rotated = decode(image.toByteArray());
+    // The top left corner of the rotated image shows the bottom left corner of the original
+    int expected = original.getRGB(4, original.getHeight() - 5);
+    int actual = rotated.getRGB(2, 2);
+    for (int shift = 0; shift <= 16; shift += 8) {
+      assertThat(Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF))).isLessThan(48);
+    }
+  }
+
+  @Test
+  public void testDecodeRegionAndCutTiles() throws Exception {
+    BufferedImage raster = image.decode(new RegionParametersImpl(true, 13, 7, 200, 150), size(100, 75));
+    assertThat(raster.getWidth()).isEqualTo(100);
+    assertThat(raster.getHeight()).isEqualTo(75);
+    JpegTranImage left = JpegTranImage.encode(raster, 0, 0, 50, 75, image.getSubsamp());
+    JpegTranImage right = JpegTranImage.encode(raster, 50, 0, 50, 75, image.getSubsamp());
+    BufferedImage decodedRight = decode(right.toByteArray());
+    assertThat(left.getWidth()).isEqualTo(50);
+    assertThat(decodedRight.getWidth()).isEqualTo(50);
+    assertThat(decodedRight.getHeight()).isEqualTo(75);
+    // The tile shows the same part of the image as the raster it was cut from
+    int expected = raster.getRGB(75, 37);
+    int actual = decodedRight.getRGB(25, 37);
+    for (int shift = 0; shift <= 16; shift += 8) {
+      assertThat(Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF))).isLessThan(48);
+    }
+    left.close();
+    right.close();
+  }
+
+  @Test(expected = TransformationException.class)
+  public void testUpscaleFails() throws Exception {
+    image.scale(size(960, 720));
+  }
+
+  @Test(expected = InvalidParametersException.class)
+  public void testInvalidRotation() throws Exception {
+    image.rotate(45);
+  }
+}
@@ -0,0 +1,177 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.jpegtran;
+
+import de.digitalcollections.iiif.image.JniTest;
+import de.digitalcollections.iiif.image.backend.impl.repository.jpegtran.v2.EpegScaler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.libjpegturbo.turbojpeg.TJ;
+import org.libjpegturbo.turbojpeg.TJCompressor;
+import org.libjpegturbo.turbojpeg.TJDecompressor;
+import org.libjpegturbo.turbojpeg.TJTransform;
+import org.libjpegturbo.turbojpeg.TJTransformer;
+
+/**
+ * The native library is linked with a version script that hides every symbol it doesn't list, a native method missing
+ * there only fails when it is first called.
+ */
+@Category(JniTest.class)
+public class NativeExportsTest {
+
+  private static final Path MAPFILE = Paths.get("..", "libjpeg-turbo", "turbojpeg-mapfile.jni");
+
+  private byte[] jpeg;
+  private ByteBuffer direct;
+
+  @Before
+  public void setUp() throws Exception {
+    jpeg = Files.readAllBytes(Paths.get(Thread.currentThread()
+            .getContextClassLoader()
+            .getResource("test.jpg").toURI()));
+    direct = ByteBuffer.allocateDirect(jpeg.length);
+    direct.put(jpeg).flip();
+  }
+
+  @Test
+  public void testMapfileExportsAllNativeMethods() throws Exception {
+    assumeTrue(Files.exists(MAPFILE));
+    Set<String> exported = new HashSet<>();
+    for (String line : Files.readAllLines(MAPFILE)) {
+      if (line.trim().endsWith(";")) {
+        exported.add(line.trim().replace(";", ""));
+      }
+    }
+    List<String> missing = new ArrayList<>();
+    for (Class<?> cls : new Class<?>[]{TJ.class, TJCompressor.class, TJDecompressor.class, TJTransformer.class,
+                                       EpegScaler.class}) {
+      for (Method method : cls.getDeclaredMethods()) {
+        if (Modifier.isNative(method.getModifiers())) {
+          String name = getJniName(cls, method);
+          String longName = getLongJniName(cls, method);
+          if (!exported.contains(name) && !exported.contains(longName)) {
+            missing.add(longName);
+          }
+        }
+      }
+    }
+    assertThat(missing).isEmpty();
+  }
+
+  @Test
+  public void testDirectEntryPoints() throws Exception {
+    // decompressHeaderDirect and decompressDirect
+    TJDecompressor decompressor = new TJDecompressor();
+    decompressor.setSourceImage(direct);
+    ByteBuffer pixels = ByteBuffer.allocateDirect(240 * 180 * 3);
+    decompressor.decompress(pixels, 240, 0, 180, TJ.PF_RGB, 0);
+    assertThat(decompressor.getWidth()).isEqualTo(480);
+    decompressor.close();
+
+    // transformDirect
+    TJTransformer transformer = new TJTransformer();
+    transformer.setSourceImage(direct);
+    TJTransform rotate = new TJTransform();
+    rotate.op = TJTransform.OP_ROT90;
+    byte[] rotated = new byte[TJ.bufSize(480, 360, transformer.getSubsamp())];
+    transformer.transform(new byte[][]{rotated}, new TJTransform[]{rotate}, 0);
+    assertThat(transformer.getTransformedSizes()[0]).isPositive();
+    transformer.close();
+
+    // downScaleJpegBuffer and transformJpegBuffer
+    assertThat(getWidth(EpegScaler.downScaleJpegImage(direct, 120, 90, 80))).isEqualTo(120);
+    assertThat(getWidth(EpegScaler.transformJpegImage(direct, 0, 0, 200, 150, 100, 75, TJTransform.OP_NONE,
+                                                      false, 80))).isEqualTo(100);
+  }
+
+  @Test
+  public void testArrayEntryPoints() throws Exception {
+    assertThat(getWidth(EpegScaler.downScaleJpegImage(jpeg, 120, 90, 80))).isEqualTo(120);
+    assertThat(getWidth(EpegScaler.transformJpegImage(jpeg, 0, 0, 200, 150, 100, 75, TJTransform.OP_NONE, false,
+                                                      80))).isEqualTo(100);
+  }
+
+  private static int getWidth(byte[] image) throws Exception {
+    TJDecompressor decompressor = new TJDecompressor(image);
+    int width = decompressor.getWidth();
+    decompressor.close();
+    return width;
+  }
+
+  /**
+   * @return the symbol the JVM looks up for a method that is not overloaded
+   */
+  private static String getJniName(Class<?> cls, Method method) {
+    return "Java_" + mangle(cls.getName()) + "_" + mangle(method.getName());
+  }
+
+  /**
+   * @return the symbol including the argument signature, which the JVM looks up as well
+   */
+  private static String getLongJniName(Class<?> cls, Method method) {
+    StringBuilder signature = new StringBuilder();
+    for (Class<?> type : method.getParameterTypes()) {
+      signature.append(getDescriptor(type));
+    }
+    return getJniName(cls, method) + "__" + mangle(signature.toString());
+  }
+
+  private static String getDescriptor(Class<?> type) {
+    if (type.isArray()) {
+      return type.getName().replace('.', '/');
+    }
+    if (type == boolean.class) {
+      return "Z";
+    } else if (type == byte.class) {
+      return "B";
+    } else if (type == char.class) {
+      return "C";
+    } else if (type == short.class) {
+      return "S";
+    } else if (type == int.class) {
+      return "I";
+    } else if (type == long.class) {
+      return "J";
+    } else if (type == float.class) {
+      return "F";
+    } else if (type == double.class) {
+      return "D";
+    }
+    return "L" + type.getName().replace('.', '/') + ";";
+  }
+
+  private static String mangle(String name) {
+    StringBuilder mangled = new StringBuilder();
+    for (char c : name.toCharArray()) {
+      switch (c) {
+        case '.':
+        case '/':
+          mangled.append('_');
+          break;
+        case '_':
+          mangled.append("_1");
+          break;
+        case ';':
+          mangled.append("_2");
+          break;
+        case '[':
+          mangled.append("_3");
+          break;
+        default:
+          mangled.append(c);
+      }
+    }
+    return mangled.toString();
+  }
+}
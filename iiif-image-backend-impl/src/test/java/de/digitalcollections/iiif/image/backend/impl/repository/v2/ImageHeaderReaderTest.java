@@ -0,0 +1,117 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class ImageHeaderReaderTest {
+
+  private static byte[] encode(String format, int width, int height) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+    return out.toByteArray();
+  }
+
+  private static Dimension read(byte[] data) throws Exception {
+    return toDimension(ImageHeaderReader.readImageInfo(new ByteArrayInputStream(data)));
+  }
+
+  private static Dimension toDimension(ImageInfo info) {
+    return info != null ? new Dimension(info.getWidth(), info.getHeight()) : null;
+  }
+
+  @Test
+  public void testJpeg() throws Exception {
+    try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream("test.jpg")) {
+      ImageInfo info = ImageHeaderReader.readImageInfo(in);
+      assertThat(info.getFormat()).isEqualTo(ImageFormat.JPEG);
+      assertThat(toDimension(info)).isEqualTo(new Dimension(480, 360));
+    }
+  }
+
+  @Test
+  public void testPng() throws Exception {
+    assertThat(read(encode("png", 123, 45))).isEqualTo(new Dimension(123, 45));
+  }
+
+  @Test
+  public void testTiff() throws Exception {
+    assertThat(read(encode("tiff", 321, 54))).isEqualTo(new Dimension(321, 54));
+  }
+
+  /**
+   * @return big endian TIFF header whose first IFD is behind <code>dataLength</code> bytes of image data
+   */
+  private static byte[] createTiffWithTrailingIfd(int dataLength, int width, int height) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBytes("MM");
+    out.writeShort(42);
+    out.writeInt(8 + dataLength);
+    out.write(new byte[dataLength]);
+    out.writeShort(2);
+    out.writeShort(256);
+    out.writeShort(4);
+    out.writeInt(1);
+    out.writeInt(width);
+    out.writeShort(257);
+    out.writeShort(3);
+    out.writeInt(1);
+    out.writeShort(height);
+    out.writeShort(0);
+    out.writeInt(0);
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testTiffWithTrailingIfd() throws Exception {
+    assertThat(read(createTiffWithTrailingIfd(1024, 321, 54))).isEqualTo(new Dimension(321, 54));
+  }
+
+  @Test
+  public void testTiffWithTrailingIfdIsOnlySeeked() throws Exception {
+    byte[] tiff = createTiffWithTrailingIfd(1024 * 1024, 321, 54);
+    // Not read from a plain stream, it would have to read the whole image
+    assertThat(read(tiff)).isNull();
+    try (MemoryCacheImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(tiff))) {
+      assertThat(toDimension(ImageHeaderReader.readImageInfo(in))).isEqualTo(new Dimension(321, 54));
+    }
+  }
+
+  @Test
+  public void testJp2() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(12);
+    out.writeBytes("jP  ");
+    out.writeInt(0x0D0A870A);
+    out.writeInt(20);
+    out.writeBytes("ftyp");
+    out.writeBytes("jp2 ");
+    out.writeInt(0);
+    out.writeBytes("jp2 ");
+    out.writeInt(45);
+    out.writeBytes("jp2h");
+    out.writeInt(22);
+    out.writeBytes("ihdr");
+    out.writeInt(600);
+    out.writeInt(800);
+    out.writeShort(3);
+    assertThat(read(bytes.toByteArray())).isEqualTo(new Dimension(800, 600));
+  }
+
+  @Test
+  public void testUnknownFormat() throws Exception {
+    assertThat(read("GIF89a".getBytes("US-ASCII"))).isNull();
+    assertThat(read(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF})).isNull();
+  }
+}
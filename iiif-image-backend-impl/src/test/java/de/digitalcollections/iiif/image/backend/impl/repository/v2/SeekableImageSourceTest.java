@@ -0,0 +1,81 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeekableImageSourceTest {
+
+  private Path path;
+  private byte[] data;
+
+  @Before
+  public void setUp() throws Exception {
+    path = Paths.get(Thread.currentThread().getContextClassLoader().getResource("test.jpg").toURI());
+    data = Files.readAllBytes(path);
+  }
+
+  private void assertSource(SeekableImageSource source) throws Exception {
+    ByteBuffer range = ByteBuffer.allocate(100);
+    assertThat(source.read(range, 1000)).isEqualTo(100);
+    assertThat(range.array()).isEqualTo(Arrays.copyOfRange(data, 1000, 1100));
+
+    ByteBuffer tail = ByteBuffer.allocate(100);
+    assertThat(source.read(tail, data.length - 10)).isEqualTo(10);
+    assertThat(source.read(tail, data.length)).isEqualTo(-1);
+    assertThat(source.length()).isEqualTo(data.length);
+
+    ByteBuffer mapped = source.map();
+    assertThat(mapped.isReadOnly()).isTrue();
+    assertThat(mapped.remaining()).isEqualTo(data.length);
+    assertThat(mapped).isEqualTo(ByteBuffer.wrap(data));
+
+    try (ImageInputStream in = source.openImageInputStream()) {
+      BufferedImage image = ImageIO.read(in);
+      assertThat(image.getWidth()).isEqualTo(480);
+      assertThat(image.getHeight()).isEqualTo(360);
+    }
+  }
+
+  @Test
+  public void testFileSource() throws Exception {
+    try (SeekableImageSource source = new FileImageSource(path)) {
+      assertThat(source.map().isDirect()).isTrue();
+      assertSource(source);
+    }
+  }
+
+  @Test
+  public void testStreamSource() throws Exception {
+    try (SeekableImageSource source = new StreamImageSource(new ByteArrayInputStream(data))) {
+      assertSource(source);
+    }
+  }
+
+  @Test
+  public void testStreamSourceLengthIsNotDownloaded() throws Exception {
+    try (SeekableImageSource source = new StreamImageSource(new ByteArrayInputStream(data))) {
+      assertThat(source.length()).isEqualTo(-1);
+      assertThat(source.read(ByteBuffer.allocate(16), 0)).isEqualTo(16);
+      assertThat(source.length()).isEqualTo(-1);
+      assertThat(source.map().remaining()).isEqualTo(data.length);
+      assertThat(source.length()).isEqualTo(data.length);
+    }
+  }
+
+  @Test
+  public void testBufferSource() throws Exception {
+    try (SeekableImageSource source = new BufferImageSource(ByteBuffer.wrap(data))) {
+      assertSource(source);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.List;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class TiffPyramidTest {
+
+  private static byte[] encodeTiff(int... sizes) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("tiff");
+    ImageWriter writer = writers.next();
+    while (!writer.canWriteSequence() && writers.hasNext()) {
+      writer = writers.next();
+    }
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+      writer.setOutput(out);
+      writer.prepareWriteSequence(null);
+      for (int i = 0; i < sizes.length; i += 2) {
+        BufferedImage image = new BufferedImage(sizes[i], sizes[i + 1], BufferedImage.TYPE_INT_RGB);
+        writer.writeToSequence(new IIOImage(image, null, null), null);
+      }
+      writer.endWriteSequence();
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static List<Integer> readLevelIndices(byte[] data) throws Exception {
+    try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+      ImageReader reader = TiffPyramid.createReader(in);
+      try {
+        return TiffPyramid.getLevelIndices(reader);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  @Test
+  public void testPyramid() throws Exception {
+    List<Integer> indices = readLevelIndices(encodeTiff(1001, 600, 501, 300, 250, 150));
+    assertThat(indices).containsExactly(0, 1, 2);
+    assertThat(TiffPyramid.getScaleFactors(indices)).containsExactly(1, 2, 4);
+  }
+
+  @Test
+  public void testLevelsStopAtFirstGap() throws Exception {
+    assertThat(readLevelIndices(encodeTiff(800, 600, 200, 150))).containsExactly(0);
+  }
+
+  @Test
+  public void testSingleImage() throws Exception {
+    List<Integer> indices = readLevelIndices(encodeTiff(800, 600));
+    assertThat(indices).containsExactly(0);
+    assertThat(TiffPyramid.getScaleFactors(indices)).isNull();
+  }
+}
@@ -0,0 +1,116 @@
+package de.digitalcollections.iiif.image.backend.impl.repository.v2;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TranscodingStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path collection;
+  private Path storeDirectory;
+  private Path png;
+
+  @Before
+  public void setUp() throws Exception {
+    collection = folder.newFolder("collection").toPath();
+    storeDirectory = folder.newFolder("store").toPath();
+    png = collection.resolve("test.png");
+    ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), "png", png.toFile());
+    Path jpeg = Paths.get(Thread.currentThread().getContextClassLoader().getResource("test.jpg").toURI());
+    Files.copy(jpeg, collection.resolve("test.jpg"));
+  }
+
+  @Test
+  public void testTranscode() throws Exception {
+    TranscodingStore store = new TranscodingStore(storeDirectory);
+    assertThat(store.get(png)).isNull();
+
+    byte[] jpeg = store.transcode(png);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+    assertThat(image.getWidth()).isEqualTo(64);
+    assertThat(store.get(png)).isNotNull();
+    assertThat(Files.readAllBytes(store.get(png))).isEqualTo(jpeg);
+
+    // the index is rebuilt from the directory
+    TranscodingStore reloaded = new TranscodingStore(storeDirectory);
+    assertThat(reloaded.size()).isEqualTo(1);
+    assertThat(reloaded.get(png)).isEqualTo(store.get(png));
+
+    // a changed source is not served from the store
+    Files.setLastModifiedTime(png, FileTime.fromMillis(Files.getLastModifiedTime(png).toMillis() + 1000));
+    assertThat(reloaded.get(png)).isNull();
+  }
+
+  @Test
+  public void testSupersededConversionIsDeleted() throws Exception {
+    TranscodingStore store = new TranscodingStore(storeDirectory);
+    store.transcode(png);
+    Path superseded = store.get(png);
+
+    Files.setLastModifiedTime(png, FileTime.fromMillis(Files.getLastModifiedTime(png).toMillis() + 1000));
+    store.transcode(png);
+    assertThat(store.size()).isEqualTo(1);
+    assertThat(store.get(png)).isNotEqualTo(superseded);
+    assertThat(Files.exists(superseded)).isFalse();
+    assertThat(new TranscodingStore(storeDirectory).size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFailedConversionIsNotStored() throws Exception {
+    Path alpha = collection.resolve("alpha.png");
+    ImageIO.write(new BufferedImage(64, 48, BufferedImage.TYPE_INT_ARGB), "png", alpha.toFile());
+    TranscodingStore store = new TranscodingStore(storeDirectory);
+    try {
+      store.transcode(alpha);
+      fail("Expected the conversion to fail");
+    } catch (IOException e) {
+      assertThat(store.size()).isEqualTo(0);
+      try (Stream<Path> files = Files.walk(storeDirectory)) {
+        assertThat(files.filter(Files::isRegularFile).count()).isEqualTo(0);
+      }
+    }
+  }
+
+  @Test
+  public void testOnlyOldTempFilesAreDeleted() throws Exception {
+    Path shard = Files.createDirectories(storeDirectory.resolve("ab"));
+    Path recent = Files.createFile(shard.resolve("ab01.tmp"));
+    Path old = Files.createFile(shard.resolve("ab02.tmp"));
+    Files.setLastModifiedTime(old, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2)));
+    new TranscodingStore(storeDirectory);
+    assertThat(Files.exists(recent)).isTrue();
+    assertThat(Files.exists(old)).isFalse();
+  }
+
+  @Test
+  public void testBulkTranscode() throws Exception {
+    TranscodingStore store = new TranscodingStore(storeDirectory);
+    BulkTranscoder transcoder = new BulkTranscoder(store, 2);
+    transcoder.transcodeAll(collection);
+    assertThat(transcoder.getConverted()).isEqualTo(1);
+    assertThat(transcoder.getSkipped()).isEqualTo(1);
+    assertThat(transcoder.getFailed()).isEqualTo(0);
+    assertThat(store.get(png)).isNotNull();
+
+    BulkTranscoder again = new BulkTranscoder(store, 2);
+    again.transcodeAll(collection);
+    assertThat(again.getConverted()).isEqualTo(0);
+    assertThat(again.getSkipped()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,45 @@
+package de.digitalcollections.iiif.image.business.api.service.v2;
+
+/**
+ * Progress of a cache warm-up started by {@link CacheWarmupService}.
+ */
+public interface CacheWarmupJob {
+
+  enum State {
+    RUNNING, COMPLETED, CANCELLED
+  }
+
+  String getId();
+
+  State getState();
+
+  /**
+   * @return number of identifiers to warm up
+   */
+  int getTotal();
+
+  /**
+   * @return number of identifiers that have been warmed up successfully
+   */
+  int getCompleted();
+
+  /**
+   * @return number of identifiers that could not be warmed up, e.g. because they do not exist
+   */
+  int getFailed();
+
+  /**
+   * @return number of identifiers that are processed in parallel
+   */
+  int getConcurrency();
+
+  /**
+   * @return start time in milliseconds since the epoch
+   */
+  long getStarted();
+
+  /**
+   * @return time the job was completed or cancelled in milliseconds since the epoch, -1 while it is running
+   */
+  long getFinished();
+}
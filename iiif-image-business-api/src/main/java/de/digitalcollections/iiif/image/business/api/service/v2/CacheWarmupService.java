@@ -0,0 +1,45 @@
+package de.digitalcollections.iiif.image.business.api.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import java.util.List;
+
+/**
+ * Preloads the caches for images that are known to be requested soon: their image information, source data and the
+ * overview levels a viewer requests first. Warm-ups run in the background with limited concurrency.
+ */
+public interface CacheWarmupService {
+
+  /**
+   * @param identifiers identifiers of the images
+   * @param concurrency number of images to process in parallel, 0 for the configured default
+   * @return the started job
+   */
+  CacheWarmupJob warmUp(List<String> identifiers, int concurrency);
+
+  /**
+   * Warm up all images referenced by the image services of a IIIF presentation manifest.
+   *
+   * @param manifest the manifest document (JSON-LD)
+   * @param concurrency number of images to process in parallel, 0 for the configured default
+   * @return the started job
+   * @throws InvalidParametersException if the manifest can not be parsed
+   */
+  CacheWarmupJob warmUpManifest(String manifest, int concurrency) throws InvalidParametersException;
+
+  /**
+   * @param id id of the job
+   * @return the job, <code>null</code> if there is no such job
+   */
+  CacheWarmupJob getJob(String id);
+
+  /**
+   * @return running and recently finished jobs, oldest first
+   */
+  List<CacheWarmupJob> getJobs();
+
+  /**
+   * @param id id of the job
+   * @return <code>true</code> if the job was running and has been cancelled
+   */
+  boolean cancel(String id);
+}
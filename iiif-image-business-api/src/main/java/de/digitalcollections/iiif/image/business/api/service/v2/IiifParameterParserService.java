@@ -1,5 +1,6 @@
 package de.digitalcollections.iiif.image.business.api.service.v2;
 
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
 import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
@@ -73,4 +74,23 @@ public interface IiifParameterParserService {
    */
   ResizeParameters parseIiifSize(String size) throws InvalidParametersException;
 
+  /**
+   * Compute the canonical form of an image request, see
+   * <a href="http://iiif.io/api/image/2.1/#canonical-uri-syntax">IIIF 2.1</a>. The parameters are resolved against the
+   * dimensions of the image, so that all requests yielding the same image have the same canonical form, e.g.
+   * "pct:0,0,100,100", "0,0,W,H" and "full" all become "full".
+   *
+   * @param info information about the requested image
+   * @param region region definition
+   * @param size target size
+   * @param rotation rotation
+   * @param quality target image quality
+   * @param format target image format
+   * @return canonical "{region}/{size}/{rotation}/{quality}.{format}" part of the image request URI
+   * @throws InvalidParametersException if a parameter can not be parsed or does not fit the image
+   * @throws UnsupportedFormatException if format/extension can not be parsed
+   */
+  String getCanonicalForm(ImageInfo info, String region, String size, String rotation, String quality, String format)
+      throws InvalidParametersException, UnsupportedFormatException;
+
 }
@@ -11,6 +11,7 @@ import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
 import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
+import java.util.List;
 
 /**
  * Service providing image processing functionality.
@@ -22,4 +23,19 @@ public interface ImageService {
   Image processImage(String identifier, RegionParameters regionParameters, ResizeParameters sizeParameters, RotationParameters rotationParameters, ImageBitDepth bitDepthParameter, ImageFormat formatParameter)
       throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException;
 
+  /**
+   * Process several regions of an image with the same rotation, quality and format, e.g. the tiles a viewer needs at
+   * one zoom level. Tiles of the same scale are cut from a single decoding of the source.
+   *
+   * @param identifier identifier of the image
+   * @param regionParameters regions of the tiles, <code>null</code> elements for the full image
+   * @param sizeParameters sizes of the tiles, in the same order as the regions
+   * @param rotationParameters rotation of all tiles
+   * @param bitDepthParameter quality of all tiles
+   * @param formatParameter format of all tiles
+   * @return the processed tiles in the order of the regions
+   */
+  List<Image> processImages(String identifier, List<RegionParameters> regionParameters, List<ResizeParameters> sizeParameters, RotationParameters rotationParameters, ImageBitDepth bitDepthParameter, ImageFormat formatParameter)
+      throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException;
+
 }
@@ -0,0 +1,357 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.business.api.service.v2.CacheWarmupJob;
+import de.digitalcollections.iiif.image.business.api.service.v2.CacheWarmupService;
+import de.digitalcollections.iiif.image.business.api.service.v2.IiifParameterParserService;
+import de.digitalcollections.iiif.image.business.api.service.v2.ImageService;
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.v2.Image;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Warms up the caches by doing what a viewer does when it opens an image: the image information is read and the
+ * overview levels, i.e. the scale factors at which the whole image fits into a single tile, are rendered. This fills
+ * the <code>imageInfos</code> cache, loads the source image (into <code>sourceImages</code>, or into the page cache for
+ * local files that are read directly) and puts the overviews into the derivative cache.
+ *
+ * All jobs share one low priority thread pool of <code>iiif.image.warmup.maxConcurrency</code> threads, each job uses
+ * at most its own concurrency of them. However many jobs are started, warm-ups can't take over more processors than
+ * that.
+ */
+@Service
+public class CacheWarmupServiceImpl implements CacheWarmupService, InitializingBean, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CacheWarmupServiceImpl.class);
+
+  private static final List<Integer> DEFAULT_SCALE_FACTORS = Arrays.asList(1, 2, 4, 8, 16, 32);
+  private static final int PROGRESS_INTERVAL = 100;
+
+  @Autowired
+  private ImageService imageService;
+
+  @Autowired
+  private IiifParameterParserService parameterParserService;
+
+  @Value("${iiif.image.warmup.concurrency:2}")
+  private int defaultConcurrency;
+
+  @Value("${iiif.image.warmup.maxConcurrency:8}")
+  private int maxConcurrency;
+
+  @Value("${iiif.image.warmup.tileSize:512}")
+  private int tileSize;
+
+  @Value("${iiif.image.warmup.retainedJobs:20}")
+  private int retainedJobs;
+
+  private final Map<String, WarmupJob> jobs = new LinkedHashMap<>();
+  private final AtomicInteger threadCount = new AtomicInteger();
+  private ThreadPoolExecutor executor;
+
+  @Override
+  public void afterPropertiesSet() {
+    int threads = Math.max(1, maxConcurrency);
+    // the queue only holds the workers of the jobs, at most their concurrency each
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "iiif-image-warmup-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public CacheWarmupJob warmUp(List<String> identifiers, int concurrency) {
+    int threads = Math.max(1, Math.min(concurrency > 0 ? concurrency : defaultConcurrency, maxConcurrency));
+    WarmupJob job = new WarmupJob(new ArrayList<>(new LinkedHashSet<>(identifiers)), threads);
+    synchronized (jobs) {
+      jobs.put(job.getId(), job);
+      // forget the oldest finished jobs
+      Iterator<WarmupJob> it = jobs.values().iterator();
+      while (jobs.size() > retainedJobs && it.hasNext()) {
+        if (it.next().getState() != CacheWarmupJob.State.RUNNING) {
+          it.remove();
+        }
+      }
+    }
+    LOGGER.info("Starting warm-up {} of {} images with {} threads", job.getId(), job.getTotal(), threads);
+    job.start();
+    return job;
+  }
+
+  @Override
+  public CacheWarmupJob warmUpManifest(String manifest, int concurrency) throws InvalidParametersException {
+    return warmUp(getManifestIdentifiers(manifest), concurrency);
+  }
+
+  @Override
+  public CacheWarmupJob getJob(String id) {
+    synchronized (jobs) {
+      return jobs.get(id);
+    }
+  }
+
+  @Override
+  public List<CacheWarmupJob> getJobs() {
+    synchronized (jobs) {
+      return new ArrayList<>(jobs.values());
+    }
+  }
+
+  @Override
+  public boolean cancel(String id) {
+    WarmupJob job;
+    synchronized (jobs) {
+      job = jobs.get(id);
+    }
+    return job != null && job.cancel();
+  }
+
+  @Override
+  public void destroy() {
+    for (CacheWarmupJob job : getJobs()) {
+      ((WarmupJob) job).cancel();
+    }
+    executor.shutdownNow();
+  }
+
+  /**
+   * @return identifiers of all images with a IIIF image service in the manifest, in document order
+   */
+  List<String> getManifestIdentifiers(String manifest) throws InvalidParametersException {
+    Object json;
+    try {
+      json = new JSONParser().parse(manifest);
+    } catch (ParseException e) {
+      throw new InvalidParametersException("Manifest is not valid JSON: " + e);
+    }
+    Set<String> identifiers = new LinkedHashSet<>();
+    collectImageServices(json, identifiers);
+    return new ArrayList<>(identifiers);
+  }
+
+  private static void collectImageServices(Object node, Set<String> identifiers) {
+    if (node instanceof JSONObject) {
+      JSONObject object = (JSONObject) node;
+      Object id = object.containsKey("@id") ? object.get("@id") : object.get("id");
+      if (id instanceof String && isImageService(object)) {
+        identifiers.add(getIdentifier((String) id));
+      }
+      for (Object value : object.values()) {
+        collectImageServices(value, identifiers);
+      }
+    } else if (node instanceof JSONArray) {
+      for (Object value : (JSONArray) node) {
+        collectImageServices(value, identifiers);
+      }
+    }
+  }
+
+  private static boolean isImageService(JSONObject object) {
+    Object type = object.containsKey("@type") ? object.get("@type") : object.get("type");
+    return String.valueOf(object.get("@context")).contains("iiif.io/api/image")
+           || String.valueOf(object.get("profile")).contains("iiif.io/api/image")
+           || String.valueOf(type).startsWith("ImageService");
+  }
+
+  /**
+   * @return the identifier, i.e. the last path segment, of an image service URI
+   */
+  private static String getIdentifier(String serviceId) {
+    String id = serviceId.endsWith("/") ? serviceId.substring(0, serviceId.length() - 1) : serviceId;
+    String identifier = id.substring(id.lastIndexOf('/') + 1);
+    try {
+      return URLDecoder.decode(identifier, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void warmUp(String identifier) throws Exception {
+    ImageInfo info = imageService.getImageInfo(identifier);
+    RotationParameters rotation = parameterParserService.parseIiifRotation("0");
+    ImageBitDepth quality = parameterParserService.parseIiifQuality("default");
+    ImageFormat format = parameterParserService.parseIiifFormat("jpg");
+    for (String size : getOverviewSizes(info)) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      Image image = imageService.processImage(identifier, null, parameterParserService.parseIiifSize(size), rotation,
+                                              quality, format);
+      image.close();
+    }
+  }
+
+  /**
+   * @return sizes of the levels at which the whole image fits into one tile, as requested by tiling viewers
+   */
+  private List<String> getOverviewSizes(ImageInfo info) {
+    List<Integer> scaleFactors = info.getScaleFactors() != null ? info.getScaleFactors() : DEFAULT_SCALE_FACTORS;
+    Set<String> sizes = new LinkedHashSet<>();
+    for (int scaleFactor : scaleFactors) {
+      int width = (int) Math.ceil((double) info.getWidth() / scaleFactor);
+      int height = (int) Math.ceil((double) info.getHeight() / scaleFactor);
+      if (width <= tileSize && height <= tileSize) {
+        sizes.add(width + ",");
+      }
+    }
+    return new ArrayList<>(sizes);
+  }
+
+  private class WarmupJob implements CacheWarmupJob {
+
+    private final String id = UUID.randomUUID().toString();
+    private final List<String> identifiers;
+    private final int concurrency;
+    private final List<Future<?>> workers = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final long started = System.currentTimeMillis();
+    private volatile long finished = -1;
+    private volatile State state = State.RUNNING;
+
+    WarmupJob(List<String> identifiers, int concurrency) {
+      this.identifiers = identifiers;
+      this.concurrency = concurrency;
+    }
+
+    synchronized void start() {
+      if (identifiers.isEmpty()) {
+        finish(State.COMPLETED);
+        return;
+      }
+      try {
+        for (int i = 0; i < Math.min(concurrency, identifiers.size()); i++) {
+          workers.add(executor.submit(this::work));
+        }
+      } catch (RejectedExecutionException e) {
+        // the service is shut down
+        finish(State.CANCELLED);
+      }
+    }
+
+    /**
+     * Process identifiers until all of them have been taken or the job is finished.
+     */
+    private void work() {
+      while (state == State.RUNNING) {
+        int index = next.getAndIncrement();
+        if (index >= identifiers.size()) {
+          return;
+        }
+        process(identifiers.get(index));
+      }
+    }
+
+    private void process(String identifier) {
+      try {
+        warmUp(identifier);
+        completed.incrementAndGet();
+      } catch (Exception e) {
+        failed.incrementAndGet();
+        LOGGER.warn("Could not warm up {}: {}", identifier, e.toString());
+      }
+      int done = completed.get() + failed.get();
+      if (done % PROGRESS_INTERVAL == 0) {
+        LOGGER.info("Warm-up {}: {} of {} images done", id, done, identifiers.size());
+      }
+      if (done == identifiers.size()) {
+        finish(State.COMPLETED);
+      }
+    }
+
+    private synchronized boolean finish(State finalState) {
+      if (state != State.RUNNING) {
+        return false;
+      }
+      state = finalState;
+      finished = System.currentTimeMillis();
+      if (finalState == State.CANCELLED) {
+        // interrupts the images in progress, the workers stop taking further identifiers
+        for (Future<?> worker : workers) {
+          worker.cancel(true);
+        }
+      }
+      LOGGER.info("Warm-up {} {}: {} images completed, {} failed", id, finalState.name().toLowerCase(),
+                  completed.get(), failed.get());
+      return true;
+    }
+
+    boolean cancel() {
+      return finish(State.CANCELLED);
+    }
+
+    @Override
+    public String getId() {
+      return id;
+    }
+
+    @Override
+    public State getState() {
+      return state;
+    }
+
+    @Override
+    public int getTotal() {
+      return identifiers.size();
+    }
+
+    @Override
+    public int getCompleted() {
+      return completed.get();
+    }
+
+    @Override
+    public int getFailed() {
+      return failed.get();
+    }
+
+    @Override
+    public int getConcurrency() {
+      return concurrency;
+    }
+
+    @Override
+    public long getStarted() {
+      return started;
+    }
+
+    @Override
+    public long getFinished() {
+      return finished;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+
+/**
+ * Resolution of image request parameters against the dimensions of the image and their canonical form, see
+ * <a href="http://iiif.io/api/image/2.1/#canonical-uri-syntax">IIIF 2.1</a>.
+ *
+ * All requests that yield the same image have the same canonical form, so it is used as the key for caching and for
+ * coalescing requests.
+ */
+final class CanonicalImageRequest {
+
+  private CanonicalImageRequest() {
+  }
+
+  /**
+   * Convert the region to absolute coordinates, round it to whole pixels and clip it to the image.
+   *
+   * Coordinates are rounded up, as the renderers do, so the resolved region is exactly the one that is rendered and
+   * the one that ends up in the canonical form.
+   */
+  static void resolveRegion(RegionParameters regionParameters, ImageInfo info) throws InvalidParametersException {
+    if (!regionParameters.isAbsolute()) {
+      regionParameters.makeAbsolute(info.getWidth(), info.getHeight());
+    }
+    int x = (int) Math.ceil(regionParameters.getHorizontalOffset());
+    int y = (int) Math.ceil(regionParameters.getVerticalOffset());
+    if (x < 0 || y < 0 || x >= info.getWidth() || y >= info.getHeight()) {
+      throw new InvalidParametersException(String.format("x and/or y out of bounds (image size is %sx%s)",
+                                                         info.getWidth(), info.getHeight()));
+    }
+    int width = Math.min((int) Math.ceil(regionParameters.getWidth()), info.getWidth() - x);
+    int height = Math.min((int) Math.ceil(regionParameters.getHeight()), info.getHeight() - y);
+    if (width <= 0 || height <= 0) {
+      throw new InvalidParametersException("Width and height must be greater than 0");
+    }
+    regionParameters.setHorizontalOffset(x);
+    regionParameters.setVerticalOffset(y);
+    regionParameters.setWidth(width);
+    regionParameters.setHeight(height);
+  }
+
+  static int getRegionWidth(ImageInfo info, RegionParameters regionParameters) {
+    return regionParameters != null ? (int) regionParameters.getWidth() : info.getWidth();
+  }
+
+  static int getRegionHeight(ImageInfo info, RegionParameters regionParameters) {
+    return regionParameters != null ? (int) regionParameters.getHeight() : info.getHeight();
+  }
+
+  static int getTargetWidth(ImageInfo info, RegionParameters regionParameters, ResizeParameters sizeParameters) {
+    if (sizeParameters != null && sizeParameters.getWidth() > 0) {
+      return sizeParameters.getWidth();
+    }
+    return getRegionWidth(info, regionParameters);
+  }
+
+  static int getTargetHeight(ImageInfo info, RegionParameters regionParameters, ResizeParameters sizeParameters) {
+    if (sizeParameters != null && sizeParameters.getHeight() > 0) {
+      return sizeParameters.getHeight();
+    }
+    return getRegionHeight(info, regionParameters);
+  }
+
+  /**
+   * @return a key that is equal for all requests with the same resolved parameters, i.e. that yield the same image,
+   * including the modification time of the source, so renderings of a replaced source are not served any more
+   */
+  static String getKey(String identifier, ImageInfo info, RegionParameters regionParameters,
+                       ResizeParameters sizeParameters, RotationParameters rotationParameters,
+                       ImageBitDepth bitDepthParameter, ImageFormat formatParameter) {
+    return identifier + "@" + info.getLastModified() + "/" + format(info, regionParameters, sizeParameters,
+                                                                    rotationParameters, bitDepthParameter,
+                                                                    formatParameter);
+  }
+
+  /**
+   * @param info information about the requested image
+   * @param regionParameters resolved region or <code>null</code> for the full image
+   * @param sizeParameters size resolved against the region or <code>null</code> for no scaling
+   * @param rotationParameters rotation or <code>null</code>
+   * @param bitDepthParameter quality or <code>null</code> for the default quality
+   * @param formatParameter output format
+   * @return canonical "{region}/{size}/{rotation}/{quality}.{format}"
+   */
+  static String format(ImageInfo info, RegionParameters regionParameters, ResizeParameters sizeParameters,
+                       RotationParameters rotationParameters, ImageBitDepth bitDepthParameter,
+                       ImageFormat formatParameter) {
+    return String.format("%s/%s/%s/%s.%s", formatRegion(info, regionParameters),
+                         formatSize(info, regionParameters, sizeParameters), formatRotation(rotationParameters),
+                         formatQuality(info, bitDepthParameter, formatParameter),
+                         formatParameter.getExtensions()[0]);
+  }
+
+  private static String formatRegion(ImageInfo info, RegionParameters regionParameters) {
+    if (regionParameters == null) {
+      return "full";
+    }
+    int x = (int) regionParameters.getHorizontalOffset();
+    int y = (int) regionParameters.getVerticalOffset();
+    int width = (int) regionParameters.getWidth();
+    int height = (int) regionParameters.getHeight();
+    if (x == 0 && y == 0 && width == info.getWidth() && height == info.getHeight()) {
+      return "full";
+    }
+    return String.format("%d,%d,%d,%d", x, y, width, height);
+  }
+
+  private static String formatSize(ImageInfo info, RegionParameters regionParameters, ResizeParameters sizeParameters) {
+    int regionWidth = getRegionWidth(info, regionParameters);
+    int regionHeight = getRegionHeight(info, regionParameters);
+    int width = getTargetWidth(info, regionParameters, sizeParameters);
+    int height = getTargetHeight(info, regionParameters, sizeParameters);
+    if (width == regionWidth && height == regionHeight) {
+      return "full";
+    }
+    // "w," if requesting the width alone yields the same height, computed the same way as in ResizeParametersImpl
+    float aspect = (float) regionWidth / (float) regionHeight;
+    if ((int) Math.ceil(width / aspect) == height) {
+      return width + ",";
+    }
+    return width + "," + height;
+  }
+
+  private static String formatRotation(RotationParameters rotationParameters) {
+    if (rotationParameters == null) {
+      return "0";
+    }
+    String degrees = String.valueOf(rotationParameters.getDegrees() % 360);
+    return rotationParameters.isMirrorHorizontally() ? "!" + degrees : degrees;
+  }
+
+  /**
+   * JPEG images rendered as JPEG are kept in their color space, "color" is their default quality.
+   */
+  private static String formatQuality(ImageInfo info, ImageBitDepth bitDepthParameter, ImageFormat formatParameter) {
+    if (bitDepthParameter == null) {
+      return "default";
+    }
+    if (bitDepthParameter == ImageBitDepth.COLOR && info.getFormat() == ImageFormat.JPEG
+        && formatParameter == ImageFormat.JPEG) {
+      return "default";
+    }
+    switch (bitDepthParameter) {
+      case BITONAL:
+        return "bitonal";
+      case GRAYSCALE:
+        return "gray";
+      default:
+        return "color";
+    }
+  }
+}
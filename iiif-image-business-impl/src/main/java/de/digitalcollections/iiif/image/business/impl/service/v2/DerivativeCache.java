@@ -0,0 +1,164 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Cache for rendered images, keyed by the normalized request.
+ *
+ * Small outputs (typically tiles and thumbnails) are kept in the heap only <code>derivatives</code> cache, larger
+ * outputs in the <code>largeDerivatives</code> cache, which is backed by off-heap memory and disk. Both caches are
+ * sized in bytes in the ehcache configuration. Renderings with more pixels than configured are not cached at all, they
+ * are streamed to the client without being encoded into memory first.
+ */
+@Component
+public class DerivativeCache implements InitializingBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DerivativeCache.class);
+
+  public static final String HEAP_CACHE = "derivatives";
+  public static final String LARGE_CACHE = "largeDerivatives";
+
+  /**
+   * Hit, miss and put counters of one of the two derivative caches.
+   */
+  public static class TierCounters {
+
+    private final String name;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong bytesPut = new AtomicLong();
+
+    TierCounters(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getHits() {
+      return hits.get();
+    }
+
+    public long getMisses() {
+      return misses.get();
+    }
+
+    public long getPuts() {
+      return puts.get();
+    }
+
+    /**
+     * @return total size of all images that have been put into the tier
+     */
+    public long getBytesPut() {
+      return bytesPut.get();
+    }
+  }
+
+  @Autowired(required = false)
+  private CacheManager cacheManager;
+
+  @Value("${iiif.image.derivatives.heapThreshold:262144}")
+  private int heapThreshold;
+
+  @Value("${iiif.image.derivatives.maxPixels:4194304}")
+  private long maxPixels;
+
+  private Cache<Object, Object> heapCache;
+  private Cache<Object, Object> largeCache;
+
+  private final TierCounters heapCounters = new TierCounters(HEAP_CACHE);
+  private final TierCounters largeCounters = new TierCounters(LARGE_CACHE);
+
+  @Override
+  public void afterPropertiesSet() {
+    if (cacheManager != null) {
+      heapCache = cacheManager.getCache(HEAP_CACHE);
+      largeCache = cacheManager.getCache(LARGE_CACHE);
+    }
+    if (heapCache == null || largeCache == null) {
+      LOGGER.info("Caches {} and {} are not configured, rendered images will not be cached", HEAP_CACHE, LARGE_CACHE);
+      heapCache = null;
+      largeCache = null;
+    }
+  }
+
+  /**
+   * @param width width of the rendered image
+   * @param height height of the rendered image
+   * @return whether a rendering of that size is cached
+   */
+  public boolean isCacheable(int width, int height) {
+    return heapCache != null && (long) width * height <= maxPixels;
+  }
+
+  /**
+   * @param key normalized request
+   * @return the cached rendering or <code>null</code>
+   */
+  public EncodedImage get(String key) {
+    if (heapCache == null) {
+      return null;
+    }
+    EncodedImage image = (EncodedImage) heapCache.get(key);
+    if (image != null) {
+      heapCounters.hits.incrementAndGet();
+      return image;
+    }
+    heapCounters.misses.incrementAndGet();
+    image = (EncodedImage) largeCache.get(key);
+    if (image != null) {
+      largeCounters.hits.incrementAndGet();
+    } else {
+      largeCounters.misses.incrementAndGet();
+    }
+    return image;
+  }
+
+  /**
+   * @param key normalized request
+   * @return whether there is a cached rendering, without counting a hit or miss
+   */
+  public boolean contains(String key) {
+    return heapCache != null && (heapCache.containsKey(key) || largeCache.containsKey(key));
+  }
+
+  /**
+   * @param key normalized request
+   * @param image rendering to cache, stored in the tier that matches its size
+   */
+  public void put(String key, EncodedImage image) {
+    if (heapCache == null) {
+      return;
+    }
+    TierCounters counters;
+    if (image.getDataLength() <= heapThreshold) {
+      heapCache.put(key, image);
+      counters = heapCounters;
+    } else {
+      largeCache.put(key, image);
+      counters = largeCounters;
+    }
+    counters.puts.incrementAndGet();
+    counters.bytesPut.addAndGet(image.getDataLength());
+  }
+
+  public TierCounters getHeapCounters() {
+    return heapCounters;
+  }
+
+  public TierCounters getLargeCounters() {
+    return largeCounters;
+  }
+}
@@ -5,6 +5,7 @@ import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
 import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
 import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
@@ -144,6 +145,23 @@ public class IiifParameterParserServiceImpl implements IiifParameterParserServic
     return params;
   }
 
+  @Override
+  public String getCanonicalForm(ImageInfo info, String region, String size, String rotation, String quality,
+                                 String format) throws InvalidParametersException, UnsupportedFormatException {
+    RegionParameters regionParameters = parseIiifRegion(region);
+    if (regionParameters != null) {
+      CanonicalImageRequest.resolveRegion(regionParameters, info);
+    }
+    ResizeParameters sizeParameters = parseIiifSize(size);
+    if (sizeParameters != null) {
+      sizeParameters = new ResizeParametersImpl(sizeParameters,
+                                                CanonicalImageRequest.getRegionWidth(info, regionParameters),
+                                                CanonicalImageRequest.getRegionHeight(info, regionParameters));
+    }
+    return CanonicalImageRequest.format(info, regionParameters, sizeParameters, parseIiifRotation(rotation),
+                                        parseIiifQuality(quality), parseIiifFormat(format));
+  }
+
   private int parseIntegerValue(String value) throws InvalidParametersException {
     try {
       return Integer.parseInt(value);
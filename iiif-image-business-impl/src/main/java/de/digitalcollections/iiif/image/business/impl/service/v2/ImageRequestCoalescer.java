@@ -0,0 +1,142 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException;
+import de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException;
+import de.digitalcollections.iiif.image.model.api.v2.Image;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces concurrent identical image requests, so that each of them is processed only once at a time.
+ *
+ * The first request for a key processes the image, requests with the same key arriving in the meantime wait for it.
+ * If there are such waiting requests once processing has finished, the image is encoded and the bytes are shared
+ * between all of them, otherwise the processed image is handed to the first request as is.
+ */
+@Component
+public class ImageRequestCoalescer {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ImageRequestCoalescer.class);
+
+  @FunctionalInterface
+  public interface ImageProcessor {
+
+    Image process() throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException,
+        TransformationException, ResourceNotFoundException;
+  }
+
+  private static class Flight {
+
+    final CompletableFuture<Image> result = new CompletableFuture<>();
+    final AtomicInteger waiters = new AtomicInteger();
+  }
+
+  private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<>();
+  private final AtomicLong processedCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * @param key normalized request, requests with equal keys must produce the same image
+   * @param processor processes the image if there is no identical request in flight
+   * @return the processed image, either exclusively owned by the caller or shared in encoded form
+   */
+  public Image process(String key, ImageProcessor processor) throws InvalidParametersException,
+      UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException {
+    Flight flight = new Flight();
+    Flight current = flights.compute(key, (k, existing) -> {
+      if (existing == null) {
+        return flight;
+      }
+      existing.waiters.incrementAndGet();
+      return existing;
+    });
+    if (current != flight) {
+      coalescedCount.incrementAndGet();
+      LOGGER.debug("Waiting for identical request {}", key);
+      return await(current);
+    }
+
+    processedCount.incrementAndGet();
+    Image image;
+    try {
+      image = processor.process();
+    } catch (Exception | Error e) {
+      flights.remove(key, flight);
+      flight.result.completeExceptionally(e);
+      throw e;
+    }
+    // No further requests can join once the flight has been removed
+    flights.remove(key, flight);
+    if (flight.waiters.get() == 0 || image instanceof EncodedImage) {
+      flight.result.complete(image);
+      return image;
+    }
+    try {
+      Image shared = EncodedImage.encode(image);
+      flight.result.complete(shared);
+      return shared;
+    } catch (IOException | RuntimeException e) {
+      TransformationException te = new TransformationException("Could not encode image", e);
+      flight.result.completeExceptionally(te);
+      throw te;
+    }
+  }
+
+  private Image await(Flight flight) throws InvalidParametersException, UnsupportedFormatException,
+      TransformationException, ResourceNotFoundException {
+    try {
+      return flight.result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TransformationException("Interrupted while waiting for identical request", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof InvalidParametersException) {
+        throw (InvalidParametersException) cause;
+      } else if (cause instanceof UnsupportedFormatException) {
+        throw (UnsupportedFormatException) cause;
+      } else if (cause instanceof TransformationException) {
+        throw (TransformationException) cause;
+      } else if (cause instanceof ResourceNotFoundException) {
+        throw (ResourceNotFoundException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new TransformationException(cause);
+    }
+  }
+
+  /**
+   * @return number of requests that were processed
+   */
+  public long getProcessedCount() {
+    return processedCount.get();
+  }
+
+  /**
+   * @return number of requests that were served with the result of an identical request
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  /**
+   * @return number of requests that are currently being processed
+   */
+  public int getInFlightCount() {
+    return flights.size();
+  }
+}
@@ -14,11 +14,20 @@ import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
 import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
 import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
 import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service(value = "ImageServiceImpl-v2.0.0")
@@ -32,40 +41,86 @@ public class ImageServiceImpl implements ImageService {
   @Autowired(required = false)
   private ImageSecurityService imageSecurityService;
 
+  @Autowired
+  private ImageRequestCoalescer requestCoalescer;
+
+  @Autowired
+  private DerivativeCache derivativeCache;
+
+  @Autowired
+  private TilePrefetcher tilePrefetcher;
+
+  @Value("${iiif.image.batch.maxPixels:16777216}")
+  private long maxBatchPixels;
+
   @Override
   public ImageInfo getImageInfo(String identifier) throws UnsupportedFormatException, UnsupportedOperationException, ResourceNotFoundException {
     if (imageSecurityService != null && !imageSecurityService.isAccessAllowed(identifier)) {
       throw new ResourceNotFoundException();
     }
-    // FIXME: This is really ugly, but unfortunately there's no way to tell from the identifier what
-    // format we're dealing with...
-    for (ImageRepository repo : this.imageRepositories) {
-      try {
-        ImageInfo info = repo.getImageInfo(identifier);
-        return info;
-      } catch (Throwable repoNotWorking) {
-      }
+    return readImageInfo(identifier);
+  }
+
+  private ImageInfo readImageInfo(String identifier) throws UnsupportedFormatException, ResourceNotFoundException {
+    if (imageRepositories.isEmpty()) {
+      throw new UnsupportedFormatException("No image repositories available");
     }
-    throw new UnsupportedFormatException();
+    // The information is read from the header of the source and cached, it does not depend on the repository
+    return imageRepositories.get(0).getImageInfo(identifier);
   }
 
-  private Image getImage(String identifier, RegionParameters regionParameters, ImageFormat outputFormat, ImageBitDepth bitDepthParameter)
-          throws UnsupportedFormatException, InvalidParametersException, UnsupportedOperationException {
+  /**
+   * Select the repository that processes the image, before any image data is fetched.
+   *
+   * The repositories are ordered by their cost, the first one that can read the source format and that supports the
+   * whole chain of operations is chosen.
+   */
+  private ImageRepository selectRepository(ImageInfo info, Dimension regionDims, RegionParameters regionParameters,
+                                           ResizeParameters sizeParameters, RotationParameters rotationParameters,
+                                           ImageBitDepth bitDepthParameter, ImageFormat outputFormat)
+      throws UnsupportedFormatException {
     for (ImageRepository repo : this.imageRepositories) {
-      if (!repo.supportsCropOperation(regionParameters)
-          || !repo.supportsOutputFormat(outputFormat)
-          || !repo.supportsBitDepth(bitDepthParameter)) {
-        continue;
+      if ((info.getFormat() == null || repo.supportsInputFormat(info.getFormat()))
+          && repo.supportsOutputFormat(outputFormat)
+          && repo.supportsCropOperation(regionParameters)
+          && repo.supportsScaleOperation(regionDims, sizeParameters)
+          && repo.supportsRotation(rotationParameters)
+          && repo.supportsBitDepth(bitDepthParameter)) {
+        return repo;
       }
-      try {
-        Image image = repo.getImage(identifier, regionParameters);
-        return image;
-      } catch (InvalidParametersException e) {
-        throw e;
-      } catch (Throwable repoNotWorking) {
+    }
+    throw new UnsupportedFormatException(String.format("No image repository can convert %s to %s with the requested operations",
+                                                       info.getFormat(), outputFormat));
+  }
+
+  /**
+   * @return the smallest pyramid level that still covers the requested size, 0 for the full resolution
+   */
+  static int selectPyramidLevel(int pyramidLevels, int regionWidth, int regionHeight, ResizeParameters sizeParameters) {
+    if (sizeParameters == null || sizeParameters.getWidth() <= 0 || sizeParameters.getHeight() <= 0) {
+      return 0;
+    }
+    for (int level = pyramidLevels; level > 0; level--) {
+      if ((regionWidth >> level) >= sizeParameters.getWidth() && (regionHeight >> level) >= sizeParameters.getHeight()) {
+        return level;
       }
     }
-    throw new UnsupportedFormatException();
+    return 0;
+  }
+
+  /**
+   * @return the region in the pixel grid of the given pyramid level, enclosing the original region
+   */
+  static RegionParameters scaleRegion(RegionParameters regionParameters, int pyramidLevel) {
+    if (regionParameters == null) {
+      return null;
+    }
+    float factor = 1 << pyramidLevel;
+    int x = (int) Math.floor(regionParameters.getHorizontalOffset() / factor);
+    int y = (int) Math.floor(regionParameters.getVerticalOffset() / factor);
+    int right = (int) Math.ceil((regionParameters.getHorizontalOffset() + regionParameters.getWidth()) / factor);
+    int bottom = (int) Math.ceil((regionParameters.getVerticalOffset() + regionParameters.getHeight()) / factor);
+    return new RegionParametersImpl(true, x, y, right - x, bottom - y);
   }
 
   @Override
@@ -75,12 +130,291 @@ public class ImageServiceImpl implements ImageService {
       LOGGER.info("Access to image '{}' is not allowed!", identifier);
       throw new ResourceNotFoundException();
     }
-    Image image = getImage(identifier, regionParameters, formatParameter, bitDepthParameter);
+    ImageInfo info = readImageInfo(identifier);
+    if (regionParameters != null) {
+      CanonicalImageRequest.resolveRegion(regionParameters, info);
+    }
+    int sourceWidth = regionParameters != null ? (int) regionParameters.getWidth() : info.getWidth();
+    int sourceHeight = regionParameters != null ? (int) regionParameters.getHeight() : info.getHeight();
+    ResizeParameters resolvedSize = sizeParameters != null
+        ? new ResizeParametersImpl(sizeParameters, sourceWidth, sourceHeight) : null;
+    String requestKey = CanonicalImageRequest.getKey(identifier, info, regionParameters, resolvedSize,
+                                                     rotationParameters, bitDepthParameter, formatParameter);
+    tilePrefetcher.tileRequested(identifier, requestKey);
+    EncodedImage cached = derivativeCache.get(requestKey);
+    if (cached != null) {
+      LOGGER.debug("Serving {} from the derivative cache", requestKey);
+      prefetchNeighbours(identifier, info, regionParameters, resolvedSize, rotationParameters, bitDepthParameter,
+                         formatParameter);
+      return cached;
+    }
+    boolean cacheable = derivativeCache.isCacheable(
+        CanonicalImageRequest.getTargetWidth(info, regionParameters, resolvedSize),
+        CanonicalImageRequest.getTargetHeight(info, regionParameters, resolvedSize));
+    Image result = renderCached(requestKey, cacheable, identifier, info, regionParameters, resolvedSize,
+                                rotationParameters, bitDepthParameter, formatParameter);
+    if (cacheable) {
+      prefetchNeighbours(identifier, info, regionParameters, resolvedSize, rotationParameters, bitDepthParameter,
+                         formatParameter);
+    }
+    return result;
+  }
+
+  /**
+   * Render the image once for all identical requests in flight and put it into the derivative cache if it is cacheable.
+   */
+  private Image renderCached(String requestKey, boolean cacheable, String identifier, ImageInfo info,
+                             RegionParameters regionParameters, ResizeParameters sizeParameters,
+                             RotationParameters rotationParameters, ImageBitDepth bitDepthParameter,
+                             ImageFormat formatParameter)
+      throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException {
+    return requestCoalescer.process(requestKey, () -> {
+      Image image = renderImage(identifier, info, regionParameters, sizeParameters, rotationParameters,
+                                bitDepthParameter, formatParameter);
+      return cacheable ? encodeAndCache(requestKey, image) : image;
+    });
+  }
+
+  /**
+   * @return the encoded image, which has been put into the derivative cache
+   */
+  private EncodedImage encodeAndCache(String requestKey, Image image) throws TransformationException {
+    try {
+      EncodedImage encoded = EncodedImage.encode(image);
+      derivativeCache.put(requestKey, encoded);
+      return encoded;
+    } catch (IOException e) {
+      throw new TransformationException("Could not encode image", e);
+    }
+  }
+
+  /**
+   * A tile of a batch request.
+   */
+  private static class Tile {
+
+    final int index;
+    final RegionParameters regionParameters;
+    final ResizeParameters sizeParameters;
+    final String key;
+
+    Tile(int index, RegionParameters regionParameters, ResizeParameters sizeParameters, String key) {
+      this.index = index;
+      this.regionParameters = regionParameters;
+      this.sizeParameters = sizeParameters;
+      this.key = key;
+    }
+  }
+
+  @Override
+  public List<Image> processImages(String identifier, List<RegionParameters> regionParameters, List<ResizeParameters> sizeParameters, RotationParameters rotationParameters, ImageBitDepth bitDepthParameter, ImageFormat formatParameter)
+      throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException {
+    if (regionParameters.size() != sizeParameters.size()) {
+      throw new InvalidParametersException("Every region needs a size");
+    }
+    if (imageSecurityService != null && !imageSecurityService.isAccessAllowed(identifier)) {
+      LOGGER.info("Access to image '{}' is not allowed!", identifier);
+      throw new ResourceNotFoundException();
+    }
+    ImageInfo info = readImageInfo(identifier);
+    Image[] images = new Image[regionParameters.size()];
+    // Tiles that are not cached yet by their scale factor, 0 for those that have to be rendered one by one
+    Map<Integer, List<Tile>> pending = new LinkedHashMap<>();
+    for (int i = 0; i < images.length; i++) {
+      RegionParameters region = regionParameters.get(i);
+      if (region != null) {
+        CanonicalImageRequest.resolveRegion(region, info);
+      }
+      ResizeParameters size = sizeParameters.get(i) != null
+          ? new ResizeParametersImpl(sizeParameters.get(i), CanonicalImageRequest.getRegionWidth(info, region),
+                                     CanonicalImageRequest.getRegionHeight(info, region))
+          : null;
+      String key = CanonicalImageRequest.getKey(identifier, info, region, size, rotationParameters, bitDepthParameter,
+                                                formatParameter);
+      tilePrefetcher.tileRequested(identifier, key);
+      EncodedImage cached = derivativeCache.get(key);
+      if (cached != null) {
+        images[i] = cached;
+      } else {
+        Tile tile = new Tile(i, region, size, key);
+        pending.computeIfAbsent(getScaleFactor(info, tile), scale -> new ArrayList<>()).add(tile);
+      }
+    }
+    try {
+      for (Map.Entry<Integer, List<Tile>> entry : pending.entrySet()) {
+        List<Tile> tiles = entry.getValue();
+        if (entry.getKey() > 0 && tiles.size() > 1
+            && renderTiles(identifier, info, entry.getKey(), tiles, rotationParameters, bitDepthParameter,
+                           formatParameter, images)) {
+          continue;
+        }
+        for (Tile tile : tiles) {
+          images[tile.index] = renderCached(tile.key, isCacheable(info, tile), identifier, info, tile.regionParameters,
+                                            tile.sizeParameters, rotationParameters, bitDepthParameter, formatParameter);
+        }
+      }
+    } catch (InvalidParametersException | UnsupportedFormatException | TransformationException | ResourceNotFoundException | RuntimeException e) {
+      for (Image image : images) {
+        if (image != null) {
+          image.close();
+        }
+      }
+      throw e;
+    }
+    return Arrays.asList(images);
+  }
+
+  private boolean isCacheable(ImageInfo info, Tile tile) {
+    return derivativeCache.isCacheable(
+        CanonicalImageRequest.getTargetWidth(info, tile.regionParameters, tile.sizeParameters),
+        CanonicalImageRequest.getTargetHeight(info, tile.regionParameters, tile.sizeParameters));
+  }
+
+  /**
+   * @return the integer factor the tile is scaled down by, if it lies on the pixel grid of that scale, so that it can be
+   * cut from a region decoded at that scale; 0 otherwise
+   */
+  private static int getScaleFactor(ImageInfo info, Tile tile) {
+    RegionParameters region = tile.regionParameters;
+    float x = region != null ? region.getHorizontalOffset() : 0;
+    float y = region != null ? region.getVerticalOffset() : 0;
+    int width = CanonicalImageRequest.getRegionWidth(info, region);
+    int height = CanonicalImageRequest.getRegionHeight(info, region);
+    int targetWidth = CanonicalImageRequest.getTargetWidth(info, region, tile.sizeParameters);
+    int targetHeight = CanonicalImageRequest.getTargetHeight(info, region, tile.sizeParameters);
+    if (targetWidth <= 0 || targetHeight <= 0) {
+      return 0;
+    }
+    int scale = Math.round((float) width / targetWidth);
+    if (scale < 1 || x != (int) x || y != (int) y || (int) x % scale != 0 || (int) y % scale != 0
+        || (int) Math.ceil((double) width / scale) != targetWidth
+        || (int) Math.ceil((double) height / scale) != targetHeight) {
+      return 0;
+    }
+    return scale;
+  }
+
+  /**
+   * Render tiles of the same scale from a single decoding of the region that encloses them.
+   *
+   * @return <code>false</code> if the tiles have to be rendered one by one
+   */
+  private boolean renderTiles(String identifier, ImageInfo info, int scale, List<Tile> tiles,
+                              RotationParameters rotationParameters, ImageBitDepth bitDepthParameter,
+                              ImageFormat formatParameter, Image[] images)
+      throws InvalidParametersException, UnsupportedFormatException, TransformationException, ResourceNotFoundException {
+    int left = Integer.MAX_VALUE;
+    int top = Integer.MAX_VALUE;
+    int right = 0;
+    int bottom = 0;
+    for (Tile tile : tiles) {
+      int x = tile.regionParameters != null ? (int) tile.regionParameters.getHorizontalOffset() : 0;
+      int y = tile.regionParameters != null ? (int) tile.regionParameters.getVerticalOffset() : 0;
+      left = Math.min(left, x);
+      top = Math.min(top, y);
+      right = Math.max(right, x + CanonicalImageRequest.getRegionWidth(info, tile.regionParameters));
+      bottom = Math.max(bottom, y + CanonicalImageRequest.getRegionHeight(info, tile.regionParameters));
+    }
+    int width = right - left;
+    int height = bottom - top;
+    ResizeParametersImpl decodedSize = new ResizeParametersImpl();
+    decodedSize.setWidth((int) Math.ceil((double) width / scale));
+    decodedSize.setHeight((int) Math.ceil((double) height / scale));
+    if ((long) decodedSize.getWidth() * decodedSize.getHeight() > maxBatchPixels) {
+      LOGGER.debug("Region enclosing {} tiles of {} is too large to be decoded at once", tiles.size(), identifier);
+      return false;
+    }
+    List<RegionParameters> cuts = new ArrayList<>(tiles.size());
+    for (Tile tile : tiles) {
+      int x = tile.regionParameters != null ? (int) tile.regionParameters.getHorizontalOffset() : 0;
+      int y = tile.regionParameters != null ? (int) tile.regionParameters.getVerticalOffset() : 0;
+      cuts.add(new RegionParametersImpl(true, (x - left) / scale, (y - top) / scale,
+                                        CanonicalImageRequest.getTargetWidth(info, tile.regionParameters, tile.sizeParameters),
+                                        CanonicalImageRequest.getTargetHeight(info, tile.regionParameters, tile.sizeParameters)));
+    }
+
+    RegionParameters region = new RegionParametersImpl(true, left, top, width, height);
+    ImageRepository repository = selectRepository(info, new Dimension(width, height), region, decodedSize,
+                                                  rotationParameters, bitDepthParameter, formatParameter);
+    int pyramidLevel = selectPyramidLevel(repository.getPyramidLevels(info), width, height, decodedSize);
+    if (pyramidLevel > 0) {
+      region = scaleRegion(region, pyramidLevel);
+    }
+    List<Image> rendered;
+    try {
+      rendered = repository.getImages(identifier, region, decodedSize, pyramidLevel, cuts);
+    } catch (UnsupportedOperationException e) {
+      LOGGER.debug("Can not render {} tiles of {} at once: {}", tiles.size(), identifier, e.getMessage());
+      return false;
+    }
+    if (rendered == null) {
+      throw new ResourceNotFoundException();
+    }
+    LOGGER.debug("Cut {} tiles of {} from one decoded {}x{} region", tiles.size(), identifier,
+                 decodedSize.getWidth(), decodedSize.getHeight());
+    for (int i = 0; i < tiles.size(); i++) {
+      Tile tile = tiles.get(i);
+      Image image;
+      try {
+        // The tiles have their region and size already, only the remaining operations are left
+        image = transformImage(rendered.get(i), null, null, rotationParameters, bitDepthParameter, formatParameter);
+      } catch (InvalidParametersException | UnsupportedOperationException | UnsupportedFormatException | TransformationException e) {
+        rendered.subList(i, rendered.size()).forEach(Image::close);
+        throw e;
+      }
+      try {
+        images[tile.index] = isCacheable(info, tile) ? encodeAndCache(tile.key, image) : image;
+      } catch (TransformationException e) {
+        // the failed image has been released by encodeAndCache
+        rendered.subList(i + 1, rendered.size()).forEach(Image::close);
+        throw e;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Let the prefetcher render the tiles a viewer is likely to request after this one, with the same rotation, quality
+   * and format. Access to the image has been checked for this request already.
+   */
+  private void prefetchNeighbours(String identifier, ImageInfo info, RegionParameters regionParameters,
+                                  ResizeParameters sizeParameters, RotationParameters rotationParameters,
+                                  ImageBitDepth bitDepthParameter, ImageFormat formatParameter) {
+    tilePrefetcher.tileServed(identifier, info, regionParameters, sizeParameters, rotationParameters,
+                              bitDepthParameter, formatParameter, (key, tileRegion, tileSize) -> {
+          if (!derivativeCache.isCacheable(tileSize.getWidth(), tileSize.getHeight())) {
+            return;
+          }
+          Image image = renderCached(key, true, identifier, info, tileRegion, tileSize, rotationParameters,
+                                     bitDepthParameter, formatParameter);
+          image.close();
+        });
+  }
+
+  private Image renderImage(String identifier, ImageInfo info, RegionParameters regionParameters,
+                            ResizeParameters sizeParameters, RotationParameters rotationParameters,
+                            ImageBitDepth bitDepthParameter, ImageFormat formatParameter)
+      throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException, ResourceNotFoundException {
+    int sourceWidth = regionParameters != null ? (int) regionParameters.getWidth() : info.getWidth();
+    int sourceHeight = regionParameters != null ? (int) regionParameters.getHeight() : info.getHeight();
+    ImageRepository repository = selectRepository(info, new Dimension(sourceWidth, sourceHeight), regionParameters,
+                                                  sizeParameters, rotationParameters, bitDepthParameter, formatParameter);
+
+    int pyramidLevel = selectPyramidLevel(repository.getPyramidLevels(info), sourceWidth, sourceHeight,
+                                          sizeParameters);
+    if (pyramidLevel > 0) {
+      regionParameters = scaleRegion(regionParameters, pyramidLevel);
+    }
+    Image image = repository.getImage(identifier, regionParameters, sizeParameters, pyramidLevel);
     if (image == null) {
       throw new ResourceNotFoundException();
     }
-    image = transformImage(image, regionParameters, sizeParameters, rotationParameters, bitDepthParameter, formatParameter);
-    return image;
+    try {
+      return transformImage(image, regionParameters, sizeParameters, rotationParameters, bitDepthParameter, formatParameter);
+    } catch (InvalidParametersException | UnsupportedOperationException | UnsupportedFormatException | TransformationException e) {
+      image.close();
+      throw e;
+    }
   }
 
   private Image transformImage(Image image, RegionParameters regionParameters, ResizeParameters sizeParameters,
@@ -88,23 +422,12 @@ public class ImageServiceImpl implements ImageService {
                                ImageFormat formatParameter)
       throws InvalidParametersException, UnsupportedOperationException, UnsupportedFormatException, TransformationException {
 
-    // Convert relative to absolute region parameters
-    if (regionParameters != null && !regionParameters.isAbsolute()) {
-      regionParameters.makeAbsolute(image.getWidth(), image.getHeight());
-    }
-
     // now do processing:
     if (regionParameters != null && (image.getWidth() != regionParameters.getWidth()
         || image.getHeight() != regionParameters.getHeight())) {
       image = image.crop(regionParameters);
     }
 
-    if (sizeParameters != null) {
-      int sourceWidth = regionParameters != null ? (int) regionParameters.getWidth() : image.getWidth();
-      int sourceHeight = regionParameters != null ? (int) regionParameters.getHeight() : image.getHeight();
-      sizeParameters = new ResizeParametersImpl(sizeParameters, sourceWidth, sourceHeight);
-    }
-
     if (sizeParameters != null && sizeParameters.getMaxHeight() != -1
         && sizeParameters.getMaxWidth() != -1) {
       image = image.scale(sizeParameters);
@@ -113,8 +436,8 @@ public class ImageServiceImpl implements ImageService {
       if (rotationParameters.isMirrorHorizontally()) {
         image = image.flipHorizontally();
       }
-      if (rotationParameters.getDegrees() > 0) {
-        image = image.rotate(rotationParameters.getDegrees());
+      if (rotationParameters.getDegrees() % 360 > 0) {
+        image = image.rotate(rotationParameters.getDegrees() % 360);
       }
     }
     if (bitDepthParameter != null) {
@@ -0,0 +1,473 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Prefetches the tiles a deep zoom viewer is likely to request next into the derivative cache.
+ *
+ * After a tile has been served, its neighbours at the same scale and then the four tiles of the next zoom level that
+ * cover it are rendered by a low priority thread. The tile grid is derived from the served tile itself: its region
+ * width and height are the grid step, the ratio of region to output width is the scale factor. Requests that are not
+ * aligned to such a grid, and the bottom right tile whose grid step can't be told, trigger no prefetching.
+ *
+ * Prefetching is disabled by default (<code>iiif.image.prefetch.enabled</code>). Each identifier has a budget of
+ * prefetched tiles that have not been requested yet, so a single image can't flood the cache, and queued tiles are
+ * dropped as soon as the number of foreground requests in progress reaches
+ * <code>iiif.image.prefetch.maxForegroundLoad</code>. The metrics are registered in the platform MBean server, see
+ * {@link TilePrefetcherMXBean}.
+ */
+@Component
+public class TilePrefetcher implements InitializingBean, DisposableBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TilePrefetcher.class);
+
+  public static final String JMX_NAME = "de.digitalcollections.iiif.image:type=TilePrefetcher";
+
+  /**
+   * Renders a tile into the derivative cache.
+   */
+  @FunctionalInterface
+  interface TileRenderer {
+
+    void render(String key, RegionParameters regionParameters, ResizeParameters sizeParameters) throws Exception;
+  }
+
+  private static final int QUEUED = 0;
+  private static final int RENDERING = 1;
+  private static final int RENDERED = 2;
+
+  private static class Prefetch {
+
+    final long time = System.currentTimeMillis();
+    volatile int state = QUEUED;
+  }
+
+  private static class Tile {
+
+    final RegionParameters regionParameters;
+    final ResizeParameters sizeParameters;
+
+    Tile(RegionParameters regionParameters, ResizeParameters sizeParameters) {
+      this.regionParameters = regionParameters;
+      this.sizeParameters = sizeParameters;
+    }
+  }
+
+  @Autowired
+  private DerivativeCache derivativeCache;
+
+  @Autowired
+  private ImageRequestCoalescer requestCoalescer;
+
+  @Value("${iiif.image.prefetch.enabled:false}")
+  private boolean enabled;
+
+  @Value("${iiif.image.prefetch.threads:1}")
+  private int threads;
+
+  @Value("${iiif.image.prefetch.queueSize:64}")
+  private int queueSize;
+
+  @Value("${iiif.image.prefetch.budget:16}")
+  private int budget;
+
+  @Value("${iiif.image.prefetch.maxForegroundLoad:4}")
+  private int maxForegroundLoad;
+
+  @Value("${iiif.image.prefetch.maxTileSize:1024}")
+  private int maxTileSize;
+
+  @Value("${iiif.image.prefetch.expirySeconds:300}")
+  private int expirySeconds;
+
+  @Value("${iiif.image.prefetch.maxIdentifiers:1000}")
+  private int maxIdentifiers;
+
+  /**
+   * Prefetched tiles that have not been requested yet, by key per identifier, the least recently used identifiers are
+   * forgotten
+   */
+  private final Map<String, Map<String, Prefetch>> prefetches = new LinkedHashMap<String, Map<String, Prefetch>>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Map<String, Prefetch>> eldest) {
+      return size() > maxIdentifiers;
+    }
+  };
+
+  private ThreadPoolExecutor executor;
+  private ObjectName registeredName;
+  private final AtomicInteger threadCount = new AtomicInteger();
+  private final AtomicInteger activeCount = new AtomicInteger();
+
+  private final AtomicLong scheduled = new AtomicLong();
+  private final AtomicLong rendered = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+  private final AtomicLong cancelled = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+
+  @Override
+  public void afterPropertiesSet() {
+    if (!enabled) {
+      return;
+    }
+    executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize),
+                                      runnable -> {
+                                        Thread thread = new Thread(runnable, "iiif-image-prefetch-" + threadCount.incrementAndGet());
+                                        thread.setDaemon(true);
+                                        thread.setPriority(Thread.MIN_PRIORITY);
+                                        return thread;
+                                      });
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(JMX_NAME);
+      if (server.isRegistered(name)) {
+        // left over from another application context in the same JVM
+        server.unregisterMBean(name);
+      }
+      server.registerMBean(new TilePrefetcherBean(), name);
+      registeredName = name;
+    } catch (JMException e) {
+      LOGGER.warn("Could not register prefetch metrics", e);
+    }
+    LOGGER.info("Prefetching neighbouring tiles with {} threads, budget {} tiles per image", threads, budget);
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (registeredName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+      } catch (JMException e) {
+        LOGGER.debug("Could not unregister {}", registeredName, e);
+      }
+      registeredName = null;
+    }
+  }
+
+  public boolean isEnabled() {
+    return executor != null;
+  }
+
+  /**
+   * Record a foreground request, to count the requests for prefetched tiles.
+   *
+   * @param identifier requested image
+   * @param key normalized request
+   */
+  public void tileRequested(String identifier, String key) {
+    if (!isEnabled()) {
+      return;
+    }
+    Prefetch prefetch;
+    synchronized (prefetches) {
+      Map<String, Prefetch> outstanding = prefetches.get(identifier);
+      prefetch = outstanding != null ? outstanding.remove(key) : null;
+    }
+    // a queued tile is rendered by the request itself, the prefetch will find it cached
+    if (prefetch != null && prefetch.state != QUEUED) {
+      hits.incrementAndGet();
+    }
+  }
+
+  /**
+   * Queue the neighbours of a served tile for prefetching.
+   *
+   * @param identifier requested image
+   * @param info information about the image
+   * @param regionParameters resolved region of the served tile
+   * @param sizeParameters size of the served tile, resolved against its region
+   * @param renderer renders a neighbour with the same rotation, quality and format into the derivative cache
+   */
+  void tileServed(String identifier, ImageInfo info, RegionParameters regionParameters,
+                  ResizeParameters sizeParameters, RotationParameters rotationParameters,
+                  ImageBitDepth bitDepthParameter, ImageFormat formatParameter, TileRenderer renderer) {
+    if (!isEnabled() || regionParameters == null || sizeParameters == null) {
+      return;
+    }
+    if (isForegroundLoadHigh()) {
+      cancelQueued();
+      return;
+    }
+    List<Tile> tiles = getNeighbours(info, regionParameters, sizeParameters);
+    List<PrefetchTask> tasks = new ArrayList<>();
+    synchronized (prefetches) {
+      Map<String, Prefetch> outstanding = prefetches.computeIfAbsent(identifier, k -> new HashMap<>());
+      expire(outstanding);
+      for (Tile tile : tiles) {
+        if (outstanding.size() >= budget) {
+          break;
+        }
+        String key = CanonicalImageRequest.getKey(identifier, info, tile.regionParameters, tile.sizeParameters,
+                                                  rotationParameters, bitDepthParameter, formatParameter);
+        if (outstanding.containsKey(key) || derivativeCache.contains(key)) {
+          continue;
+        }
+        Prefetch prefetch = new Prefetch();
+        outstanding.put(key, prefetch);
+        tasks.add(new PrefetchTask(identifier, key, prefetch, tile, renderer));
+      }
+    }
+    for (PrefetchTask task : tasks) {
+      try {
+        executor.execute(task);
+        scheduled.incrementAndGet();
+      } catch (RejectedExecutionException e) {
+        // the queue is full, the viewer has moved on faster than the tiles can be rendered
+        cancelled.incrementAndGet();
+        untrack(task.identifier, task.key, task.prefetch);
+      }
+    }
+  }
+
+  /**
+   * @return the neighbours of the tile at the same scale, followed by the tiles of the next zoom level covering it
+   */
+  private List<Tile> getNeighbours(ImageInfo info, RegionParameters regionParameters, ResizeParameters sizeParameters) {
+    List<Tile> tiles = new ArrayList<>();
+    int x = (int) regionParameters.getHorizontalOffset();
+    int y = (int) regionParameters.getVerticalOffset();
+    int width = (int) regionParameters.getWidth();
+    int height = (int) regionParameters.getHeight();
+    int targetWidth = sizeParameters.getWidth();
+    if (targetWidth <= 0 || targetWidth > maxTileSize || sizeParameters.getHeight() > maxTileSize) {
+      return tiles;
+    }
+    int scale = Math.round((float) width / targetWidth);
+    if (scale < 1 || Math.abs(width - scale * targetWidth) >= scale) {
+      return tiles;
+    }
+    // tiles at the right and bottom edge are clipped, the step is taken from the other dimension then
+    boolean rightEdge = x + width >= info.getWidth();
+    boolean bottomEdge = y + height >= info.getHeight();
+    if (rightEdge && bottomEdge) {
+      return tiles;
+    }
+    int stepX = rightEdge ? height : width;
+    int stepY = bottomEdge ? stepX : height;
+    if (x % stepX != 0 || y % stepY != 0) {
+      return tiles;
+    }
+    addTile(tiles, info, x - stepX, y, stepX, stepY, scale);
+    addTile(tiles, info, x + stepX, y, stepX, stepY, scale);
+    addTile(tiles, info, x, y - stepY, stepX, stepY, scale);
+    addTile(tiles, info, x, y + stepY, stepX, stepY, scale);
+    if (scale % 2 == 0 && stepX % 2 == 0 && stepY % 2 == 0) {
+      int halfX = stepX / 2;
+      int halfY = stepY / 2;
+      addTile(tiles, info, x, y, halfX, halfY, scale / 2);
+      addTile(tiles, info, x + halfX, y, halfX, halfY, scale / 2);
+      addTile(tiles, info, x, y + halfY, halfX, halfY, scale / 2);
+      addTile(tiles, info, x + halfX, y + halfY, halfX, halfY, scale / 2);
+    }
+    return tiles;
+  }
+
+  /**
+   * Add the tile as a viewer requests it: the region clipped to the image and the width of the output, "w,".
+   */
+  private static void addTile(List<Tile> tiles, ImageInfo info, int x, int y, int width, int height, int scale) {
+    if (x < 0 || y < 0 || x >= info.getWidth() || y >= info.getHeight()) {
+      return;
+    }
+    width = Math.min(width, info.getWidth() - x);
+    height = Math.min(height, info.getHeight() - y);
+    ResizeParametersImpl requestedSize = new ResizeParametersImpl();
+    requestedSize.setWidth((int) Math.ceil((double) width / scale));
+    try {
+      tiles.add(new Tile(new RegionParametersImpl(true, x, y, width, height),
+                         new ResizeParametersImpl(requestedSize, width, height)));
+    } catch (InvalidParametersException e) {
+      LOGGER.debug("Can not prefetch tile {},{},{},{}", x, y, width, height, e);
+    }
+  }
+
+  private boolean isForegroundLoadHigh() {
+    return requestCoalescer.getInFlightCount() - activeCount.get() >= maxForegroundLoad;
+  }
+
+  /**
+   * Drop all queued tiles.
+   */
+  private void cancelQueued() {
+    List<Runnable> dropped = new ArrayList<>();
+    executor.getQueue().drainTo(dropped);
+    for (Runnable runnable : dropped) {
+      PrefetchTask task = (PrefetchTask) runnable;
+      untrack(task.identifier, task.key, task.prefetch);
+    }
+    if (!dropped.isEmpty()) {
+      cancelled.addAndGet(dropped.size());
+      LOGGER.debug("Dropped {} queued tiles because of foreground load", dropped.size());
+    }
+  }
+
+  /**
+   * Forget prefetched tiles that have not been requested in time, they don't count against the budget anymore.
+   */
+  private void expire(Map<String, Prefetch> outstanding) {
+    long expiry = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(expirySeconds);
+    Iterator<Prefetch> it = outstanding.values().iterator();
+    while (it.hasNext()) {
+      Prefetch prefetch = it.next();
+      if (prefetch.time < expiry && prefetch.state == RENDERED) {
+        it.remove();
+        expired.incrementAndGet();
+      }
+    }
+  }
+
+  private boolean isTracked(String identifier, String key, Prefetch prefetch) {
+    synchronized (prefetches) {
+      Map<String, Prefetch> outstanding = prefetches.get(identifier);
+      return outstanding != null && outstanding.get(key) == prefetch;
+    }
+  }
+
+  private void untrack(String identifier, String key, Prefetch prefetch) {
+    synchronized (prefetches) {
+      Map<String, Prefetch> outstanding = prefetches.get(identifier);
+      if (outstanding != null) {
+        outstanding.remove(key, prefetch);
+      }
+    }
+  }
+
+  private class PrefetchTask implements Runnable {
+
+    final String identifier;
+    final String key;
+    final Prefetch prefetch;
+    final Tile tile;
+    final TileRenderer renderer;
+
+    PrefetchTask(String identifier, String key, Prefetch prefetch, Tile tile, TileRenderer renderer) {
+      this.identifier = identifier;
+      this.key = key;
+      this.prefetch = prefetch;
+      this.tile = tile;
+      this.renderer = renderer;
+    }
+
+    @Override
+    public void run() {
+      // requested meanwhile, or forgotten together with its identifier
+      if (!isTracked(identifier, key, prefetch)) {
+        skipped.incrementAndGet();
+        return;
+      }
+      if (isForegroundLoadHigh()) {
+        cancelled.incrementAndGet();
+        untrack(identifier, key, prefetch);
+        return;
+      }
+      if (derivativeCache.contains(key)) {
+        skipped.incrementAndGet();
+        untrack(identifier, key, prefetch);
+        return;
+      }
+      prefetch.state = RENDERING;
+      activeCount.incrementAndGet();
+      try {
+        renderer.render(key, tile.regionParameters, tile.sizeParameters);
+        prefetch.state = RENDERED;
+        rendered.incrementAndGet();
+      } catch (Exception e) {
+        failed.incrementAndGet();
+        untrack(identifier, key, prefetch);
+        LOGGER.debug("Could not prefetch {}", key, e);
+      } finally {
+        activeCount.decrementAndGet();
+      }
+    }
+  }
+
+  private class TilePrefetcherBean implements TilePrefetcherMXBean {
+
+    @Override
+    public boolean isEnabled() {
+      return TilePrefetcher.this.isEnabled();
+    }
+
+    @Override
+    public long getScheduled() {
+      return scheduled.get();
+    }
+
+    @Override
+    public long getRendered() {
+      return rendered.get();
+    }
+
+    @Override
+    public long getSkipped() {
+      return skipped.get();
+    }
+
+    @Override
+    public long getCancelled() {
+      return cancelled.get();
+    }
+
+    @Override
+    public long getFailed() {
+      return failed.get();
+    }
+
+    @Override
+    public long getHits() {
+      return hits.get();
+    }
+
+    @Override
+    public long getExpired() {
+      return expired.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+      long count = rendered.get();
+      return count > 0 ? (double) hits.get() / count : 0;
+    }
+
+    @Override
+    public int getQueued() {
+      return executor != null ? executor.getQueue().size() : 0;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+/**
+ * Metrics of the {@link TilePrefetcher}, registered as <code>de.digitalcollections.iiif.image:type=TilePrefetcher</code>.
+ */
+public interface TilePrefetcherMXBean {
+
+  boolean isEnabled();
+
+  /**
+   * @return number of tiles that were queued for prefetching
+   */
+  long getScheduled();
+
+  /**
+   * @return number of prefetched tiles that were rendered into the derivative cache
+   */
+  long getRendered();
+
+  /**
+   * @return number of queued tiles that were cached already when their turn came
+   */
+  long getSkipped();
+
+  /**
+   * @return number of queued tiles that were dropped because of foreground load or a full queue
+   */
+  long getCancelled();
+
+  long getFailed();
+
+  /**
+   * @return number of requests for a tile that had been prefetched
+   */
+  long getHits();
+
+  /**
+   * @return number of prefetched tiles that were not requested before they expired
+   */
+  long getExpired();
+
+  /**
+   * @return hits per rendered tile, i.e. how much of the prefetching pays off
+   */
+  double getHitRatio();
+
+  int getQueued();
+}
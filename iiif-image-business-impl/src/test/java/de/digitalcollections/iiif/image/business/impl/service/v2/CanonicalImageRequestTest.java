@@ -0,0 +1,63 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class CanonicalImageRequestTest {
+
+  private static ImageInfoImpl createInfo(int width, int height) {
+    ImageInfoImpl info = new ImageInfoImpl();
+    info.setWidth(width);
+    info.setHeight(height);
+    info.setFormat(ImageFormat.JPEG);
+    info.setLastModified(1000);
+    return info;
+  }
+
+  @Test
+  public void testResolvedRegionIsRoundedOnce() throws Exception {
+    ImageInfoImpl info = createInfo(1000, 800);
+    RegionParameters region = new RegionParametersImpl(true, 10.4f, 20.6f, 100.2f, 50.5f);
+    CanonicalImageRequest.resolveRegion(region, info);
+    assertThat(region.getHorizontalOffset()).isEqualTo(11f);
+    assertThat(region.getVerticalOffset()).isEqualTo(21f);
+    assertThat(region.getWidth()).isEqualTo(101f);
+    assertThat(region.getHeight()).isEqualTo(51f);
+    assertThat(CanonicalImageRequest.getKey("id", info, region, null, null, null, ImageFormat.JPEG))
+        .isEqualTo("id@1000/11,21,101,51/full/0/default.jpg");
+  }
+
+  @Test
+  public void testRoundedRegionIsClipped() throws Exception {
+    ImageInfoImpl info = createInfo(1000, 800);
+    RegionParameters region = new RegionParametersImpl(true, 899.5f, 0.2f, 100.8f, 799.9f);
+    CanonicalImageRequest.resolveRegion(region, info);
+    assertThat(region.getWidth()).isEqualTo(100f);
+    assertThat(region.getHeight()).isEqualTo(799f);
+  }
+
+  @Test
+  public void testKeyDependsOnSourceVersion() {
+    ImageInfoImpl info = createInfo(1000, 800);
+    String key = CanonicalImageRequest.getKey("id", info, null, null, null, null, ImageFormat.JPEG);
+    info.setLastModified(2000);
+    assertThat(CanonicalImageRequest.getKey("id", info, null, null, null, null, ImageFormat.JPEG)).isNotEqualTo(key);
+  }
+
+  @Test
+  public void testColorIsDefaultForJpeg() {
+    ImageInfoImpl info = createInfo(1000, 800);
+    assertThat(CanonicalImageRequest.getKey("id", info, null, null, null, ImageBitDepth.COLOR, ImageFormat.JPEG))
+        .isEqualTo("id@1000/full/full/0/default.jpg");
+    assertThat(CanonicalImageRequest.getKey("id", info, null, null, null, ImageBitDepth.COLOR, ImageFormat.PNG))
+        .isEqualTo("id@1000/full/full/0/color.png");
+    info.setFormat(ImageFormat.PNG);
+    assertThat(CanonicalImageRequest.getKey("id", info, null, null, null, ImageBitDepth.COLOR, ImageFormat.JPEG))
+        .isEqualTo("id@1000/full/full/0/color.jpg");
+  }
+}
@@ -0,0 +1,96 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DerivativeCacheTest {
+
+  private static final int HEAP_THRESHOLD = 1024;
+
+  private CacheManager cacheManager;
+  private DerivativeCache derivativeCache;
+
+  @Before
+  public void setUp() {
+    cacheManager = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider").getCacheManager();
+    for (String name : new String[]{DerivativeCache.HEAP_CACHE, DerivativeCache.LARGE_CACHE}) {
+      cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(
+          CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                                                 ResourcePoolsBuilder.heap(2))));
+    }
+    derivativeCache = new DerivativeCache();
+    ReflectionTestUtils.setField(derivativeCache, "cacheManager", cacheManager);
+    ReflectionTestUtils.setField(derivativeCache, "heapThreshold", HEAP_THRESHOLD);
+    ReflectionTestUtils.setField(derivativeCache, "maxPixels", 1024L * 1024L);
+    derivativeCache.afterPropertiesSet();
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.close();
+  }
+
+  private static EncodedImage createImage(int length) {
+    return new EncodedImage(new byte[length], ImageFormat.JPEG, 1, 1);
+  }
+
+  @Test
+  public void testMiss() {
+    assertThat(derivativeCache.get("a@1/full/full/0/default.jpg")).isNull();
+    assertThat(derivativeCache.contains("a@1/full/full/0/default.jpg")).isFalse();
+    assertThat(derivativeCache.getHeapCounters().getMisses()).isEqualTo(1);
+    assertThat(derivativeCache.getLargeCounters().getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void testHitInTierMatchingTheSize() {
+    EncodedImage small = createImage(HEAP_THRESHOLD);
+    EncodedImage large = createImage(HEAP_THRESHOLD + 1);
+    derivativeCache.put("a@1/0,0,256,256/256,/0/default.jpg", small);
+    derivativeCache.put("a@1/full/full/0/default.jpg", large);
+
+    assertThat(derivativeCache.get("a@1/0,0,256,256/256,/0/default.jpg")).isSameAs(small);
+    assertThat(derivativeCache.getHeapCounters().getHits()).isEqualTo(1);
+    assertThat(derivativeCache.get("a@1/full/full/0/default.jpg")).isSameAs(large);
+    assertThat(derivativeCache.getLargeCounters().getHits()).isEqualTo(1);
+    assertThat(derivativeCache.getHeapCounters().getBytesPut()).isEqualTo(HEAP_THRESHOLD);
+    assertThat(derivativeCache.getLargeCounters().getBytesPut()).isEqualTo(HEAP_THRESHOLD + 1);
+  }
+
+  @Test
+  public void testMissForOtherSourceVersion() {
+    derivativeCache.put("a@1/full/full/0/default.jpg", createImage(16));
+    assertThat(derivativeCache.get("a@2/full/full/0/default.jpg")).isNull();
+  }
+
+  @Test
+  public void testEviction() {
+    for (int i = 0; i < 3; i++) {
+      derivativeCache.put("a@1/" + i + ",0,1,1/full/0/default.jpg", createImage(16));
+    }
+    int cached = 0;
+    for (int i = 0; i < 3; i++) {
+      if (derivativeCache.contains("a@1/" + i + ",0,1,1/full/0/default.jpg")) {
+        cached++;
+      }
+    }
+    assertThat(cached).isEqualTo(2);
+    assertThat(derivativeCache.getHeapCounters().getPuts()).isEqualTo(3);
+  }
+
+  @Test
+  public void testTooLargeToCache() {
+    assertThat(derivativeCache.isCacheable(1024, 1024)).isTrue();
+    assertThat(derivativeCache.isCacheable(1025, 1024)).isFalse();
+  }
+}
@@ -0,0 +1,41 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class IiifParameterParserServiceImplTest {
+
+  private final IiifParameterParserServiceImpl parserService = new IiifParameterParserServiceImpl();
+
+  private static ImageInfoImpl createInfo(int width, int height) {
+    ImageInfoImpl info = new ImageInfoImpl();
+    info.setWidth(width);
+    info.setHeight(height);
+    info.setFormat(ImageFormat.JPEG);
+    return info;
+  }
+
+  @Test
+  public void testCanonicalForm() throws Exception {
+    ImageInfoImpl info = createInfo(1000, 900);
+    assertThat(parserService.getCanonicalForm(info, "0,0,1000,900", "1000,", "360", "native", "jpeg"))
+        .isEqualTo("full/full/0/default.jpg");
+    assertThat(parserService.getCanonicalForm(info, "0,0,500,500", "!250,300", "!90", "gray", "jpg"))
+        .isEqualTo("0,0,500,500/250,/!90/gray.jpg");
+  }
+
+  @Test
+  public void testCanonicalFormOfFractionalPercentRegion() throws Exception {
+    ImageInfoImpl info = createInfo(1000, 900);
+    // y is 299.7 pixels, which is rendered from pixel 300 on
+    assertThat(parserService.getCanonicalForm(info, "pct:12.5,33.3,25,50", "full", "0", "default", "jpg"))
+        .isEqualTo("125,300,250,450/full/0/default.jpg");
+    assertThat(parserService.getCanonicalForm(info, "pct:12.5,33.3,25,50", "125,", "0", "default", "jpg"))
+        .isEqualTo("125,300,250,450/125,/0/default.jpg");
+    // x is half a pixel, the width is clipped at the right border of the image
+    assertThat(parserService.getCanonicalForm(info, "pct:0.05,0,99.99,100", "full", "0", "default", "jpg"))
+        .isEqualTo("1,0,999,900/full/0/default.jpg");
+  }
+}
@@ -0,0 +1,128 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException;
+import de.digitalcollections.iiif.image.model.api.v2.Image;
+import de.digitalcollections.iiif.image.model.api.v2.TransformationException;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import org.junit.After;
+import org.junit.Test;
+
+public class ImageRequestCoalescerTest {
+
+  private static final int WAITERS = 4;
+
+  private final ImageRequestCoalescer coalescer = new ImageRequestCoalescer();
+  private final ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static Image createImage() {
+    return new EncodedImage(new byte[]{1, 2, 3}, ImageFormat.JPEG, 1, 1);
+  }
+
+  /**
+   * Start a leader that blocks until the latch is released and wait until all followers have joined it.
+   */
+  private List<Future<Image>> startRequests(String key, CountDownLatch release, AtomicInteger calls,
+                                            ImageRequestCoalescer.ImageProcessor processor) throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    List<Future<Image>> results = new ArrayList<>();
+    results.add(executor.submit(() -> coalescer.process(key, () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new TransformationException(e);
+      }
+      return processor.process();
+    })));
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < WAITERS; i++) {
+      results.add(executor.submit(() -> coalescer.process(key, () -> {
+        calls.incrementAndGet();
+        return createImage();
+      })));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (coalescer.getCoalescedCount() < WAITERS && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(coalescer.getCoalescedCount()).isEqualTo(WAITERS);
+    return results;
+  }
+
+  @Test
+  public void testIdenticalRequestsAreProcessedOnce() throws Exception {
+    Image image = createImage();
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    List<Future<Image>> results = startRequests("a/full/full/0/default.jpg", release, calls, () -> image);
+    release.countDown();
+    for (Future<Image> result : results) {
+      assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(image);
+    }
+    assertThat(calls.get()).isEqualTo(1);
+    assertThat(coalescer.getProcessedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testLeaderFailureIsPropagatedToWaiters() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger calls = new AtomicInteger();
+    List<Future<Image>> results = startRequests("b/full/full/0/default.jpg", release, calls, () -> {
+      throw new ResourceNotFoundException();
+    });
+    release.countDown();
+    for (Future<Image> result : results) {
+      try {
+        result.get(5, TimeUnit.SECONDS);
+        fail("Expected the failure of the leader");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause()).isInstanceOf(ResourceNotFoundException.class);
+      }
+    }
+    assertThat(calls.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeyIsRemovedAfterCompletion() throws Exception {
+    String key = "c/full/full/0/default.jpg";
+    AtomicInteger calls = new AtomicInteger();
+    coalescer.process(key, () -> {
+      calls.incrementAndGet();
+      return createImage();
+    });
+    assertThat(coalescer.getInFlightCount()).isEqualTo(0);
+    try {
+      coalescer.process(key, () -> {
+        calls.incrementAndGet();
+        throw new ResourceNotFoundException();
+      });
+      fail("Expected the failure of the processor");
+    } catch (ResourceNotFoundException e) {
+      assertThat(coalescer.getInFlightCount()).isEqualTo(0);
+    }
+    coalescer.process(key, () -> {
+      calls.incrementAndGet();
+      return createImage();
+    });
+    assertThat(calls.get()).isEqualTo(3);
+    assertThat(coalescer.getCoalescedCount()).isEqualTo(0);
+  }
+}
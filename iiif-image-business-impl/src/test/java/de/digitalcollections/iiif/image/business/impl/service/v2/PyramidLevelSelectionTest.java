@@ -0,0 +1,64 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.Test;
+
+public class PyramidLevelSelectionTest {
+
+  private static ResizeParametersImpl size(int width, int height) {
+    ResizeParametersImpl size = new ResizeParametersImpl();
+    size.setWidth(width);
+    size.setHeight(height);
+    return size;
+  }
+
+  @Test
+  public void testFullResolutionWithoutResize() {
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, null)).isEqualTo(0);
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, size(-1, -1))).isEqualTo(0);
+  }
+
+  @Test
+  public void testFullResolutionWithoutPyramid() {
+    assertThat(ImageServiceImpl.selectPyramidLevel(0, 4000, 3000, size(250, 188))).isEqualTo(0);
+  }
+
+  @Test
+  public void testSmallestCoveringLevel() {
+    // 4000x3000 halves to 2000x1500, 1000x750, 500x375, 250x187
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, size(1000, 750))).isEqualTo(2);
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, size(999, 700))).isEqualTo(2);
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, size(1001, 750))).isEqualTo(1);
+  }
+
+  @Test
+  public void testLevelLimitedByBothDimensions() {
+    // the width would allow level 3, the height only level 1
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 4000, 3000, size(400, 1200))).isEqualTo(1);
+  }
+
+  @Test
+  public void testLevelLimitedByAvailableLevels() {
+    assertThat(ImageServiceImpl.selectPyramidLevel(2, 4000, 3000, size(100, 75))).isEqualTo(2);
+  }
+
+  @Test
+  public void testUpscaleUsesFullResolution() {
+    assertThat(ImageServiceImpl.selectPyramidLevel(4, 400, 300, size(800, 600))).isEqualTo(0);
+  }
+
+  @Test
+  public void testScaledRegionEnclosesOriginal() {
+    RegionParameters region = ImageServiceImpl.scaleRegion(new RegionParametersImpl(true, 101, 203, 250, 97), 2);
+    // 101..351 x 203..300 becomes 25..88 x 50..75 at a quarter of the resolution
+    assertThat(region.getHorizontalOffset()).isEqualTo(25f);
+    assertThat(region.getVerticalOffset()).isEqualTo(50f);
+    assertThat(region.getWidth()).isEqualTo(63f);
+    assertThat(region.getHeight()).isEqualTo(25f);
+    assertThat(region.isAbsolute()).isTrue();
+    assertThat(ImageServiceImpl.scaleRegion(null, 2)).isNull();
+  }
+}
@@ -0,0 +1,234 @@
+package de.digitalcollections.iiif.image.business.impl.service.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.RegionParametersImpl;
+import de.digitalcollections.iiif.image.model.impl.v2.ResizeParametersImpl;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.management.JMX;
+import javax.management.ObjectName;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import static org.assertj.core.api.Assertions.assertThat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TilePrefetcherTest {
+
+  private CacheManager cacheManager;
+  private DerivativeCache derivativeCache;
+  private TilePrefetcher prefetcher;
+  private TilePrefetcherMXBean metrics;
+  private final ImageInfoImpl info = new ImageInfoImpl();
+  private final List<String> rendered = new CopyOnWriteArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    cacheManager = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider").getCacheManager();
+    for (String name : new String[]{DerivativeCache.HEAP_CACHE, DerivativeCache.LARGE_CACHE}) {
+      cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(
+          CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                                                 ResourcePoolsBuilder.heap(100))));
+    }
+    derivativeCache = new DerivativeCache();
+    ReflectionTestUtils.setField(derivativeCache, "cacheManager", cacheManager);
+    ReflectionTestUtils.setField(derivativeCache, "heapThreshold", 1024);
+    ReflectionTestUtils.setField(derivativeCache, "maxPixels", 1024L * 1024L);
+    derivativeCache.afterPropertiesSet();
+
+    info.setWidth(1000);
+    info.setHeight(800);
+    info.setFormat(ImageFormat.JPEG);
+    info.setLastModified(1000);
+  }
+
+  @After
+  public void tearDown() {
+    if (prefetcher != null) {
+      prefetcher.destroy();
+    }
+    cacheManager.close();
+  }
+
+  private void startPrefetcher(int budget, int expirySeconds) throws Exception {
+    prefetcher = new TilePrefetcher();
+    ReflectionTestUtils.setField(prefetcher, "derivativeCache", derivativeCache);
+    ReflectionTestUtils.setField(prefetcher, "requestCoalescer", new ImageRequestCoalescer());
+    ReflectionTestUtils.setField(prefetcher, "enabled", true);
+    ReflectionTestUtils.setField(prefetcher, "threads", 1);
+    ReflectionTestUtils.setField(prefetcher, "queueSize", 64);
+    ReflectionTestUtils.setField(prefetcher, "budget", budget);
+    ReflectionTestUtils.setField(prefetcher, "maxForegroundLoad", 4);
+    ReflectionTestUtils.setField(prefetcher, "maxTileSize", 1024);
+    ReflectionTestUtils.setField(prefetcher, "expirySeconds", expirySeconds);
+    ReflectionTestUtils.setField(prefetcher, "maxIdentifiers", 10);
+    prefetcher.afterPropertiesSet();
+    metrics = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName(TilePrefetcher.JMX_NAME),
+                                 TilePrefetcherMXBean.class);
+  }
+
+  /**
+   * Serve the tile "x,y,width,height/targetWidth," and render its neighbours into the derivative cache.
+   */
+  private void serve(int x, int y, int width, int height, int targetWidth,
+                     TilePrefetcher.TileRenderer renderer) throws Exception {
+    ResizeParametersImpl requestedSize = new ResizeParametersImpl();
+    requestedSize.setWidth(targetWidth);
+    prefetcher.tileServed("id", info, new RegionParametersImpl(true, x, y, width, height),
+                          new ResizeParametersImpl(requestedSize, width, height), null, null, ImageFormat.JPEG,
+                          renderer);
+  }
+
+  private void serve(int x, int y, int width, int height, int targetWidth) throws Exception {
+    serve(x, y, width, height, targetWidth, this::render);
+  }
+
+  private void render(String key, RegionParameters regionParameters, ResizeParameters sizeParameters) {
+    rendered.add(key);
+    derivativeCache.put(key, new EncodedImage(new byte[16], ImageFormat.JPEG, sizeParameters.getWidth(),
+                                              sizeParameters.getHeight()));
+  }
+
+  private void awaitPrefetches() throws InterruptedException {
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(prefetcher, "executor");
+    long timeout = System.currentTimeMillis() + 10000;
+    while (executor.getCompletedTaskCount() < executor.getTaskCount() && System.currentTimeMillis() < timeout) {
+      Thread.sleep(5);
+    }
+    assertThat(executor.getCompletedTaskCount()).isEqualTo(executor.getTaskCount());
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    prefetcher = new TilePrefetcher();
+    prefetcher.afterPropertiesSet();
+    assertThat(prefetcher.isEnabled()).isFalse();
+    prefetcher.tileRequested("id", "id@1000/0,0,256,256/full/0/default.jpg");
+  }
+
+  @Test
+  public void testNeighboursOfTopLeftTile() throws Exception {
+    startPrefetcher(16, 300);
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(rendered).containsExactly("id@1000/512,0,488,512/244,/0/default.jpg",
+                                         "id@1000/0,512,512,288/256,/0/default.jpg",
+                                         "id@1000/0,0,256,256/full/0/default.jpg",
+                                         "id@1000/256,0,256,256/full/0/default.jpg",
+                                         "id@1000/0,256,256,256/full/0/default.jpg",
+                                         "id@1000/256,256,256,256/full/0/default.jpg");
+    assertThat(metrics.getScheduled()).isEqualTo(6);
+    assertThat(metrics.getRendered()).isEqualTo(6);
+  }
+
+  @Test
+  public void testNeighboursOfRightEdgeTile() throws Exception {
+    startPrefetcher(16, 300);
+    // the clipped tile has the step of its height
+    serve(768, 256, 232, 256, 232);
+    awaitPrefetches();
+    assertThat(rendered).containsExactly("id@1000/512,256,256,256/full/0/default.jpg",
+                                         "id@1000/768,0,232,256/full/0/default.jpg",
+                                         "id@1000/768,512,232,256/full/0/default.jpg");
+  }
+
+  @Test
+  public void testNeighboursOfBottomEdgeTile() throws Exception {
+    startPrefetcher(16, 300);
+    serve(256, 768, 256, 32, 256);
+    awaitPrefetches();
+    assertThat(rendered).containsExactly("id@1000/0,768,256,32/full/0/default.jpg",
+                                         "id@1000/512,768,256,32/full/0/default.jpg",
+                                         "id@1000/256,512,256,256/full/0/default.jpg");
+  }
+
+  @Test
+  public void testNoNeighboursOfBottomRightOrUnalignedTile() throws Exception {
+    startPrefetcher(16, 300);
+    serve(768, 768, 232, 32, 232);
+    serve(100, 0, 256, 256, 256);
+    serve(0, 0, 256, 256, 100);
+    awaitPrefetches();
+    assertThat(rendered).isEmpty();
+    assertThat(metrics.getScheduled()).isZero();
+  }
+
+  @Test
+  public void testBudgetIsFreedByRequests() throws Exception {
+    startPrefetcher(2, 300);
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(rendered).containsExactly("id@1000/512,0,488,512/244,/0/default.jpg",
+                                         "id@1000/0,512,512,288/256,/0/default.jpg");
+
+    // the budget is used up until a prefetched tile is requested
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(rendered).hasSize(2);
+
+    prefetcher.tileRequested("id", "id@1000/512,0,488,512/244,/0/default.jpg");
+    assertThat(metrics.getHits()).isEqualTo(1);
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(rendered).hasSize(3).endsWith("id@1000/0,0,256,256/full/0/default.jpg");
+  }
+
+  @Test
+  public void testBudgetIsFreedByExpiry() throws Exception {
+    startPrefetcher(2, 0);
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(rendered).hasSize(2);
+
+    Thread.sleep(10);
+    serve(0, 0, 512, 512, 256);
+    awaitPrefetches();
+    assertThat(metrics.getExpired()).isEqualTo(2);
+    // the expired tiles are still cached, the next ones are prefetched
+    assertThat(rendered).containsExactly("id@1000/512,0,488,512/244,/0/default.jpg",
+                                         "id@1000/0,512,512,288/256,/0/default.jpg",
+                                         "id@1000/0,0,256,256/full/0/default.jpg",
+                                         "id@1000/256,0,256,256/full/0/default.jpg");
+    // the request for an expired tile is not counted as a hit
+    prefetcher.tileRequested("id", "id@1000/512,0,488,512/244,/0/default.jpg");
+    assertThat(metrics.getHits()).isZero();
+  }
+
+  @Test
+  public void testQueuedTileRequestedMeanwhileIsSkipped() throws Exception {
+    startPrefetcher(16, 300);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    serve(0, 0, 512, 512, 256, (key, regionParameters, sizeParameters) -> {
+      if (rendered.isEmpty()) {
+        started.countDown();
+        release.await();
+      }
+      render(key, regionParameters, sizeParameters);
+    });
+    assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    // rendered by the request itself, not a hit of the prefetcher
+    prefetcher.tileRequested("id", "id@1000/0,512,512,288/256,/0/default.jpg");
+    release.countDown();
+    awaitPrefetches();
+
+    assertThat(rendered).hasSize(5).doesNotContain("id@1000/0,512,512,288/256,/0/default.jpg");
+    assertThat(metrics.getSkipped()).isEqualTo(1);
+    assertThat(metrics.getHits()).isZero();
+    prefetcher.tileRequested("id", "id@1000/512,0,488,512/244,/0/default.jpg");
+    assertThat(metrics.getHits()).isEqualTo(1);
+  }
+}
@@ -1,15 +1,21 @@
 package de.digitalcollections.iiif.image.config;
 
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.AdminAccessInterceptor;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.ByteArrayHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
 /**
@@ -21,6 +27,62 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 })
 @EnableWebMvc
 public class SpringConfigFrontendImage extends WebMvcConfigurerAdapter {
+
+  @Value("${iiif.image.processing.threads:0}")
+  private int processingThreads;
+
+  @Value("${iiif.image.processing.queueCapacity:64}")
+  private int processingQueueCapacity;
+
+  @Value("${iiif.image.streaming.threads:32}")
+  private int streamingThreads;
+
+  @Value("${iiif.image.async.timeout:60000}")
+  private long asyncTimeout;
+
+  @Value("${iiif.image.admin.token:}")
+  private String adminToken;
+
+  /**
+   * Executor for decoding, transforming and encoding images. Pool and queue are bounded, requests that do not fit into
+   * the queue are rejected instead of piling up.
+   *
+   * @return executor with one thread per processor unless configured otherwise
+   */
+  @Bean(name = "imageProcessingExecutor")
+  public ThreadPoolTaskExecutor imageProcessingExecutor() {
+    int threads = processingThreads > 0 ? processingThreads : Runtime.getRuntime().availableProcessors();
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(threads);
+    executor.setMaxPoolSize(threads);
+    executor.setQueueCapacity(processingQueueCapacity);
+    executor.setThreadNamePrefix("iiif-image-processing-");
+    return executor;
+  }
+
+  /**
+   * @return executor for writing processed images to the clients
+   */
+  @Bean(name = "imageStreamingExecutor")
+  public ThreadPoolTaskExecutor imageStreamingExecutor() {
+    ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(streamingThreads);
+    executor.setMaxPoolSize(streamingThreads);
+    executor.setThreadNamePrefix("iiif-image-streaming-");
+    return executor;
+  }
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.setDefaultTimeout(asyncTimeout);
+    configurer.setTaskExecutor(imageStreamingExecutor());
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new AdminAccessInterceptor(adminToken)).addPathPatterns("/admin/**");
+  }
+
   @Override
   public void configureMessageConverters(List<HttpMessageConverter<?>> converters) {
     // support for @ResponseBody of type String
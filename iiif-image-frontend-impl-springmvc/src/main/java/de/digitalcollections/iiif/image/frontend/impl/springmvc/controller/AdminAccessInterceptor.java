@@ -0,0 +1,59 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Restricts the admin endpoints (<code>/admin/**</code>).
+ *
+ * If a token is configured (<code>iiif.image.admin.token</code>), requests must send it as
+ * <code>Authorization: Bearer {token}</code>. Otherwise only requests from the loopback interface are allowed, which
+ * includes all requests forwarded by a reverse proxy on the same host, so the proxy has to restrict them as well.
+ */
+public class AdminAccessInterceptor extends HandlerInterceptorAdapter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdminAccessInterceptor.class);
+
+  private final byte[] authorization;
+
+  /**
+   * @param token token the requests have to send, <code>null</code> or empty to only allow local requests
+   */
+  public AdminAccessInterceptor(String token) {
+    this.authorization = token != null && !token.trim().isEmpty()
+        ? ("Bearer " + token.trim()).getBytes(StandardCharsets.UTF_8) : null;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+    if (authorization != null ? isAuthorized(request) : isLocal(request)) {
+      return true;
+    }
+    LOGGER.warn("Denied access to {} from {}", request.getRequestURI(), request.getRemoteAddr());
+    response.sendError(HttpServletResponse.SC_FORBIDDEN);
+    return false;
+  }
+
+  private boolean isAuthorized(HttpServletRequest request) {
+    String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+    // constant time comparison, so the token can't be guessed from response times
+    return header != null && MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static boolean isLocal(HttpServletRequest request) {
+    try {
+      // the remote address is an IP literal, it is not looked up
+      return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import de.digitalcollections.iiif.image.backend.impl.cache.CacheMetrics;
+import de.digitalcollections.iiif.image.backend.impl.cache.CacheStatistics;
+import de.digitalcollections.iiif.image.backend.impl.cache.LoadTimeHistogram;
+import de.digitalcollections.iiif.image.backend.impl.cache.TierStatistics;
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.ResourceNotFoundException;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * Admin endpoint with the metrics of all caches, per cache and per tier. The same metrics are available through JMX.
+ *
+ * The endpoint exposes no cached data or keys, only counters and sizes.
+ */
+@Controller
+@RequestMapping("/admin/caches")
+public class CacheMetricsController {
+
+  @Autowired
+  private CacheMetrics cacheMetrics;
+
+  @SuppressWarnings("unchecked")
+  @RequestMapping(method = RequestMethod.GET)
+  public ResponseEntity<String> getCaches() {
+    JSONArray caches = new JSONArray();
+    for (String cacheName : cacheMetrics.getCacheNames()) {
+      caches.add(toJson(cacheMetrics.getStatistics(cacheName)));
+    }
+    JSONObject result = new JSONObject();
+    result.put("caches", caches);
+    return createResponse(result);
+  }
+
+  @RequestMapping(value = "{cacheName}", method = RequestMethod.GET)
+  public ResponseEntity<String> getCache(@PathVariable String cacheName) {
+    CacheStatistics statistics = cacheMetrics.getStatistics(cacheName);
+    if (statistics == null) {
+      throw new ResourceNotFoundException();
+    }
+    return createResponse(toJson(statistics));
+  }
+
+  private ResponseEntity<String> createResponse(JSONObject json) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set("Content-Type", "application/json");
+    headers.setCacheControl("no-cache");
+    return new ResponseEntity<>(json.toJSONString(), headers, HttpStatus.OK);
+  }
+
+  @SuppressWarnings("unchecked")
+  private JSONObject toJson(CacheStatistics statistics) {
+    JSONObject cache = new JSONObject();
+    cache.put("name", statistics.getName());
+    cache.put("hits", statistics.getHits());
+    cache.put("misses", statistics.getMisses());
+    cache.put("hitRatio", statistics.getHitRatio());
+    cache.put("puts", statistics.getPuts());
+    cache.put("evictions", statistics.getEvictions());
+    cache.put("entries", statistics.getEntries());
+
+    JSONArray tiers = new JSONArray();
+    for (TierStatistics tierStatistics : statistics.getTiers()) {
+      JSONObject tier = new JSONObject();
+      tier.put("name", tierStatistics.getName());
+      tier.put("hits", tierStatistics.getHits());
+      tier.put("misses", tierStatistics.getMisses());
+      tier.put("hitRatio", tierStatistics.getHitRatio());
+      tier.put("evictions", tierStatistics.getEvictions());
+      tier.put("entries", tierStatistics.getEntries());
+      if (tierStatistics.getBytes() >= 0) {
+        tier.put("bytes", tierStatistics.getBytes());
+      }
+      tiers.add(tier);
+    }
+    cache.put("tiers", tiers);
+
+    LoadTimeHistogram loadTimes = statistics.getLoadTimes();
+    if (loadTimes != null) {
+      JSONObject loads = new JSONObject();
+      loads.put("count", loadTimes.getCount());
+      loads.put("meanMillis", loadTimes.getMeanMillis());
+      // buckets by their upper bound in milliseconds, the last one is unbounded
+      JSONArray buckets = new JSONArray();
+      long[] bounds = loadTimes.getBucketBounds();
+      long[] counts = loadTimes.getCounts();
+      for (int i = 0; i < bounds.length; i++) {
+        JSONObject bucket = new JSONObject();
+        bucket.put("lessThanMillis", bounds[i] != Long.MAX_VALUE ? bounds[i] : null);
+        bucket.put("count", counts[i]);
+        buckets.add(bucket);
+      }
+      loads.put("histogram", buckets);
+      cache.put("loadTimes", loads);
+    }
+    return cache;
+  }
+}
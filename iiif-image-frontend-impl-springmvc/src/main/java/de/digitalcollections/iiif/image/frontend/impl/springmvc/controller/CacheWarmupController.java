@@ -0,0 +1,138 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import de.digitalcollections.iiif.image.business.api.service.v2.CacheWarmupJob;
+import de.digitalcollections.iiif.image.business.api.service.v2.CacheWarmupService;
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.InvalidParametersException;
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.ResourceNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Admin endpoint to warm up the caches for a list of identifiers or for all images of a IIIF manifest.
+ *
+ * <code>POST /admin/warmup</code> takes a JSON array of identifiers, a manifest or plain text with one identifier per
+ * line and starts a job in the background. Its progress is available at <code>/admin/warmup/{id}</code>, a
+ * <code>DELETE</code> on that URL cancels it.
+ */
+@Controller
+@RequestMapping("/admin/warmup")
+public class CacheWarmupController {
+
+  @Autowired
+  private CacheWarmupService cacheWarmupService;
+
+  @RequestMapping(method = RequestMethod.POST, consumes = "application/json")
+  public ResponseEntity<String> warmUpJson(@RequestBody String body,
+                                           @RequestParam(value = "concurrency", defaultValue = "0") int concurrency,
+                                           HttpServletRequest request) throws InvalidParametersException {
+    Object json;
+    try {
+      json = new JSONParser().parse(body);
+    } catch (ParseException e) {
+      throw new InvalidParametersException("Invalid JSON: " + e);
+    }
+    CacheWarmupJob job;
+    if (json instanceof JSONArray) {
+      List<String> identifiers = new ArrayList<>();
+      for (Object identifier : (JSONArray) json) {
+        identifiers.add(String.valueOf(identifier));
+      }
+      job = cacheWarmupService.warmUp(identifiers, concurrency);
+    } else {
+      try {
+        job = cacheWarmupService.warmUpManifest(body, concurrency);
+      } catch (de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException e) {
+        throw new InvalidParametersException(e.getMessage());
+      }
+    }
+    return createJobResponse(job, request);
+  }
+
+  @RequestMapping(method = RequestMethod.POST, consumes = "text/plain")
+  public ResponseEntity<String> warmUpText(@RequestBody String body,
+                                           @RequestParam(value = "concurrency", defaultValue = "0") int concurrency,
+                                           HttpServletRequest request) {
+    List<String> identifiers = new ArrayList<>();
+    for (String line : body.split("\\r?\\n")) {
+      if (!line.trim().isEmpty()) {
+        identifiers.add(line.trim());
+      }
+    }
+    return createJobResponse(cacheWarmupService.warmUp(identifiers, concurrency), request);
+  }
+
+  @SuppressWarnings("unchecked")
+  @RequestMapping(method = RequestMethod.GET)
+  public ResponseEntity<String> getJobs() {
+    JSONArray jobs = new JSONArray();
+    for (CacheWarmupJob job : cacheWarmupService.getJobs()) {
+      jobs.add(toJson(job));
+    }
+    JSONObject result = new JSONObject();
+    result.put("jobs", jobs);
+    return createResponse(result, new HttpHeaders(), HttpStatus.OK);
+  }
+
+  @RequestMapping(value = "{id}", method = RequestMethod.GET)
+  public ResponseEntity<String> getJob(@PathVariable String id) {
+    return createResponse(toJson(findJob(id)), new HttpHeaders(), HttpStatus.OK);
+  }
+
+  @RequestMapping(value = "{id}", method = RequestMethod.DELETE)
+  public ResponseEntity<String> cancelJob(@PathVariable String id) {
+    findJob(id);
+    cacheWarmupService.cancel(id);
+    return createResponse(toJson(findJob(id)), new HttpHeaders(), HttpStatus.OK);
+  }
+
+  private CacheWarmupJob findJob(String id) {
+    CacheWarmupJob job = cacheWarmupService.getJob(id);
+    if (job == null) {
+      throw new ResourceNotFoundException();
+    }
+    return job;
+  }
+
+  private ResponseEntity<String> createJobResponse(CacheWarmupJob job, HttpServletRequest request) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set("Location", request.getRequestURL().toString().replaceAll("/$", "") + "/" + job.getId());
+    return createResponse(toJson(job), headers, HttpStatus.ACCEPTED);
+  }
+
+  private ResponseEntity<String> createResponse(JSONObject json, HttpHeaders headers, HttpStatus status) {
+    headers.set("Content-Type", "application/json");
+    headers.setCacheControl("no-cache");
+    return new ResponseEntity<>(json.toJSONString(), headers, status);
+  }
+
+  @SuppressWarnings("unchecked")
+  private JSONObject toJson(CacheWarmupJob job) {
+    JSONObject json = new JSONObject();
+    json.put("id", job.getId());
+    json.put("state", job.getState().name());
+    json.put("total", job.getTotal());
+    json.put("completed", job.getCompleted());
+    json.put("failed", job.getFailed());
+    json.put("concurrency", job.getConcurrency());
+    json.put("started", job.getStarted());
+    if (job.getFinished() >= 0) {
+      json.put("finished", job.getFinished());
+    }
+    return json;
+  }
+}
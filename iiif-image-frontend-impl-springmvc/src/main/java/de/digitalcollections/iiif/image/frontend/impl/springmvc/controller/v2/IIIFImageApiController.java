@@ -7,6 +7,7 @@ import de.digitalcollections.iiif.image.business.api.service.v2.ImageService;
 import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.InvalidParametersException;
 import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.ResolvingException;
 import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.ResourceNotFoundException;
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.ServiceUnavailableException;
 import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.TransformationException;
 import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.UnsupportedFormatException;
 import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
@@ -16,28 +17,42 @@ import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
 import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
 import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
 import de.digitalcollections.iiif.image.model.api.v2.RotationParameters;
+import de.digitalcollections.iiif.image.model.impl.v2.EncodedImage;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URISyntaxException;
 import java.net.URLDecoder;
-import java.util.Collections;
-import java.util.stream.IntStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @Controller(value = "IIIFImageApiController-v2")
 @RequestMapping("/image/v2/")
@@ -52,8 +67,28 @@ public class IIIFImageApiController {
   @Autowired
   private ImageService imageService;
 
-  private final String IIIF_COMPLIANCE = "http://iiif.io/api/image/2/level2.json";
-  private final String IIIF_CONTEXT = "http://iiif.io/api/image/2/context.json";
+  @Autowired
+  private InfoDocumentCache infoDocumentCache;
+
+  @Autowired
+  @Qualifier("imageProcessingExecutor")
+  private TaskExecutor imageProcessingExecutor;
+
+  @Value("${iiif.image.processing.retryAfter:5}")
+  private int retryAfterSeconds;
+
+  /**
+   * How clients are pointed to the canonical URI of an image request: "none", "link" (<code>Link</code> header with
+   * <code>rel="canonical"</code>) or "redirect" (301 for requests that are not canonical).
+   */
+  @Value("${iiif.image.canonical:link}")
+  private String canonicalMode;
+
+  @Value("${iiif.image.maxAge:86400}")
+  private long maxAgeSeconds;
+
+  @Value("${iiif.image.batch.maxTiles:64}")
+  private int maxBatchTiles;
 
   private String getBasePath(HttpServletRequest request, String identifier) {
     String requestURI = request.getRequestURI();
@@ -61,7 +96,23 @@ public class IIIFImageApiController {
       requestURI = "/" + identifier + "/"; // For unit-tests
     }
     String idEndpoint = requestURI.substring(0, requestURI.lastIndexOf('/'));
+    return getServerUrl(request) + idEndpoint;
+  }
 
+  /**
+   * @return the base URI of the image of an image request, i.e. the request URI without the image parameters
+   */
+  private String getImageBasePath(HttpServletRequest request) {
+    String requestURI = request.getRequestURI();
+    int end = requestURI.length();
+    // strip "/{region}/{size}/{rotation}/{quality}.{format}"
+    for (int i = 0; i < 4 && end > 0; i++) {
+      end = requestURI.lastIndexOf('/', end - 1);
+    }
+    return getServerUrl(request) + requestURI.substring(0, Math.max(end, 0));
+  }
+
+  private String getServerUrl(HttpServletRequest request) {
     String scheme = request.getHeader("X-Forwarded-Proto");
     if (scheme == null) {
       scheme = request.getScheme();
@@ -72,7 +123,7 @@ public class IIIFImageApiController {
       host = request.getHeader("Host");
     }
 
-    return String.format("%s://%s%s", scheme, host, idEndpoint);
+    return String.format("%s://%s", scheme, host);
   }
 
   /**
@@ -98,29 +149,21 @@ public class IIIFImageApiController {
    * white.
    * @param format The format of the returned image is expressed as an extension at the end of the URI.
    * @param request http request
-   * @return the transformed image
-   * @throws ResolvingException if identifier can not be resolved to an image
-   * @throws UnsupportedFormatException if target format is not supported
-   * @throws UnsupportedOperationException if operation is not supported
-   * @throws IOException if image can not be read
-   * @throws URISyntaxException if uri for image is erroneous
-   * @throws de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.InvalidParametersException if parameters
-   * can not be parsed
-   * @throws de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.TransformationException if image can not
-   * be transformed
+   * @return the transformed image, streamed to the client once it has been processed, with a link to the canonical URI
+   * of the request. Depending on <code>iiif.image.canonical</code>, requests that are not canonical are redirected to
+   * it instead. Conditional and HEAD requests are answered from the image information alone, without rendering the
+   * image. Processing errors are reported through the result: invalid parameters (400), unknown images (404),
+   * unsupported formats and failed transformations.
+   * @throws ServiceUnavailableException if the image processing queue is full (503 with <code>Retry-After</code>)
    */
   @CrossOrigin(allowedHeaders = {"*"}, origins = {"*"})
-  @RequestMapping(value = "{identifier}/{region}/{size}/{rotation}/{quality}.{format}")
-  public ResponseEntity<byte[]> getImageRepresentation(
+  @RequestMapping(value = "{identifier}/{region}/{size}/{rotation}/{quality}.{format}",
+          method = {RequestMethod.GET, RequestMethod.HEAD})
+  public DeferredResult<ResponseEntity<StreamingResponseBody>> getImageRepresentation(
           @PathVariable String identifier, @PathVariable String region,
           @PathVariable String size, @PathVariable String rotation,
           @PathVariable String quality, @PathVariable String format,
-          HttpServletRequest request) throws ResolvingException,
-          UnsupportedFormatException, UnsupportedOperationException, IOException,
-          URISyntaxException, InvalidParametersException,
-          de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.TransformationException {
-    HttpHeaders headers = new HttpHeaders();
-
+          HttpServletRequest request) {
     HttpLoggingUtilities.addRequestClientInfoToMDC(request);
     MDC.put("iiifFormat", format);
     MDC.put("iiifQuality", quality);
@@ -135,7 +178,78 @@ public class IIIFImageApiController {
     } else {
       path = request.getServletPath();
     }
+    String imageBasePath = getImageBasePath(request);
+    boolean headRequest = RequestMethod.HEAD.name().equals(request.getMethod());
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    long ifModifiedSince = getDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+
+    // The image is processed on the bounded image processing executor, the container thread is released right away
+    DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    try {
+      imageProcessingExecutor.execute(() -> {
+        if (mdc != null) {
+          MDC.setContextMap(mdc);
+        }
+        try {
+          ImageInfo info = getImageInfo(identifier, path);
+          String canonicalForm = getCanonicalForm(info, region, size, rotation, quality, format, path);
+          String canonicalUrl = imageBasePath + "/" + canonicalForm;
+          String requestedForm = String.format("%s/%s/%s/%s.%s", region, size, rotation, quality, format);
+          if ("redirect".equals(canonicalMode) && !canonicalForm.equals(requestedForm)) {
+            LOGGER.debug("Redirecting {} to canonical {}", path, canonicalForm);
+            HttpHeaders headers = new HttpHeaders();
+            headers.setCacheControl(getCacheControl());
+            headers.set(HttpHeaders.LOCATION, canonicalUrl);
+            result.setResult(new ResponseEntity<>(headers, HttpStatus.MOVED_PERMANENTLY));
+            return;
+          }
+
+          // Validators only depend on the source image and the canonical request, so no image data is needed
+          HttpHeaders headers = new HttpHeaders();
+          headers.setCacheControl(getCacheControl());
+          headers.setETag(getImageETag(identifier, info, canonicalForm));
+          if (info.getLastModified() >= 0) {
+            headers.setLastModified(info.getLastModified());
+          }
+          if ("link".equals(canonicalMode)) {
+            headers.set(HttpHeaders.LINK, "<" + canonicalUrl + ">; rel=\"canonical\"");
+          }
+          if (isNotModified(ifNoneMatch, ifModifiedSince, headers.getETag(), info.getLastModified())) {
+            LOGGER.debug("Image for {} has not been modified", path);
+            result.setResult(new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED));
+            return;
+          }
+          if (headRequest) {
+            headers.setContentType(MediaType.parseMediaType(ImageFormat.getByExtension(format).getMimeType()));
+            headers.set("Content-Disposition", getContentDisposition(path));
+            result.setResult(new ResponseEntity<>(headers, HttpStatus.OK));
+            return;
+          }
+
+          Image image = processImage(identifier, region, size, rotation, quality, format, path);
+          if (!result.setResult(createImageResponse(image, path, headers))) {
+            // Request has timed out in the meantime
+            image.close();
+          }
+        } catch (Exception e) {
+          result.setErrorResult(e);
+        } finally {
+          MDC.clear();
+        }
+      });
+    } catch (TaskRejectedException e) {
+      LOGGER.warn("Image processing queue is full, rejecting request for {}", path);
+      throw new ServiceUnavailableException(retryAfterSeconds);
+    } finally {
+      MDC.clear();
+    }
+    return result;
+  }
 
+  private Image processImage(String identifier, String region, String size, String rotation, String quality,
+          String format, String path) throws UnsupportedFormatException, UnsupportedOperationException,
+          InvalidParametersException, TransformationException {
     try {
       RegionParameters regionParameters = iiifParameterParserService.parseIiifRegion(region);
       ResizeParameters sizeParameters = iiifParameterParserService.parseIiifSize(size);
@@ -143,23 +257,8 @@ public class IIIFImageApiController {
       ImageBitDepth bitDepthParameter = iiifParameterParserService.parseIiifQuality(quality);
       ImageFormat formatParameter = iiifParameterParserService.parseIiifFormat(format);
 
-      Image image = imageService.processImage(identifier, regionParameters, sizeParameters,
+      return imageService.processImage(identifier, regionParameters, sizeParameters,
               rotationParameters, bitDepthParameter, formatParameter);
-
-      // header
-      final ImageFormat imageFormat = image.getFormat();
-      final String mimeType = imageFormat.getMimeType();
-      headers.setContentType(MediaType.parseMediaType(mimeType));
-
-      String filename = path.replaceFirst("/image/", "").replace('/', '_').replace(',', '_');
-      headers.set("Content-Disposition", "inline; filename=" + filename);
-      // content
-      byte[] data = image.toByteArray();
-
-      MDC.put("imageBackend", (image instanceof JpegTranImage) ? "turbojpeg" : "imageio");
-      LOGGER.info("Successfully served image for {}", path);
-      headers.set("X-IIIF-Image-Backend", image instanceof JpegTranImage ? "fast" : "slow");
-      return new ResponseEntity<>(data, headers, HttpStatus.OK);
     } catch (de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException ex) {
       LOGGER.info("Request contained invalid parameters in {}", path, ex);
       throw new InvalidParametersException(ex.getMessage());
@@ -172,9 +271,303 @@ public class IIIFImageApiController {
     } catch (de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException e) {
       LOGGER.info("Could not find image for {}", path);
       throw new ResourceNotFoundException();
+    }
+  }
+
+  /**
+   * Several tiles of one image in a single response, e.g. all tiles a viewer needs at one zoom level. Tiles of the same
+   * scale are cut from a single decoding of the source instead of decoding it once per tile.
+   *
+   * <code>GET /image/v2/{identifier}/tiles?tile=0,0,1024,1024/512,&amp;tile=1024,0,1024,1024/512,</code>, a form
+   * <code>POST</code> with the same parameters works as well.
+   *
+   * @param identifier unique identifier of image
+   * @param tiles "{region}/{size}" of each tile, as in an image request
+   * @param rotation rotation of all tiles
+   * @param quality quality of all tiles
+   * @param format format of all tiles
+   * @param request http request
+   * @return the tiles in the order of the request, as <code>multipart/mixed</code> with the image URI of each tile as
+   * its <code>Content-Location</code>. If <code>application/octet-stream</code> is accepted, the tiles are sent one
+   * after another instead, each preceded by its length as a 4 byte big-endian integer.
+   * @throws InvalidParametersException if a tile is malformed or there are more than
+   * <code>iiif.image.batch.maxTiles</code>
+   * @throws ServiceUnavailableException if the image processing queue is full (503 with <code>Retry-After</code>)
+   */
+  @CrossOrigin(allowedHeaders = {"*"}, origins = {"*"})
+  @RequestMapping(value = "{identifier}/tiles", method = {RequestMethod.GET, RequestMethod.POST})
+  public DeferredResult<ResponseEntity<StreamingResponseBody>> getTiles(
+          @PathVariable String identifier, @RequestParam("tile") List<String> tiles,
+          @RequestParam(value = "rotation", defaultValue = "0") String rotation,
+          @RequestParam(value = "quality", defaultValue = "default") String quality,
+          @RequestParam(value = "format", defaultValue = "jpg") String format,
+          HttpServletRequest request) throws InvalidParametersException {
+    HttpLoggingUtilities.addRequestClientInfoToMDC(request);
+    MDC.put("imageId", identifier);
+    if (tiles.size() > maxBatchTiles) {
+      MDC.clear();
+      throw new InvalidParametersException(String.format("At most %d tiles can be requested at once", maxBatchTiles));
+    }
+    for (String tile : tiles) {
+      if (tile.split("/").length != 2) {
+        MDC.clear();
+        throw new InvalidParametersException("Tiles must be given as {region}/{size}, was " + tile);
+      }
+    }
+    String path = getBasePath(request, identifier) + "/";
+    boolean lengthPrefixed = MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT) != null
+            ? request.getHeader(HttpHeaders.ACCEPT) : "*/*").contains(MediaType.APPLICATION_OCTET_STREAM);
+
+    DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    try {
+      imageProcessingExecutor.execute(() -> {
+        if (mdc != null) {
+          MDC.setContextMap(mdc);
+        }
+        try {
+          List<Image> images = processImages(identifier, tiles, rotation, quality, format, path);
+          HttpHeaders headers = new HttpHeaders();
+          headers.setCacheControl(getCacheControl());
+          ResponseEntity<StreamingResponseBody> response;
+          if (lengthPrefixed) {
+            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+            response = new ResponseEntity<>(out -> writeLengthPrefixed(images, out), headers, HttpStatus.OK);
+          } else {
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            headers.setContentType(MediaType.parseMediaType("multipart/mixed; boundary=" + boundary));
+            List<String> locations = new ArrayList<>(tiles.size());
+            for (String tile : tiles) {
+              locations.add(String.format("%s%s/%s/%s.%s", path, tile, rotation, quality, format));
+            }
+            response = new ResponseEntity<>(out -> writeMultipart(images, locations, boundary, out), headers,
+                    HttpStatus.OK);
+          }
+          LOGGER.info("Successfully served {} tiles of {}", images.size(), identifier);
+          if (!result.setResult(response)) {
+            // Request has timed out in the meantime
+            images.forEach(Image::close);
+          }
+        } catch (Exception e) {
+          result.setErrorResult(e);
+        } finally {
+          MDC.clear();
+        }
+      });
+    } catch (TaskRejectedException e) {
+      LOGGER.warn("Image processing queue is full, rejecting {} tiles of {}", tiles.size(), identifier);
+      throw new ServiceUnavailableException(retryAfterSeconds);
     } finally {
       MDC.clear();
     }
+    return result;
+  }
+
+  private List<Image> processImages(String identifier, List<String> tiles, String rotation, String quality,
+          String format, String path) throws UnsupportedFormatException, UnsupportedOperationException,
+          InvalidParametersException, TransformationException {
+    try {
+      List<RegionParameters> regionParameters = new ArrayList<>(tiles.size());
+      List<ResizeParameters> sizeParameters = new ArrayList<>(tiles.size());
+      for (String tile : tiles) {
+        String[] parameters = tile.split("/");
+        regionParameters.add(iiifParameterParserService.parseIiifRegion(parameters[0]));
+        sizeParameters.add(iiifParameterParserService.parseIiifSize(parameters[1]));
+      }
+      RotationParameters rotationParameters = iiifParameterParserService.parseIiifRotation(rotation);
+      ImageBitDepth bitDepthParameter = iiifParameterParserService.parseIiifQuality(quality);
+      ImageFormat formatParameter = iiifParameterParserService.parseIiifFormat(format);
+
+      return imageService.processImages(identifier, regionParameters, sizeParameters,
+              rotationParameters, bitDepthParameter, formatParameter);
+    } catch (de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException ex) {
+      LOGGER.info("Request contained invalid parameters in tiles of {}", path, ex);
+      throw new InvalidParametersException(ex.getMessage());
+    } catch (de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException ex) {
+      LOGGER.info("Unsupported format ({}) was request in tiles of {}", format, path);
+      throw new UnsupportedFormatException(ex.getMessage());
+    } catch (de.digitalcollections.iiif.image.model.api.v2.TransformationException ex) {
+      LOGGER.error("Error during transformation for tiles of {}", path, ex);
+      throw new TransformationException(ex.getMessage());
+    } catch (de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException e) {
+      LOGGER.info("Could not find image for {}", path);
+      throw new ResourceNotFoundException();
+    }
+  }
+
+  /**
+   * Write each image preceded by its length, the images are released afterwards.
+   */
+  private static void writeLengthPrefixed(List<Image> images, OutputStream out) throws IOException {
+    try {
+      DataOutputStream data = new DataOutputStream(out);
+      for (Image image : images) {
+        if (image.getDataLength() >= 0) {
+          data.writeInt(image.getDataLength());
+          image.writeTo(data);
+        } else {
+          byte[] encoded = image.toByteArray();
+          data.writeInt(encoded.length);
+          data.write(encoded);
+        }
+      }
+      data.flush();
+    } finally {
+      images.forEach(Image::close);
+    }
+  }
+
+  /**
+   * Write the images as parts of a <code>multipart/mixed</code> body, the images are released afterwards.
+   */
+  private static void writeMultipart(List<Image> images, List<String> locations, String boundary, OutputStream out)
+          throws IOException {
+    try {
+      for (int i = 0; i < images.size(); i++) {
+        Image image = images.get(i);
+        StringBuilder partHeaders = new StringBuilder()
+                .append("--").append(boundary).append("\r\n")
+                .append("Content-Type: ").append(image.getFormat().getMimeType()).append("\r\n")
+                .append("Content-Location: ").append(locations.get(i)).append("\r\n");
+        if (image.getDataLength() >= 0) {
+          partHeaders.append("Content-Length: ").append(image.getDataLength()).append("\r\n");
+        }
+        out.write(partHeaders.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII));
+        image.writeTo(out);
+        out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+      }
+      out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+    } finally {
+      images.forEach(Image::close);
+    }
+  }
+
+  private ImageInfo getImageInfo(String identifier, String path) throws UnsupportedFormatException {
+    try {
+      return imageService.getImageInfo(identifier);
+    } catch (de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException ex) {
+      LOGGER.info("Unsupported source format for {}", path);
+      throw new UnsupportedFormatException(ex.getMessage());
+    } catch (de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException e) {
+      LOGGER.info("Could not find image for {}", path);
+      throw new ResourceNotFoundException();
+    }
+  }
+
+  private String getCanonicalForm(ImageInfo info, String region, String size, String rotation, String quality,
+          String format, String path) throws InvalidParametersException, UnsupportedFormatException {
+    try {
+      return iiifParameterParserService.getCanonicalForm(info, region, size, rotation, quality, format);
+    } catch (de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException ex) {
+      LOGGER.info("Request contained invalid parameters in {}", path, ex);
+      throw new InvalidParametersException(ex.getMessage());
+    } catch (de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException ex) {
+      LOGGER.info("Unsupported format ({}) was request in {}", format, path);
+      throw new UnsupportedFormatException(ex.getMessage());
+    }
+  }
+
+  /**
+   * @return weak entity tag, equal for all requests that yield the same image from the same version of the source.
+   * It is computed before rendering, so it only promises semantically equivalent images, not identical bytes.
+   */
+  private static String getImageETag(String identifier, ImageInfo info, String canonicalForm) {
+    String version = String.format("%s/%d/%dx%d/%s", identifier, info.getLastModified(), info.getWidth(),
+            info.getHeight(), canonicalForm);
+    return "W/\"" + DigestUtils.md5DigestAsHex(version.getBytes(StandardCharsets.UTF_8)) + "\"";
+  }
+
+  private String getCacheControl() {
+    return CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().getHeaderValue();
+  }
+
+  /**
+   * @return value of the date header in milliseconds since the epoch, -1 if it is missing or invalid
+   */
+  private static long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Evaluate the validators of a conditional GET or HEAD request, If-None-Match takes precedence over
+   * If-Modified-Since (see RFC 7232).
+   */
+  private static boolean isNotModified(String ifNoneMatch, long ifModifiedSince, String eTag, long lastModified) {
+    if (ifNoneMatch != null) {
+      String opaqueTag = getOpaqueTag(eTag);
+      for (String candidate : ifNoneMatch.split(",")) {
+        // If-None-Match uses the weak comparison
+        candidate = getOpaqueTag(candidate.trim());
+        if ("*".equals(candidate) || candidate.equals(opaqueTag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    // HTTP dates have a resolution of seconds
+    return ifModifiedSince >= 0 && lastModified >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  private static String getOpaqueTag(String eTag) {
+    return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+  }
+
+  private static String getContentDisposition(String path) {
+    String filename = path.replaceFirst("/image/", "").replace('/', '_').replace(',', '_');
+    return "inline; filename=" + filename;
+  }
+
+  /**
+   * @return whether the image has been rendered by the jpegtran backend, also for cached and shared renderings
+   */
+  private static boolean isRenderedByJpegTran(Image image) {
+    Class<?> renderer = image instanceof EncodedImage ? ((EncodedImage) image).getRenderer() : image.getClass();
+    return renderer != null && JpegTranImage.class.isAssignableFrom(renderer);
+  }
+
+  private ResponseEntity<StreamingResponseBody> createImageResponse(Image image, String path, HttpHeaders headers) {
+    try {
+      // header
+      final ImageFormat imageFormat = image.getFormat();
+      final String mimeType = imageFormat.getMimeType();
+      headers.setContentType(MediaType.parseMediaType(mimeType));
+
+      headers.set("Content-Disposition", getContentDisposition(path));
+      boolean renderedByJpegTran = isRenderedByJpegTran(image);
+      headers.set("X-IIIF-Image-Backend", renderedByJpegTran ? "fast" : "slow");
+      // images that are encoded while writing are sent chunked
+      if (image.getDataLength() >= 0) {
+        headers.setContentLength(image.getDataLength());
+      }
+
+      // content, streamed to the client and released afterwards
+      StreamingResponseBody body = out -> {
+        try {
+          image.writeTo(out);
+        } finally {
+          image.close();
+        }
+      };
+
+      MDC.put("imageBackend", renderedByJpegTran ? "turbojpeg" : "imageio");
+      LOGGER.info("Successfully served image for {}", path);
+      return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    } catch (RuntimeException e) {
+      image.close();
+      throw e;
+    }
+  }
+
+  @ExceptionHandler(ServiceUnavailableException.class)
+  public ResponseEntity<Void> handleServiceUnavailable(ServiceUnavailableException e) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+    return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE);
   }
 
   /**
@@ -196,11 +589,10 @@ public class IIIFImageApiController {
    * @throws ResolvingException if identifier can not be resolved to an image
    * @throws UnsupportedFormatException if target format is not supported
    */
-  @SuppressWarnings("unchecked")
   @CrossOrigin(allowedHeaders = {"*"}, origins = {"*"})
   @RequestMapping(value = "{identifier}/info.json",
           method = {RequestMethod.GET, RequestMethod.HEAD})
-  public ResponseEntity<String> getInfo(@PathVariable String identifier,
+  public ResponseEntity<byte[]> getInfo(@PathVariable String identifier,
           HttpServletRequest request) throws ResolvingException,
           UnsupportedFormatException, UnsupportedOperationException, UnsupportedEncodingException {
 
@@ -212,32 +604,7 @@ public class IIIFImageApiController {
 
       String baseUrl = getBasePath(request, identifier);
       ImageInfo img = imageService.getImageInfo(identifier);
-      JSONObject info = new JSONObject();
-      JSONArray profiles = new JSONArray();
-      profiles.add(IIIF_COMPLIANCE);
-      info.put("@context", IIIF_CONTEXT); // The context document that describes the semantics of the terms used in the document. This must be the URI: http://iiif.io/api/image/2/context.json for version 2.0 of the IIIF Image API.
-      info.put("@id", baseUrl); // The Base URI of the image as defined in URI Syntax, including scheme, server, prefix and identifier without a trailing slash.
-      info.put("width", img.getWidth()); // The width in pixels of the full image content, given as an integer.
-      info.put("height", img.getHeight()); // The height in pixels of the full image content, given as an integer.
-      info.put("profile", profiles); // An array of profiles, indicated by either a URI or an object describing the features supported. The first entry in the array must be a compliance level URI, as defined below.
-      info.put("protocol", "http://iiif.io/api/image");
-
-      // Add scale factors that are ideal for the TurboJPEG implementation
-      JSONArray scaleFactors = new JSONArray();
-      Collections.addAll(scaleFactors, 1, 2, 4, 8, 16, 32);
-
-      // Ditto for tiles
-      JSONArray tiles = new JSONArray();
-      IntStream.of(128, 256, 512)
-              .mapToObj(size -> {
-                JSONObject tile = new JSONObject();
-                tile.put("width", size);
-                tile.put("height", size);
-                tile.put("scaleFactors", scaleFactors);
-                return tile;
-              })
-              .forEach(tiles::add);
-      info.put("tiles", tiles);
+      InfoDocument document = infoDocumentCache.getDocument(baseUrl, img);
 
       HttpHeaders headers = new HttpHeaders();
       String contentType = request.getHeader("Accept");
@@ -249,9 +616,15 @@ public class IIIFImageApiController {
                 + "rel=\"http://www.w3.org/ns/json-ld#context\"; "
                 + "type=\"application/ld+json\"");
       }
-      String json = info.toJSONString();
+      // Conditional requests are answered by Spring based on these validators
+      headers.setCacheControl(getCacheControl());
+      headers.setETag(document.getETag());
+      if (document.getLastModified() >= 0) {
+        headers.setLastModified(document.getLastModified());
+      }
+      headers.setContentLength(document.getLength());
       LOGGER.info("Serving info.json for image {}", identifier);
-      return new ResponseEntity<>(json, headers, HttpStatus.OK);
+      return new ResponseEntity<>(document.getData(), headers, HttpStatus.OK);
     } catch (de.digitalcollections.iiif.image.model.api.exception.UnsupportedFormatException ex) {
       throw new UnsupportedFormatException(ex.getMessage());
     } catch (de.digitalcollections.iiif.image.model.api.exception.ResourceNotFoundException e) {
@@ -0,0 +1,59 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2;
+
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import java.io.Serializable;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Serialized info.json document of an image, with the validators needed to serve it.
+ */
+public class InfoDocument implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final byte[] data;
+  private final String eTag;
+  private final long lastModified;
+  private final int width;
+  private final int height;
+
+  public InfoDocument(byte[] data, ImageInfo info) {
+    this.data = data;
+    this.eTag = "\"" + DigestUtils.md5DigestAsHex(data) + "\"";
+    this.lastModified = info.getLastModified();
+    this.width = info.getWidth();
+    this.height = info.getHeight();
+  }
+
+  /**
+   * @return the document, must not be modified
+   */
+  public byte[] getData() {
+    return data;
+  }
+
+  public int getLength() {
+    return data.length;
+  }
+
+  /**
+   * @return strong entity tag of the document, including the quotes
+   */
+  public String getETag() {
+    return eTag;
+  }
+
+  /**
+   * @return time of the last modification of the source image in milliseconds since the epoch or -1 if it is not known
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return whether the document has been built from the given information
+   */
+  public boolean isBuiltFrom(ImageInfo info) {
+    return info.getLastModified() == lastModified && info.getWidth() == width && info.getHeight() == height;
+  }
+}
@@ -0,0 +1,98 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2;
+
+import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.stream.IntStream;
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the info.json documents and caches them serialized, keyed by the base URI of the image (which includes the
+ * identifier). A cached document is only used as long as it matches the cached image information it was built from.
+ */
+@Component
+public class InfoDocumentCache implements InitializingBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(InfoDocumentCache.class);
+
+  public static final String CACHE = "infoDocuments";
+
+  private static final String IIIF_COMPLIANCE = "http://iiif.io/api/image/2/level2.json";
+  private static final String IIIF_CONTEXT = "http://iiif.io/api/image/2/context.json";
+
+  @Autowired(required = false)
+  private CacheManager cacheManager;
+
+  private Cache<Object, Object> cache;
+
+  @Override
+  public void afterPropertiesSet() {
+    if (cacheManager != null) {
+      cache = cacheManager.getCache(CACHE);
+    }
+    if (cache == null) {
+      LOGGER.info("Cache {} is not configured, info.json documents will be built for every request", CACHE);
+    }
+  }
+
+  /**
+   * @param baseUrl base URI of the image, the "@id" of the document
+   * @param info information about the image
+   * @return the info.json document
+   */
+  public InfoDocument getDocument(String baseUrl, ImageInfo info) {
+    if (cache == null) {
+      return buildDocument(baseUrl, info);
+    }
+    InfoDocument document = (InfoDocument) cache.get(baseUrl);
+    if (document == null || !document.isBuiltFrom(info)) {
+      document = buildDocument(baseUrl, info);
+      cache.put(baseUrl, document);
+    }
+    return document;
+  }
+
+  @SuppressWarnings("unchecked")
+  private InfoDocument buildDocument(String baseUrl, ImageInfo img) {
+    JSONObject info = new JSONObject();
+    JSONArray profiles = new JSONArray();
+    profiles.add(IIIF_COMPLIANCE);
+    info.put("@context", IIIF_CONTEXT); // The context document that describes the semantics of the terms used in the document. This must be the URI: http://iiif.io/api/image/2/context.json for version 2.0 of the IIIF Image API.
+    info.put("@id", baseUrl); // The Base URI of the image as defined in URI Syntax, including scheme, server, prefix and identifier without a trailing slash.
+    info.put("width", img.getWidth()); // The width in pixels of the full image content, given as an integer.
+    info.put("height", img.getHeight()); // The height in pixels of the full image content, given as an integer.
+    info.put("profile", profiles); // An array of profiles, indicated by either a URI or an object describing the features supported. The first entry in the array must be a compliance level URI, as defined below.
+    info.put("protocol", "http://iiif.io/api/image");
+
+    // Add the resolution levels stored in the image, otherwise scale factors that are ideal for the TurboJPEG implementation
+    JSONArray scaleFactors = new JSONArray();
+    if (img.getScaleFactors() != null) {
+      scaleFactors.addAll(img.getScaleFactors());
+    } else {
+      Collections.addAll(scaleFactors, 1, 2, 4, 8, 16, 32);
+    }
+
+    // Ditto for tiles
+    JSONArray tiles = new JSONArray();
+    IntStream.of(128, 256, 512)
+            .mapToObj(size -> {
+              JSONObject tile = new JSONObject();
+              tile.put("width", size);
+              tile.put("height", size);
+              tile.put("scaleFactors", scaleFactors);
+              return tile;
+            })
+            .forEach(tiles::add);
+    info.put("tiles", tiles);
+
+    return new InfoDocument(info.toJSONString().getBytes(StandardCharsets.UTF_8), img);
+  }
+}
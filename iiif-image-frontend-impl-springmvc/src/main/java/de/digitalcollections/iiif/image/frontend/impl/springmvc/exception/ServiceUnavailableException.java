@@ -0,0 +1,21 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceUnavailableException extends RuntimeException {
+
+  private final int retryAfterSeconds;
+
+  public ServiceUnavailableException(int retryAfterSeconds) {
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * @return seconds after which the client may retry the request
+   */
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
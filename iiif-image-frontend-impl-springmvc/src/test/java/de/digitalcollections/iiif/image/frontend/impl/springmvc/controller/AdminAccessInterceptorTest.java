@@ -0,0 +1,41 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class AdminAccessInterceptorTest {
+
+  private static MockHttpServletRequest createRequest(String remoteAddr, String authorization) {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/admin/warmup");
+    request.setRemoteAddr(remoteAddr);
+    if (authorization != null) {
+      request.addHeader("Authorization", authorization);
+    }
+    return request;
+  }
+
+  private static int getStatus(AdminAccessInterceptor interceptor, MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    boolean allowed = interceptor.preHandle(request, response, null);
+    Assert.assertEquals(allowed, response.getStatus() == 200);
+    return response.getStatus();
+  }
+
+  @Test
+  public void testOnlyLocalRequestsWithoutToken() throws Exception {
+    AdminAccessInterceptor interceptor = new AdminAccessInterceptor("");
+    Assert.assertEquals(200, getStatus(interceptor, createRequest("127.0.0.1", null)));
+    Assert.assertEquals(200, getStatus(interceptor, createRequest("::1", null)));
+    Assert.assertEquals(403, getStatus(interceptor, createRequest("10.1.2.3", null)));
+  }
+
+  @Test
+  public void testTokenIsRequired() throws Exception {
+    AdminAccessInterceptor interceptor = new AdminAccessInterceptor("secret");
+    Assert.assertEquals(200, getStatus(interceptor, createRequest("10.1.2.3", "Bearer secret")));
+    Assert.assertEquals(403, getStatus(interceptor, createRequest("10.1.2.3", "Bearer wrong")));
+    Assert.assertEquals(403, getStatus(interceptor, createRequest("127.0.0.1", null)));
+  }
+}
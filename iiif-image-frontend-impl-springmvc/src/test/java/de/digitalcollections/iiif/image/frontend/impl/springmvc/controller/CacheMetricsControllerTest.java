@@ -0,0 +1,61 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2.IIIFImageApiController;
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2.TestConfiguration;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = TestConfiguration.class)
+public class CacheMetricsControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  protected WebApplicationContext wac;
+
+  @BeforeClass
+  public static void beforeClass() {
+    System.setProperty("spring.profiles.active", "TEST");
+  }
+
+  @Before
+  public void setup() {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+  }
+
+  @Test
+  public void testCacheMetrics() throws Exception {
+    mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/info.json"))
+            .andExpect(status().isOk());
+    mockMvc.perform(get("/admin/caches/imageInfos"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/json"))
+            .andExpect(jsonPath("$.name").value("imageInfos"))
+            .andExpect(jsonPath("$.entries").value(Matchers.greaterThanOrEqualTo(1)))
+            .andExpect(jsonPath("$.tiers[0].name").value("heap"))
+            .andExpect(jsonPath("$.loadTimes.count").value(Matchers.greaterThanOrEqualTo(1)));
+  }
+
+  @Test
+  public void testUnknownCache() throws Exception {
+    mockMvc.perform(get("/admin/caches/foobar"))
+            .andExpect(status().isNotFound());
+  }
+}
@@ -0,0 +1,75 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller;
+
+import de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2.TestConfiguration;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebAppConfiguration
+@ContextConfiguration(classes = TestConfiguration.class)
+public class CacheWarmupControllerTest {
+
+  private MockMvc mockMvc;
+
+  @Autowired
+  protected WebApplicationContext wac;
+
+  @BeforeClass
+  public static void beforeClass() {
+    System.setProperty("spring.profiles.active", "TEST");
+  }
+
+  @Before
+  public void setup() {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    mockMvc.perform(post("/admin/warmup").contentType("application/json").content("[\"http-google\"]"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", Matchers.containsString("/admin/warmup/")))
+            .andExpect(jsonPath("$.total").value(1));
+    mockMvc.perform(get("/admin/warmup"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.jobs[0].total").value(1));
+  }
+
+  @Test
+  public void testWarmUpManifest() throws Exception {
+    String manifest = "{\"sequences\": [{\"canvases\": [{\"images\": [{\"resource\": {\"service\": {"
+                      + "\"@context\": \"http://iiif.io/api/image/2/context.json\","
+                      + "\"@id\": \"http://localhost/image/v2/http-google\"}}}]}]}]}";
+    mockMvc.perform(post("/admin/warmup").contentType("application/json").content(manifest))
+            .andExpect(status().isAccepted())
+            .andExpect(jsonPath("$.total").value(1));
+  }
+
+  @Test
+  public void testInvalidJson() throws Exception {
+    mockMvc.perform(post("/admin/warmup").contentType("application/json").content("{foo"))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  public void testUnknownJob() throws Exception {
+    mockMvc.perform(get("/admin/warmup/foobar"))
+            .andExpect(status().isNotFound());
+  }
+}
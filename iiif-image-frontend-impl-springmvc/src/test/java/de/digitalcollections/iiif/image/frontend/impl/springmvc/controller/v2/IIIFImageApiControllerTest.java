@@ -7,6 +7,8 @@ import de.digitalcollections.iiif.image.frontend.impl.springmvc.exception.Unsupp
 import de.digitalcollections.iiif.image.model.api.v2.Image;
 import java.awt.image.BufferedImage;
 import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.util.Iterator;
@@ -20,18 +22,28 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -102,6 +114,20 @@ public class IIIFImageApiControllerTest {
             .andExpect(MockMvcResultMatchers.redirectedUrl("/image/" + IIIFImageApiController.VERSION + "/abcdef/info.json"));
   }
 
+  /**
+   * Image requests are processed and streamed asynchronously, so the async dispatches have to be performed explicitly.
+   */
+  private ResultActions performImageRequest(RequestBuilder requestBuilder) throws Exception {
+    ResultActions actions = mockMvc.perform(requestBuilder)
+            .andExpect(request().asyncStarted());
+    MvcResult result = actions.andReturn();
+    while (result.getRequest().isAsyncStarted()) {
+      actions = mockMvc.perform(asyncDispatch(result));
+      result = actions.andReturn();
+    }
+    return actions;
+  }
+
   private Image loadImage(byte[] imageData, boolean useFast) throws IOException, UnsupportedFormatException {
     Image image;
     if (!useFast) {
@@ -126,8 +152,7 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testBinarization() throws Exception {
-    byte[] imgData = mockMvc
-            .perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/bitonal.png").header("Referer", "http://localhost/foobar"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/bitonal.png").header("Referer", "http://localhost/foobar"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     BufferedImage image = ((JAIImage) loadImage(imgData, false)).getImage();
@@ -136,18 +161,59 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testContentDispositionHeader() throws Exception {
-    mockMvc
-            .perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.png").header("Referer", "http://localhost/foobar"))
+    performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.png").header("Referer", "http://localhost/foobar"))
             .andExpect(status().isOk())
             .andExpect(content().contentType("image/png"))
             .andExpect(header().string("Content-Disposition", "inline; filename=" + IIIFImageApiController.VERSION + "_http-google_full_full_0_default.png"));
   }
 
+  @Test
+  public void testCanonicalLinkHeader() throws Exception {
+    performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/pct:0,0,100,100/full/360/native.jpeg").header("Host", "localhost"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Link", "<http://localhost/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.jpg>; rel=\"canonical\""));
+  }
+
+  @Test
+  public void testImageNotModified() throws Exception {
+    String url = "/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,256,256/full/0/default.jpg";
+    String eTag = performImageRequest(get(url))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", Matchers.containsString("max-age")))
+            .andExpect(header().string("ETag", Matchers.startsWith("W/\"")))
+            .andReturn().getResponse().getHeader("ETag");
+    performImageRequest(get(url).header("If-None-Match", eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string("ETag", eTag))
+            .andExpect(content().bytes(new byte[0]));
+    // The weak comparison also matches the opaque tag without the weakness indicator
+    performImageRequest(get(url).header("If-None-Match", "\"other\", " + eTag.substring(2)))
+            .andExpect(status().isNotModified());
+  }
+
+  @Test
+  public void testImageHeadRequest() throws Exception {
+    performImageRequest(head("/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.png"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("image/png"))
+            .andExpect(header().string("ETag", Matchers.notNullValue()))
+            .andExpect(content().bytes(new byte[0]));
+  }
+
+  @Test
+  public void testInfoNotModified() throws Exception {
+    String url = "/image/" + IIIFImageApiController.VERSION + "/http-google/info.json";
+    String eTag = mockMvc.perform(get(url))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getHeader("ETag");
+    mockMvc.perform(get(url).header("If-None-Match", eTag))
+            .andExpect(status().isNotModified());
+  }
+
   /* 4.5 Format */
   @Test
   public void testConvertPng() throws Exception {
-    byte[] imgData = mockMvc
-            .perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.png").header("Referer", "http://localhost/foobar"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/full/full/0/default.png").header("Referer", "http://localhost/foobar"))
             .andExpect(status().isOk())
             .andExpect(content().contentType("image/png"))
             .andReturn().getResponse().getContentAsByteArray();
@@ -198,7 +264,7 @@ public class IIIFImageApiControllerTest {
   /* 4.1 Region */
   @Test
   public void testCropWithAbsoluteValues() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/20,20,50,50/full/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/20,20,50,50/full/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -206,15 +272,23 @@ public class IIIFImageApiControllerTest {
     Assert.assertEquals(50, image.getWidth());
   }
 
+  @Test
+  public void testContentLengthOfJpeg() throws Exception {
+    MockHttpServletResponse response = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/20,20,50,50/full/0/native.jpg"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse();
+    Assert.assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+  }
+
   @Test
   public void testCropWithAbsoluteValuesTotallyExceeding() throws Exception {
-    mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/5000,5000,100,100/full/0/native.jpg"))
+    performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/5000,5000,100,100/full/0/native.jpg"))
             .andExpect(status().is((400)));
   }
 
   @Test
   public void testCropWithRelativeValues() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:10,10,10,10/full/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:10,10,10,10/full/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -224,7 +298,7 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testCropWithRelativeValuesPartiallyExceeding() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:20,20,100,10/full/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:20,20,100,10/full/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -235,7 +309,7 @@ public class IIIFImageApiControllerTest {
   /* 4.4 Quality */
   @Test
   public void testGrayscaling() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/gray.jpg").header("Referer", "http://localhost/foobar"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/gray.jpg").header("Referer", "http://localhost/foobar"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     BufferedImage image = ((JAIImage) loadImage(imgData, false)).getImage();
@@ -246,10 +320,10 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testMirror() throws Exception {
-    byte[] imgDataRegular = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/0/native.jpg"))
+    byte[] imgDataRegular = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
-    byte[] imgDataMirror = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/!0/native.jpg"))
+    byte[] imgDataMirror = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/!0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image regularImage = loadImage(imgDataRegular, true);
@@ -262,7 +336,7 @@ public class IIIFImageApiControllerTest {
   /* 4.3 Rotation */
   @Test
   public void testRotation() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/http-google/0,0,1500,2048/750,/90/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -272,7 +346,7 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testScaleWithBestWidth() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/!500,500/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/!500,500/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -282,7 +356,7 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testScaleWithMissingHeight() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/,200/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/,200/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -292,7 +366,7 @@ public class IIIFImageApiControllerTest {
   /* 4.2 Size */
   @Test
   public void testScaleWithMissingWidth() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/200,/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/200,/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -301,7 +375,7 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testScaleWithRelativeValues() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/pct:50/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/pct:50/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -311,13 +385,13 @@ public class IIIFImageApiControllerTest {
 
   @Test
   public void testScaleWithZeroSize() throws Exception {
-    mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/!500,0/0/native.jpg"))
+    performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/!500,0/0/native.jpg"))
             .andExpect(status().is(400));
   }
 
   @Test
   public void testRelativeCropWithAbsoluteScale() throws Exception {
-    byte[] imgData = mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:10,20,20,20/500,/0/native.jpg"))
+    byte[] imgData = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/pct:10,20,20,20/500,/0/native.jpg"))
             .andExpect(status().isOk())
             .andReturn().getResponse().getContentAsByteArray();
     Image image = loadImage(imgData, true);
@@ -332,4 +406,58 @@ public class IIIFImageApiControllerTest {
             .andExpect(status().isOk())
             .andExpect(jsonPath("$.@id").value("http://localhost/image/" + IIIFImageApiController.VERSION + "/spec%253A%252Fial%253Ffile%2523with%255Bspecial%255Dch%2540arac%2525ters"));
   }
+
+  @Test
+  public void testTiles() throws Exception {
+    performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/tiles")
+            .param("tile", "0,0,1024,1024/512,", "1024,0,1024,1024/512,"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Content-Type", Matchers.startsWith("multipart/mixed; boundary=")))
+            .andExpect(content().string(Matchers.containsString(
+                    "Content-Location: http://localhost/image/" + IIIFImageApiController.VERSION
+                    + "/file-zoom/1024,0,1024,1024/512,/0/default.jpg")));
+  }
+
+  @Test
+  public void testLengthPrefixedTiles() throws Exception {
+    byte[] data = performImageRequest(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/tiles")
+            .param("tile", "0,0,1024,1024/512,", "1024,0,1024,1024/512,")
+            .header("Accept", "application/octet-stream"))
+            .andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    for (int i = 0; i < 2; i++) {
+      byte[] tile = new byte[in.readInt()];
+      in.readFully(tile);
+      Image image = loadImage(tile, true);
+      Assert.assertEquals(512, image.getWidth());
+    }
+    Assert.assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testMalformedTile() throws Exception {
+    mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/tiles").param("tile", "full"))
+            .andExpect(status().is(400));
+  }
+
+  @Test
+  public void testRejectedWhenQueueIsFull() throws Exception {
+    Object executor = ReflectionTestUtils.getField(iiifController, "imageProcessingExecutor");
+    TaskExecutor saturated = task -> {
+      throw new TaskRejectedException("Queue is full");
+    };
+    ReflectionTestUtils.setField(iiifController, "imageProcessingExecutor", saturated);
+    try {
+      mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/full/full/0/default.jpg"))
+              .andExpect(status().isServiceUnavailable())
+              .andExpect(header().string("Retry-After", "5"));
+      mockMvc.perform(get("/image/" + IIIFImageApiController.VERSION + "/file-zoom/tiles")
+              .param("tile", "0,0,1024,1024/512,"))
+              .andExpect(status().isServiceUnavailable())
+              .andExpect(header().string("Retry-After", "5"));
+    } finally {
+      ReflectionTestUtils.setField(iiifController, "imageProcessingExecutor", executor);
+    }
+  }
 }
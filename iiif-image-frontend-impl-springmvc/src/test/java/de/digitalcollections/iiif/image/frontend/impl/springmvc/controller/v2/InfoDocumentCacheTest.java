@@ -0,0 +1,106 @@
+package de.digitalcollections.iiif.image.frontend.impl.springmvc.controller.v2;
+
+import de.digitalcollections.iiif.image.model.impl.v2.ImageInfoImpl;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.hamcrest.Matchers;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class InfoDocumentCacheTest {
+
+  private static final String BASE_URL = "http://localhost/image/v2/file-zoom";
+
+  private CacheManager cacheManager;
+  private InfoDocumentCache infoDocumentCache;
+
+  @Before
+  public void setUp() {
+    cacheManager = Caching.getCachingProvider("org.ehcache.jsr107.EhcacheCachingProvider").getCacheManager();
+    cacheManager.createCache(InfoDocumentCache.CACHE, Eh107Configuration.fromEhcacheCacheConfiguration(
+        CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                                               ResourcePoolsBuilder.heap(16))));
+    infoDocumentCache = createInfoDocumentCache(cacheManager);
+  }
+
+  @After
+  public void tearDown() {
+    cacheManager.close();
+  }
+
+  private static InfoDocumentCache createInfoDocumentCache(CacheManager cacheManager) {
+    InfoDocumentCache infoDocumentCache = new InfoDocumentCache();
+    ReflectionTestUtils.setField(infoDocumentCache, "cacheManager", cacheManager);
+    infoDocumentCache.afterPropertiesSet();
+    return infoDocumentCache;
+  }
+
+  private static ImageInfoImpl createInfo(int width, int height, long lastModified) {
+    ImageInfoImpl info = new ImageInfoImpl();
+    info.setWidth(width);
+    info.setHeight(height);
+    info.setLastModified(lastModified);
+    return info;
+  }
+
+  private static JSONObject parse(InfoDocument document) throws Exception {
+    return (JSONObject) new JSONParser().parse(new String(document.getData(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testDocument() throws Exception {
+    ImageInfoImpl info = createInfo(2064, 2553, 1000);
+    info.setScaleFactors(Arrays.asList(1, 2, 4));
+    InfoDocument document = infoDocumentCache.getDocument(BASE_URL, info);
+    JSONObject json = parse(document);
+    Assert.assertEquals(BASE_URL, json.get("@id"));
+    Assert.assertEquals(2064L, json.get("width"));
+    Assert.assertEquals(2553L, json.get("height"));
+    JSONObject tile = (JSONObject) ((JSONArray) json.get("tiles")).get(0);
+    Assert.assertEquals(Arrays.asList(1L, 2L, 4L), tile.get("scaleFactors"));
+    Assert.assertEquals(document.getData().length, document.getLength());
+    Assert.assertEquals(1000, document.getLastModified());
+    Assert.assertThat(document.getETag(), Matchers.startsWith("\""));
+  }
+
+  @Test
+  public void testCachedDocumentIsReused() {
+    InfoDocument document = infoDocumentCache.getDocument(BASE_URL, createInfo(2064, 2553, 1000));
+    Assert.assertSame(document, infoDocumentCache.getDocument(BASE_URL, createInfo(2064, 2553, 1000)));
+    Assert.assertNotSame(document, infoDocumentCache.getDocument(BASE_URL + "-2", createInfo(2064, 2553, 1000)));
+  }
+
+  @Test
+  public void testDocumentIsRebuiltForChangedSource() throws Exception {
+    InfoDocument document = infoDocumentCache.getDocument(BASE_URL, createInfo(2064, 2553, 1000));
+
+    InfoDocument modified = infoDocumentCache.getDocument(BASE_URL, createInfo(2064, 2553, 2000));
+    Assert.assertNotSame(document, modified);
+    Assert.assertEquals(2000, modified.getLastModified());
+
+    InfoDocument resized = infoDocumentCache.getDocument(BASE_URL, createInfo(1032, 1276, 2000));
+    Assert.assertNotEquals(modified.getETag(), resized.getETag());
+    Assert.assertEquals(1032L, parse(resized).get("width"));
+    Assert.assertSame(resized, infoDocumentCache.getDocument(BASE_URL, createInfo(1032, 1276, 2000)));
+  }
+
+  @Test
+  public void testWithoutCache() {
+    InfoDocumentCache uncached = createInfoDocumentCache(null);
+    InfoDocument document = uncached.getDocument(BASE_URL, createInfo(2064, 2553, 1000));
+    InfoDocument rebuilt = uncached.getDocument(BASE_URL, createInfo(2064, 2553, 1000));
+    Assert.assertNotSame(document, rebuilt);
+    Assert.assertEquals(document.getETag(), rebuilt.getETag());
+  }
+}
@@ -4,6 +4,9 @@ import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
 import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.exception.InvalidParametersException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 /** NOTE: Even though this interface suggests that transformations are lazy,
  *  this is **not** binding. That is, between the first call to any of the transformation
@@ -14,8 +17,10 @@ import java.io.IOException;
  *  whether a transformation is in progress (i.e. `performTransformation` has not been
  *  called yet) and raise an UnsupportedOperationException upon calling `toByteArray` if
  *  the flag is set.
+ *
+ *  Images may hold native resources, so they should be closed once the transformed data has been obtained.
  */
-public interface Image {
+public interface Image extends AutoCloseable {
   ImageFormat getFormat();
 
   int getHeight();
@@ -24,6 +29,34 @@ public interface Image {
 
   byte[] toByteArray() throws UnsupportedOperationException, IOException;
 
+  /**
+   * Write the encoded image to a stream, without holding a complete copy of it on the heap where possible.
+   * The default implementation writes the result of {@link #toByteArray()}.
+   *
+   * @param out target stream, is not closed
+   * @throws IOException if encoding or writing fails
+   */
+  default void writeTo(OutputStream out) throws UnsupportedOperationException, IOException {
+    out.write(toByteArray());
+  }
+
+  /**
+   * Write the encoded image to a channel. The default implementation writes to a stream on the channel.
+   *
+   * @param channel target channel, is not closed
+   * @throws IOException if encoding or writing fails
+   */
+  default void writeTo(WritableByteChannel channel) throws UnsupportedOperationException, IOException {
+    writeTo(Channels.newOutputStream(channel));
+  }
+
+  /**
+   * @return length of the encoded image in bytes, or -1 if it is only known once the image has been written
+   */
+  default int getDataLength() {
+    return -1;
+  }
+
   Image crop(RegionParameters params) throws UnsupportedOperationException, InvalidParametersException;
 
   Image scale(ResizeParameters params) throws UnsupportedOperationException, InvalidParametersException, TransformationException;
@@ -37,4 +70,11 @@ public interface Image {
   Image convert(ImageFormat format) throws UnsupportedOperationException, TransformationException;
 
   void performTransformation() throws TransformationException;
+
+  /**
+   * Release any resources held by the image. The default implementation does nothing.
+   */
+  @Override
+  default void close() {
+  }
 }
@@ -1,6 +1,16 @@
 package de.digitalcollections.iiif.image.model.api.v2;
 
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import java.util.List;
+
 public interface ImageInfo {
+  /**
+   * @return format of the source image or <code>null</code> if it is not known
+   */
+  ImageFormat getFormat();
+
+  void setFormat(ImageFormat format);
+
   int getHeight();
 
   void setHeight(int height);
@@ -9,4 +19,18 @@ public interface ImageInfo {
 
   void setWidth(int width);
 
+  /**
+   * @return scale factors of the resolution levels stored in the source image or <code>null</code> if it has only one
+   */
+  List<Integer> getScaleFactors();
+
+  void setScaleFactors(List<Integer> scaleFactors);
+
+  /**
+   * @return time of the last modification of the source image in milliseconds since the epoch or -1 if it is not known
+   */
+  long getLastModified();
+
+  void setLastModified(long lastModified);
+
 }
@@ -0,0 +1,140 @@
+package de.digitalcollections.iiif.image.model.impl.v2;
+
+import de.digitalcollections.iiif.image.model.api.enums.ImageBitDepth;
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
+import de.digitalcollections.iiif.image.model.api.v2.Image;
+import de.digitalcollections.iiif.image.model.api.v2.RegionParameters;
+import de.digitalcollections.iiif.image.model.api.v2.ResizeParameters;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Fully processed and encoded image, that can be shared between requests.
+ *
+ * The image is immutable, all transformations are unsupported and closing it does nothing. It is serializable, so
+ * that it can be stored in off-heap and disk caches.
+ */
+public class EncodedImage implements Image, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final byte[] data;
+  private final ImageFormat format;
+  private final int width;
+  private final int height;
+  private final Class<? extends Image> renderer;
+
+  public EncodedImage(byte[] data, ImageFormat format, int width, int height) {
+    this(data, format, width, height, null);
+  }
+
+  public EncodedImage(byte[] data, ImageFormat format, int width, int height, Class<? extends Image> renderer) {
+    this.data = data;
+    this.format = format;
+    this.width = width;
+    this.height = height;
+    this.renderer = renderer;
+  }
+
+  /**
+   * Encode a processed image and release it.
+   *
+   * @param image image on which all transformations have been performed
+   * @return the encoded image
+   * @throws IOException if encoding fails
+   */
+  public static EncodedImage encode(Image image) throws IOException {
+    try {
+      return new EncodedImage(image.toByteArray(), image.getFormat(), image.getWidth(), image.getHeight(),
+                              image.getClass());
+    } finally {
+      image.close();
+    }
+  }
+
+  /**
+   * @return class of the image the rendering was encoded from, <code>null</code> if unknown
+   */
+  public Class<? extends Image> getRenderer() {
+    return renderer;
+  }
+
+  @Override
+  public ImageFormat getFormat() {
+    return format;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return the encoded image, must not be modified
+   */
+  @Override
+  public byte[] toByteArray() {
+    return data;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(data);
+  }
+
+  @Override
+  public void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  @Override
+  public int getDataLength() {
+    return data.length;
+  }
+
+  @Override
+  public Image crop(RegionParameters params) {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public Image scale(ResizeParameters params) {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public Image rotate(int arcDegree) {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public Image flipHorizontally() {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public Image toDepth(ImageBitDepth depth) {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public Image convert(ImageFormat format) {
+    throw new UnsupportedOperationException("Encoded images can not be transformed");
+  }
+
+  @Override
+  public void performTransformation() {
+    // Already transformed
+  }
+}
@@ -1,11 +1,26 @@
 package de.digitalcollections.iiif.image.model.impl.v2;
 
+import de.digitalcollections.iiif.image.model.api.enums.ImageFormat;
 import de.digitalcollections.iiif.image.model.api.v2.ImageInfo;
+import java.util.List;
 
 public class ImageInfoImpl implements ImageInfo {
 
+  private ImageFormat format;
   private int height;
   private int width;
+  private List<Integer> scaleFactors;
+  private long lastModified = -1;
+
+  @Override
+  public ImageFormat getFormat() {
+    return format;
+  }
+
+  @Override
+  public void setFormat(ImageFormat format) {
+    this.format = format;
+  }
 
   @Override
   public int getWidth() {
@@ -27,4 +42,24 @@ public class ImageInfoImpl implements ImageInfo {
     this.width = width;
   }
 
+  @Override
+  public List<Integer> getScaleFactors() {
+    return scaleFactors;
+  }
+
+  @Override
+  public void setScaleFactors(List<Integer> scaleFactors) {
+    this.scaleFactors = scaleFactors;
+  }
+
+  @Override
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  @Override
+  public void setLastModified(long lastModified) {
+    this.lastModified = lastModified;
+  }
+
 }
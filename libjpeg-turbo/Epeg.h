@@ -39,6 +39,19 @@ extern "C" {
      }
    Epeg_Colorspace;
    
+   typedef enum _Epeg_Transform
+     {
+	EPEG_TRANSFORM_NONE,
+	  EPEG_TRANSFORM_FLIP_H,
+	  EPEG_TRANSFORM_FLIP_V,
+	  EPEG_TRANSFORM_TRANSPOSE,
+	  EPEG_TRANSFORM_TRANSVERSE,
+	  EPEG_TRANSFORM_ROT_90,
+	  EPEG_TRANSFORM_ROT_180,
+	  EPEG_TRANSFORM_ROT_270
+     }
+   Epeg_Transform;
+   
    typedef struct _Epeg_Image          Epeg_Image;
    typedef struct _Epeg_Thumbnail_Info Epeg_Thumbnail_Info;
 
@@ -54,6 +67,7 @@ extern "C" {
    EAPI Epeg_Image   *epeg_memory_open               (unsigned char *data, int size);
    EAPI void          epeg_size_get                  (Epeg_Image *im, int *w, int *h);
    EAPI void          epeg_decode_size_set           (Epeg_Image *im, int w, int h);
+   EAPI void          epeg_decode_crop_set           (Epeg_Image *im, int x, int y, int w, int h);
    EAPI void          epeg_colorspace_get            (Epeg_Image *im, int *space);
    EAPI void          epeg_decode_colorspace_set     (Epeg_Image *im, Epeg_Colorspace colorspace);
    EAPI const void   *epeg_pixels_get                (Epeg_Image *im, int x, int y, int w, int h);
@@ -62,6 +76,7 @@ extern "C" {
    EAPI void          epeg_thumbnail_comments_get    (Epeg_Image *im, Epeg_Thumbnail_Info *info);
    EAPI void          epeg_comment_set               (Epeg_Image *im, const char *comment);
    EAPI void          epeg_quality_set               (Epeg_Image *im, int quality);
+   EAPI void          epeg_transform_set             (Epeg_Image *im, Epeg_Transform transform);
    EAPI void          epeg_thumbnail_comments_enable (Epeg_Image *im, int onoff);
    EAPI void          epeg_file_output_set           (Epeg_Image *im, const char *file);
    EAPI void          epeg_memory_output_set         (Epeg_Image *im, unsigned char **data, int *size);
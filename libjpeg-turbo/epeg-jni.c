@@ -40,3 +40,141 @@ Java_de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegSc
     free(dest_buf);
     return outArray;
 }
+
+/*
+ * Copy the encoded image into a new Java array and free it.
+ */
+static jbyteArray to_byte_array(JNIEnv* env, unsigned char* dest_buf, int dest_size) {
+    jbyteArray outArray = (*env)->NewByteArray(env, dest_size);
+    if (outArray != NULL) {
+        (*env)->SetByteArrayRegion(env, outArray, 0, dest_size, (jbyte*) dest_buf);
+    }
+    free(dest_buf);
+    return outArray;
+}
+
+static void throw_tj_exception(JNIEnv* env, const char* message) {
+    jclass exceptionClass = (*env)->FindClass(env, "org/libjpegturbo/turbojpeg/TJException");
+    if (exceptionClass != NULL) {
+        (*env)->ThrowNew(env, exceptionClass, message);
+    }
+}
+
+/*
+ * Class:     de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler
+ * Method:    transformJpegImage
+ * Signature: ([BIIIIIIIZI)[B
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler_transformJpegImage(
+        JNIEnv* env, jclass cls, jbyteArray inData, jint cropX, jint cropY, jint cropWidth, jint cropHeight,
+        jint width, jint height, jint transform, jboolean grayscale, jint quality) {
+
+    // The image is read while it is decoded, copy it instead of pinning the array (and blocking GC) for the whole pass
+    int in_size = (*env)->GetArrayLength(env, inData);
+    unsigned char* in_buf = malloc(in_size > 0 ? in_size : 1);
+    unsigned char* dest_buf = NULL;
+    int dest_size = -1;
+    int ret = -1;
+
+    if (in_buf == NULL) {
+        throw_tj_exception(env, "Could not allocate input buffer");
+        return NULL;
+    }
+    (*env)->GetByteArrayRegion(env, inData, 0, in_size, (jbyte*) in_buf);
+    if ((*env)->ExceptionCheck(env)) {
+        free(in_buf);
+        return NULL;
+    }
+
+    // Decode the region at the closest IDCT scale, resample, reorient and encode in a single pass
+    Epeg_Image* im = epeg_memory_open(in_buf, in_size);
+    if (im != NULL) {
+        epeg_decode_crop_set(im, cropX, cropY, cropWidth, cropHeight);
+        epeg_decode_size_set(im, width, height);
+        if (grayscale) {
+            epeg_decode_colorspace_set(im, EPEG_GRAY8);
+        }
+        epeg_transform_set(im, (Epeg_Transform) transform);
+        epeg_quality_set(im, quality);
+        epeg_memory_output_set(im, &dest_buf, &dest_size);
+        ret = epeg_encode(im);
+        epeg_close(im);
+    }
+    free(in_buf);
+
+    if (ret != 0) {
+        free(dest_buf);
+        throw_tj_exception(env, im == NULL ? "Could not read JPEG header" : "Could not transform JPEG image");
+        return NULL;
+    }
+    return to_byte_array(env, dest_buf, dest_size);
+}
+
+/*
+ * Class:     de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler
+ * Method:    downScaleJpegBuffer
+ * Signature: (Ljava/nio/ByteBuffer;IIIII)[B
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler_downScaleJpegBuffer(
+        JNIEnv* env, jclass cls, jobject inBuffer, jint inOffset, jint inSize, jint width, jint height, jint quality) {
+
+    // Direct buffers are read in place, no JVM lock needed
+    unsigned char* in_buf = (*env)->GetDirectBufferAddress(env, inBuffer);
+    unsigned char* dest_buf = NULL;
+    int dest_size = -1;
+    int ret = -1;
+
+    Epeg_Image* im = in_buf != NULL ? epeg_memory_open(in_buf + inOffset, inSize) : NULL;
+    if (im != NULL) {
+        epeg_decode_size_set(im, width, height);
+        epeg_quality_set(im, quality);
+        epeg_memory_output_set(im, &dest_buf, &dest_size);
+        ret = epeg_encode(im);
+        epeg_close(im);
+    }
+    if (ret != 0) {
+        free(dest_buf);
+        throw_tj_exception(env, im == NULL ? "Could not read JPEG header" : "Could not scale JPEG image");
+        return NULL;
+    }
+    return to_byte_array(env, dest_buf, dest_size);
+}
+
+/*
+ * Class:     de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler
+ * Method:    transformJpegBuffer
+ * Signature: (Ljava/nio/ByteBuffer;IIIIIIIIIZI)[B
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_de_digitalcollections_iiif_image_backend_impl_repository_jpegtran_v2_EpegScaler_transformJpegBuffer(
+        JNIEnv* env, jclass cls, jobject inBuffer, jint inOffset, jint inSize, jint cropX, jint cropY,
+        jint cropWidth, jint cropHeight, jint width, jint height, jint transform, jboolean grayscale, jint quality) {
+
+    // Direct buffers are read in place, no JVM lock needed
+    unsigned char* in_buf = (*env)->GetDirectBufferAddress(env, inBuffer);
+    unsigned char* dest_buf = NULL;
+    int dest_size = -1;
+    int ret = -1;
+
+    Epeg_Image* im = in_buf != NULL ? epeg_memory_open(in_buf + inOffset, inSize) : NULL;
+    if (im != NULL) {
+        epeg_decode_crop_set(im, cropX, cropY, cropWidth, cropHeight);
+        epeg_decode_size_set(im, width, height);
+        if (grayscale) {
+            epeg_decode_colorspace_set(im, EPEG_GRAY8);
+        }
+        epeg_transform_set(im, (Epeg_Transform) transform);
+        epeg_quality_set(im, quality);
+        epeg_memory_output_set(im, &dest_buf, &dest_size);
+        ret = epeg_encode(im);
+        epeg_close(im);
+    }
+    if (ret != 0) {
+        free(dest_buf);
+        throw_tj_exception(env, im == NULL ? "Could not read JPEG header" : "Could not transform JPEG image");
+        return NULL;
+    }
+    return to_byte_array(env, dest_buf, dest_size);
+}
@@ -5,6 +5,7 @@
 static Epeg_Image   *_epeg_open_header         (Epeg_Image *im);
 static int           _epeg_decode              (Epeg_Image *im);
 static int           _epeg_scale               (Epeg_Image *im);
+static int           _epeg_transform           (Epeg_Image *im);
 static int           _epeg_decode_for_trim     (Epeg_Image *im);
 static int           _epeg_trim                (Epeg_Image *im);
 static int           _epeg_encode              (Epeg_Image *im);
@@ -157,6 +158,38 @@ epeg_decode_bounds_set(Epeg_Image *im, int x, int y, int w, int h)
    im->out.y = y;
 }
 
+/**
+ * Set the region of the image to decode in pixels.
+ * @param im A handle to an opened Epeg image.
+ * @param x The horizontal offset of the region, in pixels.
+ * @param y The vertical offset of the region, in pixels.
+ * @param w The width of the region, in pixels.
+ * @param h The height of the region, in pixels.
+ * 
+ * Restricts decoding to the given rectangle of the original image. Only the
+ * rows and MCU columns covering the rectangle are decoded, and the size set
+ * with epeg_decode_size_set() is then relative to the rectangle instead of
+ * the whole image. The default is the whole image.
+ * 
+ */
+EAPI void
+epeg_decode_crop_set(Epeg_Image *im, int x, int y, int w, int h)
+{
+   if      (im->pixels) return;
+   if      (x < 0)              x = 0;
+   else if (x >= im->in.w)      x = im->in.w - 1;
+   if      (y < 0)              y = 0;
+   else if (y >= im->in.h)      y = im->in.h - 1;
+   if      (w < 1)              w = 1;
+   else if (w > im->in.w - x)   w = im->in.w - x;
+   if      (h < 1)              h = 1;
+   else if (h > im->in.h - y)   h = im->in.h - y;
+   im->in.crop.x = x;
+   im->in.crop.y = y;
+   im->in.crop.w = w;
+   im->in.crop.h = h;
+}
+
 /**
  * Set the colorspace in which to decode the image.
  * @param im A handle to an opened Epeg image.
@@ -648,6 +681,24 @@ epeg_quality_set(Epeg_Image *im, int quality)
    im->out.quality = quality;
 }
 
+/**
+ * Set the orientation transform to apply before saving.
+ * @param im A handle to an opened Epeg image.
+ * @param transform The transform to apply to the decoded pixels.
+ * 
+ * The transform is applied after decoding and scaling, so the size set with
+ * epeg_decode_size_set() is the size before the transform. Transposing
+ * transforms swap the width and height of the saved image. The default is
+ * EPEG_TRANSFORM_NONE.
+ * 
+ */
+EAPI void
+epeg_transform_set(Epeg_Image *im, Epeg_Transform transform)
+{
+   if ((transform < EPEG_TRANSFORM_NONE) || (transform > EPEG_TRANSFORM_ROT_270)) return;
+   im->transform = transform;
+}
+
 /**
  * Enable thumbnail comments in saved image.
  * @param im A handle to an opened Epeg image.
@@ -716,6 +767,7 @@ epeg_memory_output_set(Epeg_Image *im, unsigned char **data, int *size)
  *        2 - error encode
  *        3 - error decode
  *        4 - error decode ( setjmp )
+ *        5 - error transform
  */
 EAPI int
 epeg_encode(Epeg_Image *im)
@@ -725,6 +777,8 @@ epeg_encode(Epeg_Image *im)
      return (ret == 2 ? 4 : 3);
    if (_epeg_scale(im) != 0)
      return 1;
+   if (_epeg_transform(im) != 0)
+     return 5;
    if (_epeg_encode(im) != 0)
      return 2;
    return 0;
@@ -830,6 +884,10 @@ _epeg_open_header(Epeg_Image *im)
    
    im->out.w = im->in.w;
    im->out.h = im->in.h;
+   im->in.crop.x = 0;
+   im->in.crop.y = 0;
+   im->in.crop.w = im->in.w;
+   im->in.crop.h = im->in.h;
 
    im->color_space = ((im->in.color_space = im->in.jinfo.out_color_space) == JCS_GRAYSCALE) ? EPEG_GRAY8 : EPEG_RGB8;
    if (im->in.color_space == JCS_CMYK) im->color_space = EPEG_CMYK;
@@ -889,21 +947,21 @@ _epeg_open_header(Epeg_Image *im)
 static int
 _epeg_decode(Epeg_Image *im)
 {
-   int scale, scalew, scaleh, y;
-   JDIMENSION old_output_scanline = 1;
-   
+   int scale, scalew, scaleh, y, x0, y0, x1, y1, count;
+   JDIMENSION xoffset, width;
+
    if (im->pixels) return 1;
    if ((im->out.w < 1) || (im->out.h < 1)) return 1;
-   
-   scalew = im->in.w / im->out.w;
-   scaleh = im->in.h / im->out.h;
-   
-   scale = scalew;   
+
+   scalew = im->in.crop.w / im->out.w;
+   scaleh = im->in.crop.h / im->out.h;
+
+   scale = scalew;
    if (scaleh < scalew) scale = scaleh;
 
    if      (scale > 8) scale = 8;
    else if (scale < 1) scale = 1;
-   
+
    im->in.jinfo.scale_num           = 1;
    im->in.jinfo.scale_denom         = scale;
    im->in.jinfo.do_fancy_upsampling = FALSE;
@@ -916,11 +974,11 @@ _epeg_decode(Epeg_Image *im)
 	im->in.jinfo.out_color_space = JCS_GRAYSCALE;
 	im->in.jinfo.output_components = 1;
 	break;
-		
+
       case EPEG_YUV8:
 	im->in.jinfo.out_color_space = JCS_YCbCr;
 	break;
-		
+
       case EPEG_RGB8:
       case EPEG_BGR8:
       case EPEG_RGBA8:
@@ -928,16 +986,16 @@ _epeg_decode(Epeg_Image *im)
       case EPEG_ARGB32:
 	im->in.jinfo.out_color_space = JCS_RGB;
 	break;
-		
+
       case EPEG_CMYK:
 	im->in.jinfo.out_color_space = JCS_CMYK;
 	im->in.jinfo.output_components = 4;
 	break;
-	
+
       default:
 	break;
      }
-   
+
    im->out.jinfo.err			= jpeg_std_error(&(im->jerr.pub));
    im->jerr.pub.error_exit		= _epeg_fatal_error_handler;
 #ifdef NOWARNINGS
@@ -950,68 +1008,191 @@ _epeg_decode(Epeg_Image *im)
      return 2;
 
    jpeg_calc_output_dimensions(&(im->in.jinfo));
-   
-   im->pixels = malloc(im->in.jinfo.output_width * im->in.jinfo.output_height * im->in.jinfo.output_components);
+   jpeg_start_decompress(&(im->in.jinfo));
+
+   /* Map the crop region into the scaled output, rounding outwards */
+   x0 = (int)(((long long)im->in.crop.x * im->in.jinfo.output_width) / im->in.w);
+   y0 = (int)(((long long)im->in.crop.y * im->in.jinfo.output_height) / im->in.h);
+   x1 = (int)((((long long)(im->in.crop.x + im->in.crop.w) * im->in.jinfo.output_width) + im->in.w - 1) / im->in.w);
+   y1 = (int)((((long long)(im->in.crop.y + im->in.crop.h) * im->in.jinfo.output_height) + im->in.h - 1) / im->in.h);
+   x1 = MIN(MAX(x1, x0 + 1), (int)im->in.jinfo.output_width);
+   y1 = MIN(MAX(y1, y0 + 1), (int)im->in.jinfo.output_height);
+
+   /* Only decode the iMCU columns covering the region. libjpeg aligns the
+    * left edge to an iMCU boundary, so remember how much to skip. */
+   xoffset = x0;
+   width = x1 - x0;
+   if (width < im->in.jinfo.output_width)
+     jpeg_crop_scanline(&(im->in.jinfo), &xoffset, &width);
+   im->dec.x = x0 - xoffset;
+   im->dec.y = 0;
+   im->dec.w = x1 - x0;
+   im->dec.h = y1 - y0;
+   im->dec.stride = im->in.jinfo.output_width * im->in.jinfo.output_components;
+
+   im->pixels = malloc(im->dec.stride * im->dec.h);
    if (!im->pixels) return 1;
-	
-   im->lines = malloc(im->in.jinfo.output_height * sizeof(char *));
+
+   im->lines = malloc(im->dec.h * sizeof(char *));
    if (!im->lines)
      {
 	free(im->pixels);
 	im->pixels = NULL;
 	return 1;
      }
-	
-   jpeg_start_decompress(&(im->in.jinfo));
-   
-   for (y = 0; y < im->in.jinfo.output_height; y++)
-     im->lines[y] = im->pixels + (y * im->in.jinfo.output_components * im->in.jinfo.output_width);
-   
-   while (im->in.jinfo.output_scanline < im->in.jinfo.output_height)
+
+   for (y = 0; y < im->dec.h; y++)
+     im->lines[y] = im->pixels + (y * im->dec.stride);
+
+   /* Decode the rows above the region into the first line and drop them.
+    * jpeg_skip_scanlines() would be cheaper, but in this libjpeg-turbo
+    * release it crashes when the merged upsampler is in use. */
+   while (im->in.jinfo.output_scanline < (JDIMENSION)y0)
      {
-	if (old_output_scanline == im->in.jinfo.output_scanline)
+	if (jpeg_read_scanlines(&(im->in.jinfo), &(im->lines[0]), 1) != 1)
 	  {
 	     jpeg_abort_decompress(&(im->in.jinfo));
 	     return 1;
 	  }
-	old_output_scanline = im->in.jinfo.output_scanline;
-	jpeg_read_scanlines(&(im->in.jinfo), 
-			    &(im->lines[im->in.jinfo.output_scanline]), 
-			    im->in.jinfo.rec_outbuf_height);
      }
-   
-   jpeg_finish_decompress(&(im->in.jinfo));
-   
+
+   while (im->in.jinfo.output_scanline < (JDIMENSION)y1)
+     {
+	count = MIN((int)im->in.jinfo.rec_outbuf_height, y1 - (int)im->in.jinfo.output_scanline);
+	/* No rows means the decoder has stalled on truncated data */
+	if (jpeg_read_scanlines(&(im->in.jinfo),
+				&(im->lines[im->in.jinfo.output_scanline - y0]),
+				count) == 0)
+	  {
+	     jpeg_abort_decompress(&(im->in.jinfo));
+	     return 1;
+	  }
+     }
+
+   /* Rows below the region are never needed */
+   if (im->in.jinfo.output_scanline < im->in.jinfo.output_height)
+     jpeg_abort_decompress(&(im->in.jinfo));
+   else
+     jpeg_finish_decompress(&(im->in.jinfo));
+
    return 0;
 }
 
 static int
 _epeg_scale(Epeg_Image *im)
 {
-   unsigned char *dst, *row, *src;
-   int            x, y, w, h, i;
-   
-   if ((im->in.w == im->out.w) && (im->in.h == im->out.h)) return 0;
+   unsigned char *dst, *row, *src, *pixels, **lines;
+   int            x, y, w, h, i, bpp;
+
    if (im->scaled) return 0;
-   
    if ((im->out.w < 1) || (im->out.h < 1)) return 0;
-   
-   im->scaled = 1;
+
+   bpp = im->in.jinfo.output_components;
+   if ((im->dec.x == 0) && (im->dec.w == im->out.w) &&
+       (im->dec.h == im->out.h) && (im->dec.stride == im->out.w * bpp))
+     return 0;
+
    w = im->out.w;
    h = im->out.h;
+   pixels = malloc(w * h * bpp);
+   if (!pixels) return 1;
+   lines = malloc(h * sizeof(char *));
+   if (!lines)
+     {
+	free(pixels);
+	return 1;
+     }
+
+   im->scaled = 1;
    for (y = 0; y < h; y++)
      {
-	row = im->pixels + (((y * im->in.jinfo.output_height) / h) * im->in.jinfo.output_components * im->in.jinfo.output_width);
-	dst = im->pixels + (y * im->in.jinfo.output_components * im->in.jinfo.output_width);
-	
-	for (x = 0; x < im->out.w; x++)
+	row = im->pixels + (((y * im->dec.h) / h) * im->dec.stride) + (im->dec.x * bpp);
+	dst = lines[y] = pixels + (y * w * bpp);
+
+	for (x = 0; x < w; x++)
 	  {
-	     src = row + (((x * im->in.jinfo.output_width) / w) * im->in.jinfo.output_components);
-	     for (i = 0; i < im->in.jinfo.output_components; i++)
+	     src = row + (((x * im->dec.w) / w) * bpp);
+	     for (i = 0; i < bpp; i++)
 	       dst[i] = src[i];
-	     dst += im->in.jinfo.output_components;
+	     dst += bpp;
+	  }
+     }
+   free(im->pixels);
+   free(im->lines);
+   im->pixels = pixels;
+   im->lines = lines;
+   im->dec.x = 0;
+   im->dec.w = w;
+   im->dec.h = h;
+   im->dec.stride = w * bpp;
+   return 0;
+}
+
+static int
+_epeg_transform(Epeg_Image *im)
+{
+   unsigned char *pixels, **lines, *src;
+   int            x, y, w, h, tw, th, dx, dy, bpp;
+
+   if (im->transform == EPEG_TRANSFORM_NONE) return 0;
+
+   bpp = im->in.jinfo.output_components;
+   w = im->out.w;
+   h = im->out.h;
+   switch (im->transform)
+     {
+      case EPEG_TRANSFORM_TRANSPOSE:
+      case EPEG_TRANSFORM_TRANSVERSE:
+      case EPEG_TRANSFORM_ROT_90:
+      case EPEG_TRANSFORM_ROT_270:
+	tw = h;
+	th = w;
+	break;
+
+      default:
+	tw = w;
+	th = h;
+	break;
+     }
+
+   pixels = malloc(tw * th * bpp);
+   if (!pixels) return 1;
+   lines = malloc(th * sizeof(char *));
+   if (!lines)
+     {
+	free(pixels);
+	return 1;
+     }
+
+   for (y = 0; y < h; y++)
+     {
+	src = im->lines[y];
+	for (x = 0; x < w; x++)
+	  {
+	     switch (im->transform)
+	       {
+		case EPEG_TRANSFORM_FLIP_H:     dx = w - 1 - x; dy = y;         break;
+		case EPEG_TRANSFORM_FLIP_V:     dx = x;         dy = h - 1 - y; break;
+		case EPEG_TRANSFORM_TRANSPOSE:  dx = y;         dy = x;         break;
+		case EPEG_TRANSFORM_TRANSVERSE: dx = h - 1 - y; dy = w - 1 - x; break;
+		case EPEG_TRANSFORM_ROT_90:     dx = h - 1 - y; dy = x;         break;
+		case EPEG_TRANSFORM_ROT_180:    dx = w - 1 - x; dy = h - 1 - y; break;
+		case EPEG_TRANSFORM_ROT_270:    dx = y;         dy = w - 1 - x; break;
+		default:                        dx = x;         dy = y;         break;
+	       }
+	     memcpy(pixels + (((dy * tw) + dx) * bpp), src, bpp);
+	     src += bpp;
 	  }
      }
+   for (y = 0; y < th; y++)
+     lines[y] = pixels + (y * tw * bpp);
+
+   free(im->pixels);
+   free(im->lines);
+   im->pixels = pixels;
+   im->lines = lines;
+   im->out.w = tw;
+   im->out.h = th;
    return 0;
 }
 
@@ -33,6 +33,7 @@ struct _Epeg_Image
    int                             error;
    
    Epeg_Colorspace                 color_space;
+   Epeg_Transform                  transform;
    
    struct {
       char                          *file;
@@ -41,6 +42,10 @@ struct _Epeg_Image
 	 int                       size;
       } mem;
       int                            w, h;
+      struct {
+	 int                       x, y;
+	 int                       w, h;
+      } crop;
       char                          *comment;
       FILE                          *f;
       J_COLOR_SPACE                  color_space;
@@ -52,6 +57,11 @@ struct _Epeg_Image
 	 char                       *mime;
       } thumb_info;
    } in;
+   struct {
+      int                            x, y;
+      int                            w, h;
+      int                            stride;
+   } dec;
    struct {
       char                        *file;
       struct {
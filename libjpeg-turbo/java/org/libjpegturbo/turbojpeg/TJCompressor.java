@@ -273,6 +273,17 @@ public class TJCompressor implements Closeable {
     srcBufInt = null;
   }
 
+  /**
+   * Dissociate the source image from this compressor instance, so that an
+   * idle instance does not keep the image data reachable.  A new source image
+   * has to be set before the next compress/encode operation.
+   */
+  public void clearSourceImage() {
+    srcBuf = null;
+    srcBufInt = null;
+    srcYUVImage = null;
+  }
+
   /**
    * Set the level of chrominance subsampling for subsequent compress/encode
    * operations.  When pixels are converted from RGB to YCbCr (see
@@ -23,6 +23,14 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_init
 JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transform
   (JNIEnv *, jobject, jbyteArray, jint, jobjectArray, jobjectArray, jint);
 
+/*
+ * Class:     org_libjpegturbo_turbojpeg_TJTransformer
+ * Method:    transformDirect
+ * Signature: (Ljava/lang/Object;II[Ljava/lang/Object;[I[Lorg/libjpegturbo/turbojpeg/TJTransform;I)[I
+ */
+JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transformDirect
+  (JNIEnv *, jobject, jobject, jint, jint, jobjectArray, jintArray, jobjectArray, jint);
+
 #ifdef __cplusplus
 }
 #endif
@@ -56,6 +56,47 @@
 	goto bailout;  \
 }}
 
+/* For pinning arrays, ExceptionCheck() must not be called while one is pinned */
+#define bailif0noec(f) {if(!(f)) {  \
+	goto bailout;  \
+}}
+
+/* Returns the size (in bytes) of a primitive array or a direct buffer */
+static jlong _bufsize(JNIEnv *env, jobject buf, jint elementSize)
+{
+	if((*env)->GetDirectBufferAddress(env, buf)!=NULL)
+		return (*env)->GetDirectBufferCapacity(env, buf);
+	return (jlong)(*env)->GetArrayLength(env, (jarray)buf)*elementSize;
+}
+
+/* Returns the address of a direct buffer, or NULL for a primitive array.
+   No JNI functions other than the critical ones may be called while an array
+   is pinned, so the addresses of all buffers have to be resolved before the
+   first _getbuf(). */
+static unsigned char *_getdirect(JNIEnv *env, jobject buf)
+{
+	return (unsigned char *)(*env)->GetDirectBufferAddress(env, buf);
+}
+
+/* Returns a pointer to the contents of a primitive array or a direct buffer,
+   given the address _getdirect() returned for it. Direct buffers are used in
+   place, arrays are pinned and have to be handed back with _releasebuf(). */
+static unsigned char *_getbuf(JNIEnv *env, jobject buf, unsigned char *direct,
+	jboolean *pinned)
+{
+	*pinned=(direct==NULL);
+	if(direct==NULL)
+		return (unsigned char *)(*env)->GetPrimitiveArrayCritical(env, (jarray)buf, 0);
+	return direct;
+}
+
+static void _releasebuf(JNIEnv *env, jobject buf, unsigned char *ptr,
+	jboolean pinned)
+{
+	if(ptr && pinned)
+		(*env)->ReleasePrimitiveArrayCritical(env, (jarray)buf, ptr, 0);
+}
+
 #define gethandle()  \
 	jclass _cls=(*env)->GetObjectClass(env, obj);  \
 	jfieldID _fid;  \
@@ -590,26 +631,27 @@ JNIEXPORT jobjectArray JNICALL Java_org_libjpegturbo_turbojpeg_TJ_getScalingFact
 	return sfjava;
 }
 
-/* TurboJPEG 1.2.x: TJDecompressor::decompressHeader() */
-JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompressHeader
-	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize)
+static void TJDecompressor_decompressHeader
+	(JNIEnv *env, jobject obj, jobject src, jint srcOffset, jint jpegSize)
 {
 	tjhandle handle=0;
-	unsigned char *jpegBuf=NULL;
+	unsigned char *jpegBuf=NULL;  jboolean srcPinned=JNI_FALSE;
 	int width=0, height=0, jpegSubsamp=-1, jpegColorspace=-1;
 
 	gethandle();
 
-	if((*env)->GetArrayLength(env, src)<jpegSize)
+	if(srcOffset<0 || _bufsize(env, src, 1)<(jlong)srcOffset+jpegSize)
 		_throwarg("Source buffer is not large enough");
 
-	bailif0(jpegBuf=(*env)->GetPrimitiveArrayCritical(env, src, 0));
+	jpegBuf=_getdirect(env, src);
+	bailif0(!(*env)->ExceptionCheck(env));
+	bailif0noec(jpegBuf=_getbuf(env, src, jpegBuf, &srcPinned));
 
-	if(tjDecompressHeader3(handle, jpegBuf, (unsigned long)jpegSize,
+	if(tjDecompressHeader3(handle, &jpegBuf[srcOffset], (unsigned long)jpegSize,
 		&width, &height, &jpegSubsamp, &jpegColorspace)==-1)
 		_throwtj();
 
-	(*env)->ReleasePrimitiveArrayCritical(env, src, jpegBuf, 0);  jpegBuf=NULL;
+	_releasebuf(env, src, jpegBuf, srcPinned);  jpegBuf=NULL;
 
 	bailif0(_fid=(*env)->GetFieldID(env, _cls, "jpegSubsamp", "I"));
 	(*env)->SetIntField(env, obj, _fid, jpegSubsamp);
@@ -623,18 +665,33 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompress
 	(*env)->SetIntField(env, obj, _fid, height);
 
 	bailout:
-	if(jpegBuf) (*env)->ReleasePrimitiveArrayCritical(env, src, jpegBuf, 0);
+	_releasebuf(env, src, jpegBuf, srcPinned);
 	return;
 }
 
+/* TurboJPEG 1.2.x: TJDecompressor::decompressHeader() */
+JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompressHeader
+	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize)
+{
+	TJDecompressor_decompressHeader(env, obj, src, 0, jpegSize);
+}
+
+/* TJDecompressor::decompressHeaderDirect() */
+JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompressHeaderDirect
+	(JNIEnv *env, jobject obj, jobject src, jint srcOffset, jint jpegSize)
+{
+	TJDecompressor_decompressHeader(env, obj, src, srcOffset, jpegSize);
+}
+
 static void TJDecompressor_decompress
-	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize, jarray dst,
-		jint dstElementSize, jint x, jint y, jint width, jint pitch, jint height,
-		jint pf, jint flags)
+	(JNIEnv *env, jobject obj, jobject src, jint srcOffset, jint jpegSize,
+		jobject dst, jint dstElementSize, jint dstOffset, jint x, jint y,
+		jint width, jint pitch, jint height, jint pf, jint flags)
 {
 	tjhandle handle=0;
 	jsize arraySize=0, actualPitch;
 	unsigned char *jpegBuf=NULL, *dstBuf=NULL;
+	jboolean srcPinned=JNI_FALSE, dstPinned=JNI_FALSE;
 
 	gethandle();
 
@@ -643,24 +700,28 @@ static void TJDecompressor_decompress
 	if(org_libjpegturbo_turbojpeg_TJ_NUMPF!=TJ_NUMPF)
 		_throwarg("Mismatch between Java and C API");
 
-	if((*env)->GetArrayLength(env, src)<jpegSize)
+	if(srcOffset<0 || _bufsize(env, src, 1)<(jlong)srcOffset+jpegSize)
 		_throwarg("Source buffer is not large enough");
 	actualPitch=(pitch==0)? width*tjPixelSize[pf]:pitch;
 	arraySize=(y+height-1)*actualPitch + (x+width)*tjPixelSize[pf];
-	if((*env)->GetArrayLength(env, dst)*dstElementSize<arraySize)
+	if(dstOffset<0
+		|| _bufsize(env, dst, dstElementSize)<(jlong)dstOffset+arraySize)
 		_throwarg("Destination buffer is not large enough");
 
-	bailif0(jpegBuf=(*env)->GetPrimitiveArrayCritical(env, src, 0));
-	bailif0(dstBuf=(*env)->GetPrimitiveArrayCritical(env, dst, 0));
+	jpegBuf=_getdirect(env, src);
+	dstBuf=_getdirect(env, dst);
+	bailif0(!(*env)->ExceptionCheck(env));
+	bailif0noec(jpegBuf=_getbuf(env, src, jpegBuf, &srcPinned));
+	bailif0noec(dstBuf=_getbuf(env, dst, dstBuf, &dstPinned));
 
-	if(tjDecompress2(handle, jpegBuf, (unsigned long)jpegSize,
-		&dstBuf[y*actualPitch + x*tjPixelSize[pf]], width, pitch, height, pf,
-		flags)==-1)
+	if(tjDecompress2(handle, &jpegBuf[srcOffset], (unsigned long)jpegSize,
+		&dstBuf[dstOffset + y*actualPitch + x*tjPixelSize[pf]], width, pitch,
+		height, pf, flags)==-1)
 		_throwtj();
 
 	bailout:
-	if(dstBuf) (*env)->ReleasePrimitiveArrayCritical(env, dst, dstBuf, 0);
-	if(jpegBuf) (*env)->ReleasePrimitiveArrayCritical(env, src, jpegBuf, 0);
+	_releasebuf(env, dst, dstBuf, dstPinned);
+	_releasebuf(env, src, jpegBuf, srcPinned);
 	return;
 }
 
@@ -669,8 +730,8 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompress
 	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize, jbyteArray dst,
 		jint x, jint y, jint width, jint pitch, jint height, jint pf, jint flags)
 {
-	TJDecompressor_decompress(env, obj, src, jpegSize, dst, 1, x, y, width,
-		pitch, height, pf, flags);
+	TJDecompressor_decompress(env, obj, src, 0, jpegSize, dst, 1, 0, x, y,
+		width, pitch, height, pf, flags);
 }
 
 /* TurboJPEG 1.2.x: TJDecompressor::decompress() byte destination */
@@ -678,8 +739,8 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompress
 	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize, jbyteArray dst,
 		jint width, jint pitch, jint height, jint pf, jint flags)
 {
-	TJDecompressor_decompress(env, obj, src, jpegSize, dst, 1, 0, 0, width,
-		pitch, height, pf, flags);
+	TJDecompressor_decompress(env, obj, src, 0, jpegSize, dst, 1, 0, 0, 0,
+		width, pitch, height, pf, flags);
 }
 
 /* TurboJPEG 1.3.x: TJDecompressor::decompress() int destination */
@@ -692,8 +753,8 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompress
 	if(tjPixelSize[pf]!=sizeof(jint))
 		_throwarg("Pixel format must be 32-bit when decompressing to an integer buffer.");
 
-	TJDecompressor_decompress(env, obj, src, jpegSize, dst, sizeof(jint), x, y,
-		width, stride*sizeof(jint), height, pf, flags);
+	TJDecompressor_decompress(env, obj, src, 0, jpegSize, dst, sizeof(jint), 0,
+		x, y, width, stride*sizeof(jint), height, pf, flags);
 
 	bailout:
 	return;
@@ -709,14 +770,33 @@ JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompress
 	if(tjPixelSize[pf]!=sizeof(jint))
 		_throwarg("Pixel format must be 32-bit when decompressing to an integer buffer.");
 
-	TJDecompressor_decompress(env, obj, src, jpegSize, dst, sizeof(jint), 0, 0,
-		width, stride*sizeof(jint), height, pf, flags);
+	TJDecompressor_decompress(env, obj, src, 0, jpegSize, dst, sizeof(jint), 0,
+		0, 0, width, stride*sizeof(jint), height, pf, flags);
 
 	bailout:
 	return;
 
 }
 
+/* TJDecompressor::decompressDirect() byte array, int array or direct buffer
+   source and destination */
+JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompressDirect
+	(JNIEnv *env, jobject obj, jobject src, jint srcOffset, jint jpegSize,
+		jobject dst, jint dstElementSize, jint dstOffset, jint x, jint y,
+		jint width, jint pitch, jint height, jint pf, jint flags)
+{
+	if(pf<0 || pf>=org_libjpegturbo_turbojpeg_TJ_NUMPF)
+		_throwarg("Invalid argument in decompress()");
+	if(dstElementSize!=1 && tjPixelSize[pf]!=dstElementSize)
+		_throwarg("Pixel format must be 32-bit when decompressing to an integer buffer.");
+
+	TJDecompressor_decompress(env, obj, src, srcOffset, jpegSize, dst,
+		dstElementSize, dstOffset, x, y, width, pitch, height, pf, flags);
+
+	bailout:
+	return;
+}
+
 /* TurboJPEG 1.4.x: TJDecompressor::decompressToYUV() */
 JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_decompressToYUV___3BI_3_3B_3II_3III
 	(JNIEnv *env, jobject obj, jbyteArray src, jint jpegSize,
@@ -1032,22 +1112,23 @@ static int JNICustomFilter(short *coeffs, tjregion arrayRegion,
 	return -1;
 }
 
-/* TurboJPEG 1.2.x: TJTransformer::transform() */
-JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transform
-	(JNIEnv *env, jobject obj, jbyteArray jsrcBuf, jint jpegSize,
-		jobjectArray dstobjs, jobjectArray tobjs, jint flags)
+static jintArray TJTransformer_transform
+	(JNIEnv *env, jobject obj, jobject jsrcBuf, jint srcOffset, jint jpegSize,
+		jobjectArray dstobjs, jintArray jdstOffsets, jobjectArray tobjs,
+		jint flags)
 {
 	tjhandle handle=0;  int i;
 	unsigned char *jpegBuf=NULL, **dstBufs=NULL;  jsize n=0;
 	unsigned long *dstSizes=NULL;  tjtransform *t=NULL;
-	jbyteArray *jdstBufs=NULL;
+	jobject *jdstBufs=NULL;  jint *dstOffsets=NULL;
+	jboolean srcPinned=JNI_FALSE, *dstPinned=NULL;
 	int jpegWidth=0, jpegHeight=0, jpegSubsamp;
 	jintArray jdstSizes=0;  jint *dstSizesi=NULL;
 	JNICustomFilterParams *params=NULL;
 
 	gethandle();
 
-	if((*env)->GetArrayLength(env, jsrcBuf)<jpegSize)
+	if(srcOffset<0 || _bufsize(env, jsrcBuf, 1)<(jlong)srcOffset+jpegSize)
 		_throwarg("Source buffer is not large enough");
 	bailif0(_fid=(*env)->GetFieldID(env, _cls, "jpegWidth", "I"));
 	jpegWidth=(int)(*env)->GetIntField(env, obj, _fid);
@@ -1062,7 +1143,11 @@ JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transf
 
 	if((dstBufs=(unsigned char **)malloc(sizeof(unsigned char *)*n))==NULL)
 		_throwmem();
-	if((jdstBufs=(jbyteArray *)malloc(sizeof(jbyteArray)*n))==NULL)
+	if((jdstBufs=(jobject *)malloc(sizeof(jobject)*n))==NULL)
+		_throwmem();
+	if((dstOffsets=(jint *)malloc(sizeof(jint)*n))==NULL)
+		_throwmem();
+	if((dstPinned=(jboolean *)malloc(sizeof(jboolean)*n))==NULL)
 		_throwmem();
 	if((dstSizes=(unsigned long *)malloc(sizeof(unsigned long)*n))==NULL)
 		_throwmem();
@@ -1074,6 +1159,7 @@ JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transf
 	for(i=0; i<n; i++)
 	{
 		dstBufs[i]=NULL;  jdstBufs[i]=NULL;  dstSizes[i]=0;
+		dstOffsets[i]=0;  dstPinned[i]=JNI_FALSE;
 		memset(&t[i], 0, sizeof(tjtransform));
 		memset(&params[i], 0, sizeof(JNICustomFilterParams));
 	}
@@ -1110,30 +1196,47 @@ JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transf
 		}
 	}
 
+	if(jdstOffsets)
+	{
+		if((*env)->GetArrayLength(env, jdstOffsets)!=n)
+			_throwarg("Mismatch between size of offsets array and destination buffers array");
+		(*env)->GetIntArrayRegion(env, jdstOffsets, 0, n, dstOffsets);
+		bailif0(!(*env)->ExceptionCheck(env));
+	}
+
 	for(i=0; i<n; i++)
 	{
 		int w=jpegWidth, h=jpegHeight;
 		if(t[i].r.w!=0) w=t[i].r.w;
 		if(t[i].r.h!=0) h=t[i].r.h;
 		bailif0(jdstBufs[i]=(*env)->GetObjectArrayElement(env, dstobjs, i));
-		if((unsigned long)(*env)->GetArrayLength(env, jdstBufs[i])
-			<tjBufSize(w, h, jpegSubsamp))
+		if(dstOffsets[i]<0 || _bufsize(env, jdstBufs[i], 1)
+			<(jlong)dstOffsets[i]+(jlong)tjBufSize(w, h, jpegSubsamp))
 			_throwarg("Destination buffer is not large enough");
 	}
-	bailif0(jpegBuf=(*env)->GetPrimitiveArrayCritical(env, jsrcBuf, 0));
+	jpegBuf=_getdirect(env, jsrcBuf);
+	for(i=0; i<n; i++)
+		dstBufs[i]=_getdirect(env, jdstBufs[i]);
+	bailif0(!(*env)->ExceptionCheck(env));
+	bailif0noec(jpegBuf=_getbuf(env, jsrcBuf, jpegBuf, &srcPinned));
+	for(i=0; i<n; i++)
+		bailif0noec(dstBufs[i]=_getbuf(env, jdstBufs[i], dstBufs[i], &dstPinned[i]));
 	for(i=0; i<n; i++)
-		bailif0(dstBufs[i]=(*env)->GetPrimitiveArrayCritical(env, jdstBufs[i], 0));
+		dstBufs[i]+=dstOffsets[i];
 
-	if(tjTransform(handle, jpegBuf, jpegSize, n, dstBufs, dstSizes, t,
-		flags|TJFLAG_NOREALLOC)==-1)
+	if(tjTransform(handle, &jpegBuf[srcOffset], jpegSize, n, dstBufs, dstSizes,
+		t, flags|TJFLAG_NOREALLOC)==-1)
+	{
+		for(i=0; i<n; i++) dstBufs[i]-=dstOffsets[i];
 		_throwtj();
+	}
 
 	for(i=0; i<n; i++)
 	{
-		(*env)->ReleasePrimitiveArrayCritical(env, jdstBufs[i], dstBufs[i], 0);
+		_releasebuf(env, jdstBufs[i], dstBufs[i]-dstOffsets[i], dstPinned[i]);
 		dstBufs[i]=NULL;
 	}
-	(*env)->ReleasePrimitiveArrayCritical(env, jsrcBuf, jpegBuf, 0);
+	_releasebuf(env, jsrcBuf, jpegBuf, srcPinned);
 	jpegBuf=NULL;
 
 	jdstSizes=(*env)->NewIntArray(env, n);
@@ -1147,17 +1250,39 @@ JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transf
 		for(i=0; i<n; i++)
 		{
 			if(dstBufs[i] && jdstBufs && jdstBufs[i])
-				(*env)->ReleasePrimitiveArrayCritical(env, jdstBufs[i], dstBufs[i], 0);
+				_releasebuf(env, jdstBufs[i], dstBufs[i], dstPinned[i]);
 		}
 		free(dstBufs);
 	}
-	if(jpegBuf) (*env)->ReleasePrimitiveArrayCritical(env, jsrcBuf, jpegBuf, 0);
+	_releasebuf(env, jsrcBuf, jpegBuf, srcPinned);
 	if(jdstBufs) free(jdstBufs);
+	if(dstOffsets) free(dstOffsets);
+	if(dstPinned) free(dstPinned);
 	if(dstSizes) free(dstSizes);
 	if(t) free(t);
 	return jdstSizes;
 }
 
+/* TurboJPEG 1.2.x: TJTransformer::transform() */
+JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transform
+	(JNIEnv *env, jobject obj, jbyteArray jsrcBuf, jint jpegSize,
+		jobjectArray dstobjs, jobjectArray tobjs, jint flags)
+{
+	return TJTransformer_transform(env, obj, jsrcBuf, 0, jpegSize, dstobjs, NULL,
+		tobjs, flags);
+}
+
+/* TJTransformer::transformDirect() byte array or direct buffer source and
+   destinations */
+JNIEXPORT jintArray JNICALL Java_org_libjpegturbo_turbojpeg_TJTransformer_transformDirect
+	(JNIEnv *env, jobject obj, jobject jsrcBuf, jint srcOffset, jint jpegSize,
+		jobjectArray dstobjs, jintArray jdstOffsets, jobjectArray tobjs,
+		jint flags)
+{
+	return TJTransformer_transform(env, obj, jsrcBuf, srcOffset, jpegSize,
+		dstobjs, jdstOffsets, tobjs, flags);
+}
+
 /* TurboJPEG 1.2.x: TJDecompressor::destroy() */
 JNIEXPORT void JNICALL Java_org_libjpegturbo_turbojpeg_TJDecompressor_destroy
 	(JNIEnv *env, jobject obj)